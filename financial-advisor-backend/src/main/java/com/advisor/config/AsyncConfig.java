@@ -0,0 +1,130 @@
+package com.advisor.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executor for blocking outbound I/O (Gmail, Calendar, HubSpot, OpenAI) and {@code @Async} work.
+ *
+ * <p>Work that waits on other work never waits on tasks of its own executor: a task on the I/O
+ * executor that fans out single calls and joins them submits them to the fan-out executor, whose
+ * tasks never block on anything queued. Otherwise every core thread could end up waiting on
+ * children stuck in its queue.</p>
+ *
+ * <p>With {@code spring.threads.virtual.enabled=true} on a Java 21+ runtime, Spring Boot serves
+ * Tomcat requests on virtual threads and this executor starts one virtual thread per task,
+ * capped by a concurrency limit. Otherwise it falls back to a bounded platform thread pool.</p>
+ */
+@Configuration
+@Slf4j
+public class AsyncConfig {
+
+    public static final String IO_EXECUTOR = "ioTaskExecutor";
+    public static final String FANOUT_EXECUTOR = "fanoutTaskExecutor";
+    public static final String PIPELINE_EXECUTOR = "pipelineTaskExecutor";
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${app.io-executor.core-pool-size:16}")
+    private int corePoolSize;
+
+    @Value("${app.io-executor.max-pool-size:64}")
+    private int maxPoolSize;
+
+    @Value("${app.io-executor.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${app.io-executor.virtual-concurrency-limit:1000}")
+    private int virtualConcurrencyLimit;
+
+    @Value("${app.fanout-executor.pool-size:32}")
+    private int fanoutPoolSize;
+
+    @Value("${app.fanout-executor.queue-capacity:1000}")
+    private int fanoutQueueCapacity;
+
+    @Value("${app.pipeline-executor.max-pool-size:64}")
+    private int pipelineMaxPoolSize;
+
+    @Bean(name = IO_EXECUTOR)
+    public AsyncTaskExecutor ioTaskExecutor() {
+        if (virtualThreadsEnabled) {
+            if (Runtime.version().feature() >= 21) {
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("io-vt-");
+                executor.setVirtualThreads(true);
+                executor.setConcurrencyLimit(virtualConcurrencyLimit);
+                log.info("I/O executor running on virtual threads (concurrency limit {})", virtualConcurrencyLimit);
+                return executor;
+            }
+            log.warn("Virtual threads requested but running on Java {}; using platform thread pool",
+                    Runtime.version().feature());
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("io-");
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        // Back-pressure instead of dropping work when the pool and queue are full
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Leaf executor for single outbound calls that a caller fans out and then joins. Its tasks
+     * must not wait on other executor tasks; when it is saturated the caller runs the call itself.
+     */
+    @Bean(name = FANOUT_EXECUTOR)
+    public AsyncTaskExecutor fanoutTaskExecutor() {
+        if (virtualThreadsEnabled && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("fanout-vt-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(virtualConcurrencyLimit);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("fanout-");
+        executor.setCorePoolSize(fanoutPoolSize);
+        executor.setMaxPoolSize(fanoutPoolSize);
+        executor.setQueueCapacity(fanoutQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Stages of indexing pipelines (producers and embedders), which block on each other's queues.
+     * Every stage gets a thread straight away instead of queueing behind another job's stages;
+     * the number of stages is bounded by {@code indexing.jobs.max-concurrent}, and a pipeline that
+     * would exceed the pool fails and is retried rather than waiting for a thread.
+     */
+    @Bean(name = PIPELINE_EXECUTOR)
+    public AsyncTaskExecutor pipelineTaskExecutor() {
+        if (virtualThreadsEnabled && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("pipeline-vt-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("pipeline-");
+        executor.setCorePoolSize(0);
+        executor.setMaxPoolSize(pipelineMaxPoolSize);
+        executor.setQueueCapacity(0);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -1,7 +1,7 @@
 package com.advisor.config;
 
 import com.advisor.model.User;
-import com.advisor.service.RAGService;
+import com.advisor.service.IndexingJobService;
 import com.advisor.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,7 +27,7 @@ import java.time.ZoneId;
 public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationSuccessHandler {
 
     private final UserService userService;
-    private final RAGService ragService;
+    private final IndexingJobService indexingJobService;
     private final OAuth2AuthorizedClientService authorizedClientService;
 
 
@@ -49,9 +49,9 @@ public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationS
             // Generate JWT token
             String token = userService.generateJwtToken(user);
 
-            // Start RAG indexing in background
+            // Queue RAG indexing; the job runner picks it up in the background
             try {
-                //ragService.performFullIndexing(user);
+                indexingJobService.enqueueOnLogin(user);
             } catch (Exception e) {
                 log.error("Failed to start RAG indexing {} ", e.getMessage());
             }
@@ -1,21 +1,80 @@
 package com.advisor.config;
 
+import com.theokanning.openai.client.OpenAiApi;
 import com.theokanning.openai.service.OpenAiService;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.jackson.JacksonConverterFactory;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class OpenAIConfig {
 
+    private static final String OPENAI_BASE_URL = "https://api.openai.com/";
+
     @Value("${openai.api-key}")
     private String openAiApiKey;
 
+    @Value("${openai.client.connect-timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${openai.client.read-timeout-ms:60000}")
+    private long readTimeoutMs;
+
+    @Value("${openai.client.call-timeout-ms:90000}")
+    private long callTimeoutMs;
+
+    @Value("${openai.client.max-idle-connections:20}")
+    private int maxIdleConnections;
+
+    @Value("${openai.client.keep-alive-ms:300000}")
+    private long keepAliveMs;
+
+    @Value("${openai.client.max-requests:64}")
+    private int maxRequests;
+
+    /**
+     * Shared OkHttp client for all OpenAI traffic. The library default keeps only
+     * 5 idle connections alive for one second, so almost every call paid a new TLS handshake.
+     */
     @Bean
-    public OpenAiService openAiService() {
-        return new OpenAiService(openAiApiKey, Duration.ofSeconds(60));
+    public OkHttpClient openAiHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+
+        return OpenAiService.defaultClient(openAiApiKey, Duration.ofMillis(readTimeoutMs))
+                .newBuilder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS))
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
     }
-}
 
+    /**
+     * Retrofit API using the async call adapter, so requests are enqueued on the
+     * OkHttp dispatcher instead of executing on the subscribing thread.
+     */
+    @Bean
+    public OpenAiApi openAiApi(OkHttpClient openAiHttpClient) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(OPENAI_BASE_URL)
+                .client(openAiHttpClient)
+                .addConverterFactory(JacksonConverterFactory.create(OpenAiService.defaultObjectMapper()))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.createAsync())
+                .build();
+
+        return retrofit.create(OpenAiApi.class);
+    }
+}
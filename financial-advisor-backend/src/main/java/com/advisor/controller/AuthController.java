@@ -1,7 +1,10 @@
 package com.advisor.controller;
 
+import com.advisor.model.IndexingJob;
 import com.advisor.model.User;
 import com.advisor.service.HubSpotService;
+import com.advisor.service.IndexingJobService;
+import com.advisor.service.OAuthTokenManager;
 import com.advisor.service.RAGService;
 import com.advisor.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,6 +32,7 @@ public class AuthController {
 
     private final UserService userService;
     private final HubSpotService hubSpotService;
+    private final IndexingJobService indexingJobService;
 
     @Value("${app.frontend-url:http://localhost:3000}")
     private String frontendUrl;
@@ -95,15 +99,22 @@ public class AuthController {
             User user = userService.getUserFromJwtToken(token);
             log.info("Processing HubSpot callback for user: {}", user.getEmail());
 
-            // Exchange code for access token
-            String accessToken = hubSpotService.exchangeCodeForToken(code);
+            // Exchange code for access and refresh tokens
+            OAuthTokenManager.TokenGrant grant = hubSpotService.exchangeCodeForToken(code);
             log.info("HubSpot access token obtained successfully");
 
-            // Save HubSpot access token
-            user.setHubspotAccessToken(accessToken);
+            // Save HubSpot tokens; the token manager refreshes them ahead of expiry from here on
+            user.setHubspotAccessToken(grant.accessToken());
+            user.setHubspotRefreshToken(grant.refreshToken());
+            user.setHubspotTokenExpiration(grant.expiresAt());
+            // A (re)connected portal needs a full contact sync
+            user.setHubspotContactsSyncedAt(null);
             userService.saveUser(user);
             log.info("HubSpot access token saved for user: {}", user.getEmail());
 
+            // Pull the CRM into the local contact table in the background
+            indexingJobService.enqueue(user, IndexingJob.JobType.INCREMENTAL);
+
             return ResponseEntity.ok(Map.of("success", true));
 
         } catch (org.springframework.web.client.HttpClientErrorException e) {
@@ -7,8 +7,10 @@ import com.advisor.dto.ChatSessionResponse;
 import com.advisor.model.ChatMessage;
 import com.advisor.model.User;
 import com.advisor.service.ChatService;
+import com.advisor.service.ProactiveEventService;
 import com.advisor.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -18,8 +20,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -33,6 +37,8 @@ public class ChatController {
 
     private final UserService userService;
 
+    private final ProactiveEventService proactiveEventService;
+
     @PostMapping("/message")
     public ResponseEntity<ChatResponse> sendMessage(@RequestBody ChatRequest request, Authentication auth) {
         try {
@@ -46,11 +52,18 @@ public class ChatController {
         }
     }
 
+    /**
+     * Sessions newest first. Pass the lastMessageAt and sessionId of the last item as
+     * before/beforeSessionId to fetch the next page.
+     */
     @GetMapping("/sessions")
-    public ResponseEntity<?> getUserChatSessions(Authentication authentication) {
+    public ResponseEntity<?> getUserChatSessions(Authentication authentication,
+                                                 @RequestParam(defaultValue = "50") int limit,
+                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                                                 @RequestParam(required = false) String beforeSessionId) {
         try {
             User user = userService.getCurrentUser(authentication);
-            List<ChatSessionResponse> sessions = chatService.getUserChatSessions(user.getId());
+            List<ChatSessionResponse> sessions = chatService.getUserChatSessions(user.getId(), limit, before, beforeSessionId);
             return ResponseEntity.ok(sessions);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Failed to load chat history"));
@@ -91,8 +104,7 @@ public class ChatController {
     public ResponseEntity<String> updateInstructions(@RequestBody Map<String, String> request, Authentication auth) {
         try {
             User user = userService.getCurrentUser(auth);
-            user.setOngoingInstructions(request.get("instructions"));
-            userService.saveUser(user);
+            proactiveEventService.saveInstructions(user, request.get("instructions"));
 
             return ResponseEntity.ok("Instructions updated successfully");
         } catch (Exception e) {
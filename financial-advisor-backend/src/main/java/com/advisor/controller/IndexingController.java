@@ -0,0 +1,55 @@
+package com.advisor.controller;
+
+import com.advisor.model.IndexingJob;
+import com.advisor.model.User;
+import com.advisor.service.IndexingJobService;
+import com.advisor.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/indexing")
+@RequiredArgsConstructor
+public class IndexingController {
+
+    private final IndexingJobService indexingJobService;
+
+    private final UserService userService;
+
+    @PostMapping("/jobs")
+    public ResponseEntity<?> startJob(Authentication authentication,
+                                      @RequestParam(defaultValue = "INCREMENTAL") String type) {
+        try {
+            User user = userService.getCurrentUser(authentication);
+            IndexingJob job = indexingJobService.enqueue(user, IndexingJob.JobType.valueOf(type.toUpperCase()));
+            return ResponseEntity.ok(indexingJobService.getProgress(user, job.getId()).orElseThrow());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to start indexing: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs/latest")
+    public ResponseEntity<?> getLatestJob(Authentication authentication) {
+        User user = userService.getCurrentUser(authentication);
+        return indexingJobService.getLatestProgress(user)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getJob(Authentication authentication, @PathVariable Long jobId) {
+        User user = userService.getCurrentUser(authentication);
+        return indexingJobService.getProgress(user, jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
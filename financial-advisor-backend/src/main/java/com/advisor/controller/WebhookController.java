@@ -9,7 +9,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.Map;
 
 @RestController
@@ -20,15 +22,13 @@ public class WebhookController {
 
     private final UserService userService;
     private final ToolService toolService;
-    private final ChatService chatService;
-    private final GmailService gmailService;
-    private final CalendarService calendarService;
-    private final HubSpotService hubSpotService;
-    private final RAGService ragService;
+    private final ProactiveWorkflowService proactiveWorkflowService;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
-     * Handle Gmail push notifications
+     * Handle Gmail push notifications. The Pub/Sub message only carries the mailbox and its new
+     * history id; the messages that arrived are looked up from the history when it is processed.
      */
     @PostMapping("/gmail")
     public ResponseEntity<?> handleGmailWebhook(@RequestBody String payload) {
@@ -36,9 +36,12 @@ public class WebhookController {
             log.info("Received Gmail webhook: {}", payload);
 
             JsonNode webhookData = objectMapper.readTree(payload);
-            String emailId = webhookData.get("message").get("messageId").asText();
-            String userEmail = extractUserEmailFromGmail(webhookData);
+            JsonNode notification = decodeGmailNotification(webhookData);
+            if (notification == null || !notification.hasNonNull("historyId")) {
+                return ResponseEntity.ok("No history id found");
+            }
 
+            String userEmail = notification.path("emailAddress").asText(null);
             if (userEmail == null) {
                 return ResponseEntity.ok("No user email found");
             }
@@ -48,10 +51,11 @@ public class WebhookController {
                 return ResponseEntity.ok("User not found");
             }
 
-            // Process the new email proactively
-            processNewEmail(user, emailId);
+            // Acknowledge immediately; the node owning this user's partition processes it in the background
+            proactiveWorkflowService.enqueue(user, "gmail",
+                    Map.of("historyId", notification.get("historyId").asText()));
 
-            return ResponseEntity.ok("Gmail webhook processed");
+            return ResponseEntity.ok("Gmail webhook accepted");
 
         } catch (Exception e) {
             log.error("Error processing Gmail webhook", e);
@@ -82,9 +86,9 @@ public class WebhookController {
             }
 
             // Process calendar event proactively
-            processCalendarEvent(user, eventId, eventType);
+            proactiveWorkflowService.enqueue(user, "calendar", Map.of("eventId", eventId, "eventType", eventType));
 
-            return ResponseEntity.ok("Calendar webhook processed");
+            return ResponseEntity.ok("Calendar webhook accepted");
 
         } catch (Exception e) {
             log.error("Error processing Calendar webhook", e);
@@ -116,9 +120,10 @@ public class WebhookController {
             }
 
             // Process HubSpot event proactively
-            processHubSpotEvent(user, objectType, eventType, contactId);
+            proactiveWorkflowService.enqueue(user, "hubspot",
+                    Map.of("objectType", objectType, "eventType", eventType, "objectId", contactId));
 
-            return ResponseEntity.ok("HubSpot webhook processed");
+            return ResponseEntity.ok("HubSpot webhook accepted");
 
         } catch (Exception e) {
             log.error("Error processing HubSpot webhook", e);
@@ -153,186 +158,17 @@ public class WebhookController {
         }
     }
 
-    private void processNewEmail(User user, String emailId) {
-        try {
-            // In a real implementation, you'd fetch the email details
-            // For this example, we'll simulate processing
-
-            log.info("Processing new email for user: {} with email ID: {}", user.getEmail(), emailId);
-
-            // Check if user has ongoing instructions about emails
-            if (user.getOngoingInstructions() != null &&
-                    user.getOngoingInstructions().toLowerCase().contains("email")) {
-
-                // Trigger proactive AI response
-                String sessionId = "proactive_" + System.currentTimeMillis();
-                String proactiveMessage = String.format(
-                        "A new email (ID: %s) has arrived. Based on ongoing instructions, should I take any proactive action?",
-                        emailId
-                );
-
-                String response = chatService.processMessage(user, proactiveMessage, sessionId);
-                log.info("Proactive email response: {}", response);
-            }
-
-            // Re-index emails for updated RAG context
-            ragService.indexEmails(user);
-
-        } catch (Exception e) {
-            log.error("Error processing new email for user: {}", user.getEmail(), e);
-        }
-    }
-
-    private void processCalendarEvent(User user, String eventId, String eventType) {
+    // Pub/Sub wraps Gmail's {"emailAddress": ..., "historyId": ...} as base64 in message.data
+    private JsonNode decodeGmailNotification(JsonNode webhookData) {
         try {
-            log.info("Processing calendar event for user: {} with event ID: {} and type: {}",
-                    user.getEmail(), eventId, eventType);
-
-            // Check if user has ongoing instructions about calendar events
-            if (user.getOngoingInstructions() != null &&
-                    user.getOngoingInstructions().toLowerCase().contains("calendar")) {
-
-                String action = switch (eventType.toLowerCase()) {
-                    case "created" -> "A new calendar event was created";
-                    case "updated" -> "A calendar event was updated";
-                    case "deleted" -> "A calendar event was deleted";
-                    default -> "A calendar event was modified";
-                };
-
-                // Check for specific ongoing instructions
-                if (user.getOngoingInstructions().contains("send an email to attendees")) {
-                    handleCalendarEventEmail(user, eventId, eventType);
-                }
-
-                // Trigger proactive AI response
-                String sessionId = "proactive_calendar_" + System.currentTimeMillis();
-                String proactiveMessage = String.format(
-                        "%s (ID: %s). Based on ongoing instructions, should I take any proactive action?",
-                        action, eventId
-                );
-
-                String response = chatService.processMessage(user, proactiveMessage, sessionId);
-                log.info("Proactive calendar response: {}", response);
-            }
-
-            // Re-index calendar data for updated RAG context
-            ragService.indexCalendarData(user);
-
+            String data = webhookData.get("message").get("data").asText();
+            return objectMapper.readTree(new String(Base64.getDecoder().decode(data), StandardCharsets.UTF_8));
         } catch (Exception e) {
-            log.error("Error processing calendar event for user: {}", user.getEmail(), e);
-        }
-    }
-
-    private void processHubSpotEvent(User user, String objectType, String eventType, String contactId) {
-        try {
-            log.info("Processing HubSpot event for user: {} with object type: {}, event type: {}, ID: {}",
-                    user.getEmail(), objectType, eventType, contactId);
-
-            if ("contact".equals(objectType) && "created".equals(eventType)) {
-                // Check if user has ongoing instructions about new contacts
-                if (user.getOngoingInstructions() != null &&
-                        user.getOngoingInstructions().contains("send them an email telling them thank you")) {
-
-                    handleNewContactWelcomeEmail(user, contactId);
-                }
-            }
-
-            // Trigger proactive AI response
-            String sessionId = "proactive_hubspot_" + System.currentTimeMillis();
-            String proactiveMessage = String.format(
-                    "A %s was %s in HubSpot (ID: %s). Based on ongoing instructions, should I take any proactive action?",
-                    objectType, eventType, contactId
-            );
-
-            String response = chatService.processMessage(user, proactiveMessage, sessionId);
-            log.info("Proactive HubSpot response: {}", response);
-
-            // Re-index CRM data for updated RAG context
-            ragService.indexCRMData(user);
-
-        } catch (Exception e) {
-            log.error("Error processing HubSpot event for user: {}", user.getEmail(), e);
-        }
-    }
-
-    private void handleCalendarEventEmail(User user, String eventId, String eventType) {
-        try {
-            if ("created".equals(eventType)) {
-                // Get event details and send email to attendees
-                String searchResult = calendarService.searchEvents(user, eventId, null, null);
-
-                // Extract attendees from event details (simplified)
-                if (searchResult.contains("Attendees:")) {
-                    String attendeesLine = searchResult.substring(searchResult.indexOf("Attendees:"));
-                    String[] attendees = attendeesLine.split(",");
-
-                    for (String attendee : attendees) {
-                        String email = attendee.trim();
-                        if (email.contains("@") && !email.equals(user.getEmail())) {
-                            String subject = "Meeting Notification";
-                            String body = "A new meeting has been scheduled. Please check your calendar for details.";
-
-                            toolService.sendEmail(user, email, subject, body);
-                            log.info("Sent meeting notification to: {}", email);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error handling calendar event email", e);
-        }
-    }
-
-    private void handleNewContactWelcomeEmail(User user, String contactId) {
-        try {
-            // Get contact details
-            String contactDetails = toolService.searchContacts(user, contactId);
-
-            if (contactDetails.contains("Email:")) {
-                // Extract email from contact details (simplified parsing)
-                String[] lines = contactDetails.split("\n");
-                String email = null;
-                String name = null;
-
-                for (String line : lines) {
-                    if (line.startsWith("Email:")) {
-                        email = line.substring(6).trim();
-                    }
-                    if (line.startsWith("Name:")) {
-                        name = line.substring(5).trim();
-                    }
-                }
-
-                if (email != null && !email.equals(user.getEmail())) {
-                    String subject = "Welcome - Thank you for being a client!";
-                    String body = String.format(
-                            "Dear %s,\n\n" +
-                                    "Thank you for being a valued client! We're excited to work with you and help you achieve your financial goals.\n\n" +
-                                    "If you have any questions or need assistance, please don't hesitate to reach out.\n\n" +
-                                    "Best regards,\n" +
-                                    "Your Financial Advisor Team",
-                            name != null ? name : "Valued Client"
-                    );
-
-                    toolService.sendEmail(user, email, subject, body);
-                    log.info("Sent welcome email to new contact: {}", email);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error handling new contact welcome email", e);
+            return null;
         }
     }
 
     // Helper methods to extract user email from webhook payloads
-    private String extractUserEmailFromGmail(JsonNode webhookData) {
-        try {
-            // This would extract the user email from Gmail webhook data
-            // Implementation depends on the actual webhook payload structure
-            return webhookData.get("emailAddress").asText();
-        } catch (Exception e) {
-            return null;
-        }
-    }
 
     private String extractUserEmailFromCalendar(JsonNode webhookData) {
         try {
@@ -0,0 +1,34 @@
+package com.advisor.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class IndexingJobResponse {
+    private Long jobId;
+    private String type;
+    private String status;
+    private int percentComplete;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+    private LocalDateTime estimatedCompletionAt;
+    private String error;
+    private List<StepProgress> steps;
+    private Map<String, Long> counts;
+
+    @Data
+    @Builder
+    public static class StepProgress {
+        private String source;
+        private String status;
+        private int itemsIndexed;
+        private LocalDateTime startedAt;
+        private LocalDateTime completedAt;
+    }
+}
@@ -0,0 +1,60 @@
+package com.advisor.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One mutating tool call, keyed by what asked for it. A second call with the same user, action,
+ * trigger and arguments gets the recorded result instead of repeating the side effect.
+ */
+@Entity
+@Table(name = "action_ledger", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_action_ledger_key", columnNames = {"user_id", "action", "trigger_id", "args_hash"})
+}, indexes = {
+        @Index(name = "idx_action_ledger_created", columnList = "created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class ActionRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    private String action;
+    private String triggerId;
+    private String argsHash;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    @Column(columnDefinition = "TEXT")
+    private String result;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+
+    public enum Status {
+        PENDING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,28 @@
+package com.advisor.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A running application node; it counts as live while it keeps heartbeating.
+ */
+@Entity
+@Table(name = "cluster_nodes")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClusterNode {
+    @Id
+    private String nodeId;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime heartbeatAt;
+}
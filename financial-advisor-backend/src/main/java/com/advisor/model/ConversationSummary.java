@@ -0,0 +1,52 @@
+package com.advisor.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "conversation_summaries", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_conversation_summaries_user_session", columnNames = {"user_id", "session_id"})
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversationSummary {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    private String sessionId;
+
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    // Highest chat message id folded into the summary so far
+    private Long lastSummarizedMessageId = 0L;
+    private int summarizedMessageCount;
+
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public ConversationSummary(User user, String sessionId) {
+        this.user = user;
+        this.sessionId = sessionId;
+    }
+}
@@ -6,6 +6,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -17,7 +18,9 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "emails")
+@Table(name = "emails", indexes = {
+        @Index(name = "idx_emails_user_thread", columnList = "user_id, thread_id")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -34,6 +37,8 @@ public class Email {
     @Column(unique = true)
     private String gmailId;
 
+    private String threadId;
+
     private String fromEmail;
     private String fromName;
     private String toEmail;
@@ -0,0 +1,69 @@
+package com.advisor.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "indexing_jobs", indexes = {
+        @Index(name = "idx_indexing_jobs_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_indexing_jobs_user_created", columnList = "user_id, created_at")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class IndexingJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    private JobType type;
+
+    @Enumerated(EnumType.STRING)
+    private JobStatus status;
+
+    private int attempts;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime startedAt;
+    private LocalDateTime heartbeatAt;
+    private LocalDateTime completedAt;
+
+    public enum JobType {
+        FULL, INCREMENTAL
+    }
+
+    public enum JobStatus {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    public IndexingJob(User user, JobType type) {
+        this.user = user;
+        this.type = type;
+        this.status = JobStatus.QUEUED;
+    }
+}
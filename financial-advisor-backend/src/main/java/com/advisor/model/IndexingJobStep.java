@@ -0,0 +1,66 @@
+package com.advisor.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One source of an indexing job; a completed step is the checkpoint a resumed job skips.
+ */
+@Entity
+@Table(name = "indexing_job_steps")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class IndexingJobStep {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_id")
+    private IndexingJob job;
+
+    @Enumerated(EnumType.STRING)
+    private Source source;
+
+    @Enumerated(EnumType.STRING)
+    private StepStatus status;
+
+    private int itemsIndexed;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+
+    public enum Source {
+        EMAILS, CRM, CALENDAR
+    }
+
+    public enum StepStatus {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    public IndexingJobStep(IndexingJob job, Source source) {
+        this.job = job;
+        this.source = source;
+        this.status = StepStatus.PENDING;
+    }
+}
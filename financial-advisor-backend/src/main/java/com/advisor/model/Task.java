@@ -8,6 +8,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -19,7 +20,10 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tasks")
+@Table(name = "tasks", indexes = {
+        @Index(name = "idx_tasks_status_scheduled", columnList = "status, scheduled_at"),
+        @Index(name = "idx_tasks_user_counterpart_thread", columnList = "user_id, counterpart_email, thread_id")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -44,9 +48,14 @@ public class Task {
     @Enumerated(EnumType.STRING)
     private TaskType type;
 
+    // JSON object; read and written through TaskService
     @Column(columnDefinition = "TEXT")
     private String context;
 
+    // Who the task is waiting on (lower-cased) and the Gmail thread their reply is expected on
+    private String counterpartEmail;
+    private String threadId;
+
     @Column(columnDefinition = "TEXT")
     private String result;
 
@@ -55,6 +64,15 @@ public class Task {
     private LocalDateTime scheduledAt;
     private LocalDateTime completedAt;
 
+    // Executions started so far; failed attempts are rescheduled with backoff until the limit.
+    // The default lets ddl-auto add the column to a table that already has rows.
+    @Column(columnDefinition = "integer not null default 0")
+    private int attempts;
+
+    // Node executing the task and until when its claim holds; an expired lease makes the task claimable again
+    private String leaseOwner;
+    private LocalDateTime leaseExpiresAt;
+
     public enum TaskStatus {
         PENDING, IN_PROGRESS, WAITING_FOR_RESPONSE, COMPLETED, FAILED, CANCELLED
     }
@@ -36,10 +36,21 @@ public class User {
     private String hubspotAccessToken;
     private String hubspotRefreshToken;
     private LocalDateTime googleTokenExpiration;
+    private LocalDateTime hubspotTokenExpiration;
+
+    // Start of the last successful HubSpot contact sync; null until the first full sync
+    private LocalDateTime hubspotContactsSyncedAt;
+
+    // Gmail history id new-mail notifications have been processed up to; null until the first one
+    private Long gmailHistoryId;
 
     @Column(columnDefinition = "TEXT")
     private String ongoingInstructions;
 
+    // Ongoing instructions compiled to JSON trigger predicates; written with them by ProactiveEventService
+    @Column(columnDefinition = "TEXT")
+    private String instructionTriggers;
+
     private boolean googleCalendarConnected =false;
 
     private LocalDateTime createdAt = LocalDateTime.now();
@@ -56,4 +67,27 @@ public class User {
         this.email = email;
         this.name = name;
     }
+
+    /**
+     * Copy of the column values; keep in step with the fields above. The lazy collections are
+     * left unset, so the copy can be used outside the session that loaded {@code other}.
+     */
+    public User(User other) {
+        this.id = other.id;
+        this.email = other.email;
+        this.name = other.name;
+        this.googleAccessToken = other.googleAccessToken;
+        this.googleRefreshToken = other.googleRefreshToken;
+        this.hubspotAccessToken = other.hubspotAccessToken;
+        this.hubspotRefreshToken = other.hubspotRefreshToken;
+        this.googleTokenExpiration = other.googleTokenExpiration;
+        this.hubspotTokenExpiration = other.hubspotTokenExpiration;
+        this.hubspotContactsSyncedAt = other.hubspotContactsSyncedAt;
+        this.gmailHistoryId = other.gmailHistoryId;
+        this.ongoingInstructions = other.ongoingInstructions;
+        this.instructionTriggers = other.instructionTriggers;
+        this.googleCalendarConnected = other.googleCalendarConnected;
+        this.createdAt = other.createdAt;
+        this.updatedAt = other.updatedAt;
+    }
 }
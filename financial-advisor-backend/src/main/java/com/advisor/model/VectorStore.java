@@ -10,7 +10,9 @@ import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "vector_store")
+@Table(name = "vector_store", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_vector_store_user_content_hash", columnNames = {"user_id", "content_hash"})
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -32,6 +34,10 @@ public class VectorStore {
     @Column(columnDefinition = "TEXT")
     private String embedding;
 
+    // SHA-256 of the content; the batch upsert uses it to skip chunks the user already has
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
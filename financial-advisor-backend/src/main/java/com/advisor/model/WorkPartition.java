@@ -0,0 +1,27 @@
+package com.advisor.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One slice of the user space ({@code user_id mod partitions}). Background work for a user runs
+ * only on the node holding an unexpired lease on the user's partition.
+ */
+@Entity
+@Table(name = "work_partitions")
+@Getter
+@Setter
+@NoArgsConstructor
+public class WorkPartition {
+    @Id
+    private Integer id;
+
+    private String owner;
+    private LocalDateTime leaseExpiresAt;
+}
@@ -0,0 +1,33 @@
+package com.advisor.repository;
+
+import com.advisor.model.ActionRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ActionRecordRepository extends JpaRepository<ActionRecord, Long> {
+
+    @Query("SELECT r FROM ActionRecord r WHERE r.user.id = :userId AND r.action = :action " +
+            "AND r.triggerId = :triggerId AND r.argsHash = :argsHash")
+    Optional<ActionRecord> findByKey(@Param("userId") Long userId, @Param("action") String action,
+                                     @Param("triggerId") String triggerId, @Param("argsHash") String argsHash);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ActionRecord r SET r.status = :status, r.result = :result, r.completedAt = :now " +
+            "WHERE r.id = :id AND r.status = 'PENDING'")
+    int finish(@Param("id") Long id, @Param("status") ActionRecord.Status status,
+               @Param("result") String result, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ActionRecord r WHERE r.createdAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
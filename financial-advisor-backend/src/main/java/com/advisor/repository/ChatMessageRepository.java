@@ -2,23 +2,79 @@ package com.advisor.repository;
 
 import com.advisor.model.ChatMessage;
 import com.advisor.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
-    List<ChatMessage> findByUserAndSessionIdOrderByTimestampDesc(User user, String sessionId);
+    /**
+     * Most recent messages of a session, newest first; the Pageable turns into a LIMIT on the session index.
+     */
+    List<ChatMessage> findByUserAndSessionIdOrderByTimestampDescIdDesc(User user, String sessionId, Pageable pageable);
+
     long countByUser(User user);
 
     List<ChatMessage> findByUserAndSessionIdOrderByTimestampAsc(User user, String sessionId);
 
+    /**
+     * Messages in the id range (afterId, beforeId), oldest first; used to feed the rolling summary.
+     */
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.user = :user AND cm.sessionId = :sessionId " +
+            "AND cm.id > :afterId AND cm.id < :beforeId ORDER BY cm.id ASC")
+    List<ChatMessage> findSessionMessagesBetween(@Param("user") User user,
+                                                 @Param("sessionId") String sessionId,
+                                                 @Param("afterId") Long afterId,
+                                                 @Param("beforeId") Long beforeId,
+                                                 Pageable pageable);
+
     @Query("SELECT cm.sessionId FROM ChatMessage cm WHERE cm.user.id = :userId GROUP BY cm.sessionId ORDER BY MAX(cm.timestamp) DESC")
     List<String> findDistinctSessionIdsByUserId(@Param("userId") Long userId);
 
     @Query("SELECT cm FROM ChatMessage cm WHERE cm.user.id = :userId AND cm.sessionId = :sessionId ORDER BY cm.timestamp ASC")
     List<ChatMessage> findByUserIdAndSessionIdOrderByTimestampAsc(@Param("userId") Long userId, @Param("sessionId") String sessionId);
+
+    /**
+     * Per-session aggregates, newest session first. Ties on the last timestamp are broken by session id
+     * so the (lastMessageAt, sessionId) pair can be used as a keyset cursor.
+     */
+    @Query("SELECT cm.sessionId AS sessionId, MAX(cm.timestamp) AS lastMessageAt, COUNT(cm) AS messageCount, MIN(cm.id) AS firstMessageId " +
+            "FROM ChatMessage cm WHERE cm.user.id = :userId " +
+            "GROUP BY cm.sessionId " +
+            "ORDER BY MAX(cm.timestamp) DESC, cm.sessionId DESC")
+    List<SessionAggregate> findSessionAggregates(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT cm.sessionId AS sessionId, MAX(cm.timestamp) AS lastMessageAt, COUNT(cm) AS messageCount, MIN(cm.id) AS firstMessageId " +
+            "FROM ChatMessage cm WHERE cm.user.id = :userId " +
+            "GROUP BY cm.sessionId " +
+            "HAVING MAX(cm.timestamp) < :before OR (MAX(cm.timestamp) = :before AND cm.sessionId < :beforeSessionId) " +
+            "ORDER BY MAX(cm.timestamp) DESC, cm.sessionId DESC")
+    List<SessionAggregate> findSessionAggregatesBefore(@Param("userId") Long userId,
+                                                       @Param("before") LocalDateTime before,
+                                                       @Param("beforeSessionId") String beforeSessionId,
+                                                       Pageable pageable);
+
+    /**
+     * Only the leading characters of each message, so previews never load full message bodies.
+     */
+    @Query("SELECT cm.id AS id, SUBSTRING(cm.content, 1, :length) AS preview FROM ChatMessage cm WHERE cm.id IN :ids")
+    List<MessagePreview> findPreviews(@Param("ids") Collection<Long> ids, @Param("length") int length);
+
+    interface SessionAggregate {
+        String getSessionId();
+        LocalDateTime getLastMessageAt();
+        long getMessageCount();
+        Long getFirstMessageId();
+    }
+
+    interface MessagePreview {
+        Long getId();
+        String getPreview();
+    }
 }
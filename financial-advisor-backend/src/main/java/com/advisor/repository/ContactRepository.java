@@ -2,31 +2,43 @@ package com.advisor.repository;
 
 import com.advisor.model.Contact;
 import com.advisor.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ContactRepository extends JpaRepository<Contact, Long> {
-    Optional<Contact> findByHubspotId(String hubspotId);
+    Optional<Contact> findByUserAndHubspotId(User user, String hubspotId);
+
+    List<Contact> findByUserAndHubspotIdIn(User user, Collection<String> hubspotIds);
 
     List<Contact> findByUserOrderByNameAsc(User user);
 
-    @Query("""
-            SELECT c FROM Contact c
-             WHERE c.user = :user
-             AND ((:query IS NULL OR :query = ''
-                   OR c.name LIKE LOWER(CONCAT('%', :query, '%')))
-                   OR c.email LIKE LOWER(CONCAT('%', :query, '%'))
-                   OR c.company LIKE LOWER(CONCAT('%', :query, '%'))
-                   OR c.phone LIKE LOWER(CONCAT('%', :query, '%'))
-                   OR c.notes LIKE LOWER(CONCAT('%', :query, '%'))
-                               )
-            """)
-    List<Contact> searchContacts(User user, String query);
+    Slice<Contact> findByUserOrderByIdAsc(User user, Pageable pageable);
 
     long countByUser(User user);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Contact c WHERE c.user = :user AND c.hubspotId IN :hubspotIds")
+    int deleteByUserAndHubspotIdIn(@Param("user") User user, @Param("hubspotIds") Collection<String> hubspotIds);
+
+    /**
+     * HubSpot contacts a full sync started at {@code syncStartedAt} didn't return; they have been
+     * deleted or archived in HubSpot since they were last synced.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Contact c WHERE c.user = :user AND c.hubspotId IS NOT NULL AND c.lastSyncAt < :syncStartedAt")
+    int deleteHubspotContactsNotSyncedSince(@Param("user") User user, @Param("syncStartedAt") LocalDateTime syncStartedAt);
 }
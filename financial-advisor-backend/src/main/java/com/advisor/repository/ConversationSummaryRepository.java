@@ -0,0 +1,17 @@
+package com.advisor.repository;
+
+import com.advisor.model.ConversationSummary;
+import com.advisor.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+    Optional<ConversationSummary> findByUserAndSessionId(User user, String sessionId);
+
+    @Transactional
+    void deleteByUserAndSessionId(User user, String sessionId);
+}
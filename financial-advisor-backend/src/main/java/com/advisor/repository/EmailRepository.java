@@ -3,11 +3,14 @@ package com.advisor.repository;
 import com.advisor.model.Email;
 import com.advisor.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,8 +38,26 @@ public interface EmailRepository extends JpaRepository<Email, Long> {
     @Query("SELECT e FROM Email e WHERE e.user = :user AND e.indexedAt IS NULL")
     List<Email> findUnindexedEmails(@Param("user") User user);
 
+    @Query("SELECT e.gmailId FROM Email e WHERE e.user = :user AND e.gmailId IN :gmailIds AND e.indexedAt IS NOT NULL")
+    List<String> findIndexedGmailIds(@Param("user") User user, @Param("gmailIds") Collection<String> gmailIds);
+
+    @Query("SELECT e FROM Email e WHERE e.user = :user AND e.threadId IN :threadIds AND e.indexedAt IS NOT NULL ORDER BY e.receivedAt ASC")
+    List<Email> findIndexedByThreadIds(@Param("user") User user, @Param("threadIds") Collection<String> threadIds);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Email e SET e.indexedAt = :indexedAt WHERE e.gmailId IN :gmailIds")
+    int markIndexed(@Param("gmailIds") Collection<String> gmailIds, @Param("indexedAt") LocalDateTime indexedAt);
+
     long countByUser(User user);
 
+    long countByUserAndIndexedAtIsNotNull(User user);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Email e SET e.indexedAt = NULL WHERE e.user = :user")
+    int clearIndexed(@Param("user") User user);
+
 
     List<Email> findByUserOrderByReceivedAtDesc(User user);
 
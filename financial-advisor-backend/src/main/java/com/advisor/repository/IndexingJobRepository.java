@@ -0,0 +1,50 @@
+package com.advisor.repository;
+
+import com.advisor.model.IndexingJob;
+import com.advisor.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IndexingJobRepository extends JpaRepository<IndexingJob, Long> {
+
+    Optional<IndexingJob> findFirstByUserAndStatusInOrderByCreatedAtDesc(User user, Collection<IndexingJob.JobStatus> statuses);
+
+    Optional<IndexingJob> findFirstByUserOrderByCreatedAtDesc(User user);
+
+    Optional<IndexingJob> findFirstByUserAndStatusOrderByCompletedAtDesc(User user, IndexingJob.JobStatus status);
+
+    /**
+     * Queued jobs, plus running jobs whose worker stopped heartbeating (e.g. the node restarted),
+     * of users in the given work partitions.
+     */
+    @Query(value = "SELECT * FROM indexing_jobs WHERE (status = 'QUEUED' " +
+            "OR (status = 'RUNNING' AND heartbeat_at < :staleBefore)) " +
+            "AND MOD(user_id, :partitions) IN (:owned) ORDER BY created_at ASC LIMIT :limit", nativeQuery = true)
+    List<IndexingJob> findRunnable(@Param("staleBefore") LocalDateTime staleBefore, @Param("partitions") int partitions,
+                                   @Param("owned") Collection<Integer> owned, @Param("limit") int limit);
+
+    /**
+     * Atomically take a job; returns 0 if another worker got it first.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE IndexingJob j SET j.status = 'RUNNING', j.startedAt = COALESCE(j.startedAt, :now), " +
+            "j.heartbeatAt = :now, j.attempts = j.attempts + 1 " +
+            "WHERE j.id = :id AND (j.status = 'QUEUED' OR (j.status = 'RUNNING' AND j.heartbeatAt < :staleBefore))")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE IndexingJob j SET j.heartbeatAt = :now WHERE j.id IN :ids AND j.status = 'RUNNING'")
+    int heartbeat(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+}
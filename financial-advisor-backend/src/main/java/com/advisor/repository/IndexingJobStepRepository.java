@@ -0,0 +1,14 @@
+package com.advisor.repository;
+
+import com.advisor.model.IndexingJob;
+import com.advisor.model.IndexingJobStep;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IndexingJobStepRepository extends JpaRepository<IndexingJobStep, Long> {
+
+    List<IndexingJobStep> findByJobOrderByIdAsc(IndexingJob job);
+}
@@ -3,12 +3,16 @@ package com.advisor.repository;
 import com.advisor.model.Task;
 import com.advisor.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface TaskRepository extends JpaRepository<Task, Long> {
@@ -19,4 +23,43 @@ public interface TaskRepository extends JpaRepository<Task, Long> {
 
     @Query("SELECT t FROM Task t WHERE t.status = 'PENDING' AND t.scheduledAt IS NOT NULL AND t.scheduledAt <= :now")
     List<Task> findScheduledTasksReadyToExecute(@Param("now") LocalDateTime now);
+
+    Optional<Task> findFirstByUserAndCounterpartEmailAndThreadIdAndStatusOrderByCreatedAtDesc(
+            User user, String counterpartEmail, String threadId, Task.TaskStatus status);
+
+    Optional<Task> findFirstByUserAndCounterpartEmailAndStatusOrderByCreatedAtDesc(
+            User user, String counterpartEmail, Task.TaskStatus status);
+
+    /**
+     * Move a task between statuses; returns 0 if it was no longer in {@code from}.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Task t SET t.status = :to, t.updatedAt = :now WHERE t.id = :id AND t.status = :from")
+    int transition(@Param("id") Long id, @Param("from") Task.TaskStatus from, @Param("to") Task.TaskStatus to,
+                   @Param("now") LocalDateTime now);
+
+    /**
+     * Extend the leases of tasks this node is still executing.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Task t SET t.leaseExpiresAt = :leaseUntil " +
+            "WHERE t.id IN :ids AND t.leaseOwner = :owner AND t.status = 'IN_PROGRESS'")
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner,
+                    @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Record the outcome of an attempt; does nothing if the lease was lost to another node or the
+     * task has been claimed again since (a timed-out attempt finishing late).
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Task t SET t.status = :status, t.result = :result, t.scheduledAt = :scheduledAt, " +
+            "t.completedAt = :completedAt, t.updatedAt = :now, t.leaseOwner = NULL, t.leaseExpiresAt = NULL " +
+            "WHERE t.id = :id AND t.leaseOwner = :owner AND t.attempts = :attempt AND t.status = 'IN_PROGRESS'")
+    int release(@Param("id") Long id, @Param("owner") String owner, @Param("attempt") int attempt,
+                @Param("status") Task.TaskStatus status,
+                @Param("result") String result, @Param("scheduledAt") LocalDateTime scheduledAt,
+                @Param("completedAt") LocalDateTime completedAt, @Param("now") LocalDateTime now);
 }
@@ -2,12 +2,48 @@ package com.advisor.repository;
 
 import com.advisor.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.hubspotContactsSyncedAt = :syncedAt WHERE u.id = :id")
+    int updateHubspotContactsSyncedAt(@Param("id") Long id, @Param("syncedAt") LocalDateTime syncedAt);
+
+    // Only moves forward, so an older notification processed late can't rewind the cursor
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.gmailHistoryId = :historyId WHERE u.id = :id " +
+            "AND (u.gmailHistoryId IS NULL OR u.gmailHistoryId < :historyId)")
+    int advanceGmailHistoryId(@Param("id") Long id, @Param("historyId") Long historyId);
+
+    List<User> findByGoogleRefreshTokenIsNotNullAndGoogleTokenExpirationBefore(LocalDateTime before);
+
+    List<User> findByHubspotRefreshTokenIsNotNullAndHubspotTokenExpirationBefore(LocalDateTime before);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.googleAccessToken = :accessToken, u.googleRefreshToken = :refreshToken, " +
+            "u.googleTokenExpiration = :expiresAt WHERE u.id = :id")
+    int updateGoogleTokens(@Param("id") Long id, @Param("accessToken") String accessToken,
+                           @Param("refreshToken") String refreshToken, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.hubspotAccessToken = :accessToken, u.hubspotRefreshToken = :refreshToken, " +
+            "u.hubspotTokenExpiration = :expiresAt WHERE u.id = :id")
+    int updateHubspotTokens(@Param("id") Long id, @Param("accessToken") String accessToken,
+                            @Param("refreshToken") String refreshToken, @Param("expiresAt") LocalDateTime expiresAt);
 }
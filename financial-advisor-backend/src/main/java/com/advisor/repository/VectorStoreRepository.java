@@ -14,8 +14,16 @@ public interface VectorStoreRepository extends JpaRepository<VectorStore, Long>
 
     List<VectorStore> findByUser(User user);
 
+    long countByUser(User user);
+
+    @Query(value = "SELECT COALESCE(metadata->>'type', 'unknown') AS type, COUNT(*) AS count " +
+            "FROM vector_store WHERE user_id = :userId GROUP BY 1", nativeQuery = true)
+    List<Object[]> countByTypeForUser(@Param("userId") Long userId);
+
     List<VectorStore> findByUserId(Long userId);
 
+    long countByUserId(Long userId);
+
     @Query(value = "SELECT * FROM vector_store WHERE user_id = :userId ORDER BY id LIMIT :limit",
             nativeQuery = true)
     List<VectorStore> findTopByUserId(@Param("userId") Long userId, @Param("limit") int limit);
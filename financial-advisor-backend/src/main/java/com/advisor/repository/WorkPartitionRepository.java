@@ -0,0 +1,40 @@
+package com.advisor.repository;
+
+import com.advisor.model.WorkPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface WorkPartitionRepository extends JpaRepository<WorkPartition, Integer> {
+
+    @Query("SELECT p.id FROM WorkPartition p WHERE p.owner = :owner AND p.leaseExpiresAt > :now ORDER BY p.id")
+    List<Integer> findOwned(@Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    /**
+     * Extend every lease the node still holds; an already expired lease is left for others to claim.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE WorkPartition p SET p.leaseExpiresAt = :leaseUntil " +
+            "WHERE p.owner = :owner AND p.leaseExpiresAt > :now")
+    int renew(@Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE WorkPartition p SET p.owner = NULL, p.leaseExpiresAt = NULL WHERE p.id IN :ids AND p.owner = :owner")
+    int release(@Param("ids") Collection<Integer> ids, @Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE WorkPartition p SET p.owner = NULL, p.leaseExpiresAt = NULL WHERE p.owner = :owner")
+    int releaseAll(@Param("owner") String owner);
+}
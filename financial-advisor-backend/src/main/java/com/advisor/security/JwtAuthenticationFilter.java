@@ -33,11 +33,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-
             if (jwt != null) {
                 try {
                     User user = userService.getUserFromJwtToken(jwt);
-                    log.info("JWT validated for user: {}", user.getEmail());
+                    log.debug("JWT validated for user: {}", user.getEmail());
 
                     UsernamePasswordAuthenticationToken authentication =
                             new UsernamePasswordAuthenticationToken(
@@ -48,7 +47,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authentication);
-                    log.info("Security context set for user: {}", user.getEmail());
+                    log.debug("Security context set for user: {}", user.getEmail());
 
                 } catch (Exception e) {
                     log.error("Invalid JWT token: {}", e.getMessage());
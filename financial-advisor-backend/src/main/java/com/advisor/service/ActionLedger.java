@@ -0,0 +1,181 @@
+package com.advisor.service;
+
+import com.advisor.model.ActionRecord;
+import com.advisor.model.User;
+import com.advisor.repository.ActionRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency ledger for tools with side effects (sending mail, creating events and contacts).
+ * Every call is keyed by (user, action, trigger id, hash of the arguments), where the trigger is
+ * what caused it: a webhook event or a chat message. The first call for a key claims a row and
+ * runs; a duplicate, e.g. from a redelivered webhook or two evaluations of the same event, gets
+ * the recorded result back without reaching the provider.
+ *
+ * <p>Failed calls are released so a retry can run again. A call whose node died mid-flight is
+ * re-run once its claim is older than {@code pending-timeout-ms}; the provider may then see it
+ * twice, which is the only case the ledger cannot rule out.</p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ActionLedger {
+
+    /**
+     * Tool functions that change something outside the application.
+     */
+    public static final Set<String> MUTATING_ACTIONS = Set.of(
+            "sendEmail", "scheduleAppointment", "createContact",
+            "createCalendarEvent", "updateCalendarEvent", "deleteCalendarEvent");
+
+    private static final String CLAIM_SQL = """
+            INSERT INTO action_ledger (user_id, action, trigger_id, args_hash, status, created_at)
+            VALUES (?, ?, ?, ?, 'PENDING', ?)
+            ON CONFLICT (user_id, action, trigger_id, args_hash) DO UPDATE
+                SET status = 'PENDING', result = NULL, created_at = EXCLUDED.created_at, completed_at = NULL
+                WHERE action_ledger.status = 'FAILED'
+                   OR (action_ledger.status = 'PENDING' AND action_ledger.created_at < ?)
+            RETURNING id
+            """;
+
+    private static final ThreadLocal<String> TRIGGER = new ThreadLocal<>();
+
+    private final ActionRecordRepository recordRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Sorted keys so the same arguments always hash the same
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    @Value("${actions.ledger.pending-timeout-ms:600000}")
+    private long pendingTimeoutMs;
+
+    @Value("${actions.ledger.retention-ms:604800000}")
+    private long retentionMs;
+
+    /**
+     * Run work on behalf of a trigger; mutating calls inside it are deduplicated against it. An
+     * enclosing trigger wins, so a chat turn started by a webhook event is keyed by the event.
+     */
+    public <T> T withTrigger(String triggerId, Supplier<T> work) {
+        if (TRIGGER.get() != null || triggerId == null) {
+            return work.get();
+        }
+        TRIGGER.set(triggerId);
+        try {
+            return work.get();
+        } finally {
+            TRIGGER.remove();
+        }
+    }
+
+    public String currentTrigger() {
+        return TRIGGER.get();
+    }
+
+    /**
+     * Run a mutating action under the current trigger.
+     */
+    public String run(User user, String action, Map<String, ?> args, Supplier<String> call) {
+        return run(user, currentTrigger(), action, args, call);
+    }
+
+    /**
+     * Run a mutating action at most once per key. Without a trigger there is nothing to key on
+     * and the call goes straight through.
+     */
+    public String run(User user, String triggerId, String action, Map<String, ?> args, Supplier<String> call) {
+        if (triggerId == null || user == null || user.getId() == null) {
+            return call.get();
+        }
+
+        String argsHash = hash(args);
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> claimed = jdbcTemplate.queryForList(CLAIM_SQL, Long.class, user.getId(), action, triggerId,
+                argsHash, Timestamp.valueOf(now), Timestamp.valueOf(now.minus(Duration.ofMillis(pendingTimeoutMs))));
+
+        if (claimed.isEmpty()) {
+            return recorded(user, action, triggerId, argsHash);
+        }
+
+        Long recordId = claimed.get(0);
+        String result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            recordRepository.finish(recordId, ActionRecord.Status.FAILED, e.getMessage(), LocalDateTime.now());
+            throw e;
+        }
+        recordRepository.finish(recordId, looksFailed(result) ? ActionRecord.Status.FAILED : ActionRecord.Status.COMPLETED,
+                result, LocalDateTime.now());
+        return result;
+    }
+
+    private String recorded(User user, String action, String triggerId, String argsHash) {
+        ActionRecord record = recordRepository.findByKey(user.getId(), action, triggerId, argsHash).orElse(null);
+        if (record != null && record.getStatus() == ActionRecord.Status.COMPLETED) {
+            log.info("Skipped duplicate {} for user {} (trigger {})", action, user.getId(), triggerId);
+            return record.getResult();
+        }
+        log.info("Skipped {} for user {} already in progress (trigger {})", action, user.getId(), triggerId);
+        return toJson(Map.of(
+                "success", true,
+                "status", "in_progress",
+                "message", "The same " + action + " request is already being carried out"));
+    }
+
+    @Scheduled(fixedDelayString = "${actions.ledger.purge-interval-ms:3600000}")
+    public void purge() {
+        int deleted = recordRepository.deleteOlderThan(LocalDateTime.now().minus(Duration.ofMillis(retentionMs)));
+        if (deleted > 0) {
+            log.debug("Purged {} action ledger entries", deleted);
+        }
+    }
+
+    /**
+     * Tools report most errors in their result instead of throwing.
+     */
+    private static boolean looksFailed(String result) {
+        if (result == null) {
+            return true;
+        }
+        String normalized = result.replace(" ", "");
+        return result.startsWith("Failed") || normalized.contains("\"success\":false");
+    }
+
+    private String hash(Map<String, ?> args) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(toJson(args).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not hash action arguments", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not serialize action ledger value", e);
+        }
+    }
+}
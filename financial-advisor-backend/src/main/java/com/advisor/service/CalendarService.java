@@ -1,22 +1,17 @@
 package com.advisor.service;
 
 import com.advisor.model.User;
-import com.advisor.repository.UserRepository;
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.auth.oauth2.TokenResponse;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.DateTime;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.model.*;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.document.Document;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -29,13 +24,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CalendarService {
 
-    private final UserRepository userRepository;
-
-    @Value("${spring.security.oauth2.client.registration.google.client-id}")
-    private String googleClientId;
-
-    @Value("${spring.security.oauth2.client.registration.google.client-secret}")
-    private String googleClientSecret;
+    private final OAuthTokenManager tokenManager;
+    private final OutboundQuotaManager quotaManager;
 
     private static final String APPLICATION_NAME = "Financial Advisor Agent";
     private static final JacksonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
@@ -45,18 +35,10 @@ public class CalendarService {
      */
     private Calendar getCalendarService(User user) {
         try {
-            Credential credential = new GoogleCredential.Builder()
-                    .setTransport(GoogleNetHttpTransport.newTrustedTransport())
-                    .setJsonFactory(JSON_FACTORY)
-                    .setClientSecrets(googleClientId, googleClientSecret)
-                    .build()
-                    .setAccessToken(user.getGoogleAccessToken())
-                    .setRefreshToken(user.getGoogleRefreshToken());
-
             return new Calendar.Builder(
                     GoogleNetHttpTransport.newTrustedTransport(),
                     JSON_FACTORY,
-                    credential
+                    tokenManager.googleCredential(user)
             )
                     .setApplicationName(APPLICATION_NAME)
                     .build();
@@ -68,115 +50,16 @@ public class CalendarService {
     }
 
     /**
-     * Refresh Google OAuth token.
-     */
-    private boolean refreshGoogleToken(User user) {
-        try {
-            if (user.getGoogleRefreshToken() == null || user.getGoogleRefreshToken().isEmpty()) {
-                System.err.println("No refresh token available for user: " + user.getEmail());
-                return false;
-            }
-
-            NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-
-            GoogleCredential credential = new GoogleCredential.Builder()
-                    .setTransport(httpTransport)
-                    .setJsonFactory(JSON_FACTORY)
-                    .setClientSecrets(googleClientId, googleClientSecret)
-                    .build()
-                    .setRefreshToken(user.getGoogleRefreshToken());
-
-            // Refresh the token
-            boolean success = credential.refreshToken();
-
-            if (success && credential.getAccessToken() != null) {
-                // Update user tokens
-                user.setGoogleAccessToken(credential.getAccessToken());
-
-                // Update refresh token if a new one was provided
-                if (credential.getRefreshToken() != null) {
-                    user.setGoogleRefreshToken(credential.getRefreshToken());
-                }
-
-                // Calculate and set expiration time
-                if (credential.getExpirationTimeMilliseconds() != null) {
-                    LocalDateTime expirationTime = LocalDateTime.ofInstant(
-                            java.time.Instant.ofEpochMilli(credential.getExpirationTimeMilliseconds()),
-                            ZoneId.systemDefault()
-                    );
-                    user.setGoogleTokenExpiration(expirationTime);
-                }
-
-                // Save updated user
-                userRepository.save(user);
-
-                System.out.println("Successfully refreshed Google token for user: " + user.getEmail());
-                return true;
-            }
-
-            return false;
-
-        } catch (Exception e) {
-            System.err.println("Error refreshing Google token: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    /**
-     * Check if token needs refresh (within 5 minutes of expiration).
-     */
-    private boolean needsTokenRefresh(User user) {
-        if (user.getGoogleTokenExpiration() == null) {
-            return false;
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime refreshThreshold = user.getGoogleTokenExpiration().minusMinutes(5);
-
-        return now.isAfter(refreshThreshold);
-    }
-
-    /**
-     * Ensure we have a valid token before making API calls.
-     */
-    private void ensureValidToken(User user) {
-        if (needsTokenRefresh(user)) {
-            System.out.println("Google token will expire soon. Refreshing preemptively...");
-            refreshGoogleToken(user);
-        }
-    }
-
-    /**
-     * Execute calendar operation with automatic token refresh on 401 errors.
+     * Execute a calendar operation under the user's Calendar quota. Expired or rejected tokens are
+     * refreshed by the credential through {@link OAuthTokenManager}.
      */
-    private <T> T executeWithTokenRefresh(User user, CalendarOperation<T> operation) {
+    private <T> T executeCalendarCall(User user, CalendarOperation<T> operation) {
         try {
-            // Ensure token is valid before attempting
-            ensureValidToken(user);
-
-            // Try the operation
+            quotaManager.acquire(OutboundQuotaManager.Provider.CALENDAR, user);
             return operation.execute();
 
         } catch (GoogleJsonResponseException e) {
-            // Check if it's a 401 auth error
-            if (e.getStatusCode() == 401) {
-                System.out.println("Google Calendar 401 error. Attempting token refresh...");
-
-                if (refreshGoogleToken(user)) {
-                    // Retry with new token
-                    try {
-                        return operation.execute();
-                    } catch (Exception retryException) {
-                        System.err.println("Retry after token refresh failed: " + retryException.getMessage());
-                        throw new RuntimeException("Calendar operation failed after token refresh", retryException);
-                    }
-                } else {
-                    throw new RuntimeException("Failed to refresh expired Google token", e);
-                }
-            } else {
-                throw new RuntimeException("Google Calendar API error: " + e.getMessage(), e);
-            }
+            throw new RuntimeException("Google Calendar API error: " + e.getMessage(), e);
         } catch (Exception e) {
             throw new RuntimeException("Calendar operation failed: " + e.getMessage(), e);
         }
@@ -194,7 +77,7 @@ public class CalendarService {
      * Search calendar events based on query and date range.
      */
     public String searchEvents(User user, String query, String startDate, String endDate) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
 
             // Parse dates
@@ -240,7 +123,7 @@ public class CalendarService {
      * Get available time slots for a specific date.
      */
     public List<String> getAvailableSlots(User user, String date) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
 
             // Parse the target date
@@ -292,7 +175,7 @@ public class CalendarService {
      * Create a new calendar event.
      */
     public String createEvent(User user, String title, String startTime, String endTime, List<String> attendeeEmails) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
 
             Event event = new Event()
@@ -325,7 +208,7 @@ public class CalendarService {
      * Get upcoming events for the next specified days.
      */
     public List<Event> getUpcomingEvents(User user, int days) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
 
             DateTime now = new DateTime(System.currentTimeMillis());
@@ -348,7 +231,7 @@ public class CalendarService {
      */
     public List<Document> getCalendarAsDocuments(User user) {
         try {
-            return executeWithTokenRefresh(user, () -> {
+            return executeCalendarCall(user, () -> {
                 List<Document> documents = new ArrayList<>();
 
                 LocalDateTime now = LocalDateTime.now();
@@ -391,7 +274,7 @@ public class CalendarService {
      * Update an existing event.
      */
     public String updateEvent(User user, String eventId, String newTitle, String newStartTime, String newEndTime) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
             Event event = service.events().get("primary", eventId).execute();
 
@@ -420,7 +303,7 @@ public class CalendarService {
      * Delete a calendar event.
      */
     public String deleteEvent(User user, String eventId) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
             service.events().delete("primary", eventId).execute();
             return "Event deleted successfully";
@@ -431,7 +314,7 @@ public class CalendarService {
      * Find conflicts with proposed meeting time.
      */
     public List<String> findConflicts(User user, String proposedStartTime, String proposedEndTime) {
-        return executeWithTokenRefresh(user, () -> {
+        return executeCalendarCall(user, () -> {
             Calendar service = getCalendarService(user);
 
             DateTime startTime = parseDateTime(proposedStartTime);
@@ -5,13 +5,15 @@ import com.advisor.model.ChatMessage;
 import com.advisor.model.User;
 import com.advisor.repository.ChatMessageRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,29 +23,44 @@ public class ChatService {
     private final OpenAIChatService openAiChatService;
     private final ChatMessageRepository chatMessageRepository;
     private final RAGService ragService;
+    private final OutboundQuotaManager quotaManager;
+    private final ConversationSummaryService conversationSummaryService;
+    private final ActionLedger actionLedger;
 
     private static final int MAX_HISTORY_MESSAGES = 5;
     private static final int MAX_RAG_CONTEXT_LENGTH = 3000; // characters (~750 tokens)
     private static final int MAX_SYSTEM_PROMPT_LENGTH = 2500; // characters (~625 tokens)
+    private static final int MAX_SESSION_PAGE_SIZE = 200;
+    private static final int SESSION_PREVIEW_LENGTH = 60;
 
     public String processMessage(User user, String message, String sessionId) {
+        // Outbound calls are charged to this user; priority stays interactive unless a background job called us
+        return quotaManager.callAs(user, () -> answer(user, message, sessionId));
+    }
+
+    private String answer(User user, String message, String sessionId) {
         try {
+            // Load history before saving the new turn; the current message is appended separately
+            List<ChatMessage> history = getConversationHistory(user, sessionId);
+
             ChatMessage userMessage = new ChatMessage(user, message, ChatMessage.MessageRole.USER, sessionId);
             chatMessageRepository.save(userMessage);
 
-            List<ChatMessage> history = getConversationHistory(user, sessionId);
-
             String ragContext = ragService.retrieveRelevantContext(user, message);
             ragContext = truncateContext(ragContext, MAX_RAG_CONTEXT_LENGTH);
 
-            String systemPrompt = buildSystemPrompt(user, ragContext);
-            systemPrompt = truncateSystemPrompt(systemPrompt, MAX_SYSTEM_PROMPT_LENGTH);
+            String systemPrompt = truncateSystemPrompt(buildSystemPrompt(user, ragContext), MAX_SYSTEM_PROMPT_LENGTH);
 
-            String response = openAiChatService.processMessage(systemPrompt, history, message, user);
+            // Tool side effects are keyed by this message unless a webhook event already started the turn
+            String response = actionLedger.withTrigger("chat:" + userMessage.getId(),
+                    () -> openAiChatService.processMessage(systemPrompt, history, message, user));
 
             ChatMessage assistantMessage = new ChatMessage(user, response, ChatMessage.MessageRole.ASSISTANT, sessionId);
             chatMessageRepository.save(assistantMessage);
 
+            // Fold turns that just left the history window into the session summary
+            conversationSummaryService.refreshAsync(user, sessionId, MAX_HISTORY_MESSAGES);
+
             return response;
 
         } catch (Exception e) {
@@ -205,51 +222,67 @@ public class ChatService {
         return prompt.toString();
     }
 
+    /**
+     * Summary of older turns (if any) followed by the last {@code MAX_HISTORY_MESSAGES} turns in
+     * chronological order, limited in the database.
+     */
     private List<ChatMessage> getConversationHistory(User user, String sessionId) {
-        return chatMessageRepository.findByUserAndSessionIdOrderByTimestampDesc(user, sessionId)
-                .stream()
-                .limit(MAX_HISTORY_MESSAGES) // Limit to prevent token overflow
-                .collect(Collectors.toList());
+        List<ChatMessage> recent = new ArrayList<>(chatMessageRepository.findByUserAndSessionIdOrderByTimestampDescIdDesc(
+                user, sessionId, PageRequest.of(0, MAX_HISTORY_MESSAGES)));
+        Collections.reverse(recent);
+
+        if (recent.size() == MAX_HISTORY_MESSAGES) {
+            conversationSummaryService.getSummary(user, sessionId).ifPresent(summary -> recent.add(0,
+                    new ChatMessage(user, "Summary of the earlier conversation:\n" + summary,
+                            ChatMessage.MessageRole.SYSTEM, sessionId)));
+        }
+        return recent;
     }
 
     public List<ChatMessage> getChatHistory(User user, String sessionId) {
         return chatMessageRepository.findByUserAndSessionIdOrderByTimestampAsc(user, sessionId);
     }
 
-    public List<ChatSessionResponse> getUserChatSessions(Long userId) {
-        List<String> sessionIds = chatMessageRepository.findDistinctSessionIdsByUserId(userId);
-
-        return sessionIds.stream()
-                .map(sessionId -> {
-                    List<ChatMessage> messages = chatMessageRepository.findByUserIdAndSessionIdOrderByTimestampAsc(userId, sessionId);
+    public List<ChatSessionResponse> getUserChatSessions(Long userId, int limit, LocalDateTime before, String beforeSessionId) {
+        Pageable page = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_SESSION_PAGE_SIZE)));
 
-                    if (messages.isEmpty()) {
-                        return null;
-                    }
+        // Keyset cursor: the caller passes the last (lastMessageAt, sessionId) it has seen
+        List<ChatMessageRepository.SessionAggregate> aggregates = before == null
+                ? chatMessageRepository.findSessionAggregates(userId, page)
+                : chatMessageRepository.findSessionAggregatesBefore(userId, before,
+                        beforeSessionId != null ? beforeSessionId : "", page);
 
-                    ChatMessage firstMessage = messages.get(0);
-                    ChatMessage lastMessage = messages.get(messages.size() - 1);
+        if (aggregates.isEmpty()) {
+            return List.of();
+        }
 
-                    String preview = firstMessage.getContent();
-                    if (preview.length() > 60) {
-                        preview = preview.substring(0, 60) + "...";
+        Map<Long, String> previews = chatMessageRepository.findPreviews(
+                        aggregates.stream().map(ChatMessageRepository.SessionAggregate::getFirstMessageId).toList(),
+                        SESSION_PREVIEW_LENGTH + 1)
+                .stream()
+                .collect(Collectors.toMap(ChatMessageRepository.MessagePreview::getId,
+                        p -> p.getPreview() != null ? p.getPreview() : ""));
+
+        return aggregates.stream()
+                .map(aggregate -> {
+                    String preview = previews.getOrDefault(aggregate.getFirstMessageId(), "");
+                    if (preview.length() > SESSION_PREVIEW_LENGTH) {
+                        preview = preview.substring(0, SESSION_PREVIEW_LENGTH) + "...";
                     }
 
-                    return  ChatSessionResponse.builder()
-                            .sessionId(sessionId)
-                            .lastMessageAt(lastMessage.getTimestamp())
+                    return ChatSessionResponse.builder()
+                            .sessionId(aggregate.getSessionId())
+                            .lastMessageAt(aggregate.getLastMessageAt())
                             .preview(preview)
-                            .messageCount(messages.size())
+                            .messageCount((int) aggregate.getMessageCount())
                             .build();
-
                 })
-                .filter(Objects::nonNull)
-                .sorted(Comparator.comparing(ChatSessionResponse::getLastMessageAt).reversed())
                 .collect(Collectors.toList());
     }
 
     public void clearHistory(User user, String sessionId) {
         List<ChatMessage> messages = chatMessageRepository.findByUserAndSessionIdOrderByTimestampAsc(user, sessionId);
         chatMessageRepository.deleteAll(messages);
+        conversationSummaryService.deleteSummary(user, sessionId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.advisor.service;
+
+import com.advisor.model.ClusterNode;
+import com.advisor.repository.ClusterNodeRepository;
+import com.advisor.repository.WorkPartitionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Splits per-user background work between application nodes. Users are hashed into a fixed
+ * number of partitions ({@code user_id mod partitions}) and every node leases its share of them
+ * in {@code work_partitions}. Each heartbeat renews the node's leases and rebalances: a node
+ * holding more than {@code ceil(partitions / live nodes)} releases the surplus, one holding less
+ * claims free or expired partitions. A new node therefore picks up work within a few beats, and
+ * the partitions of a node that died are taken over once its leases run out.
+ *
+ * <p>Background pollers only run work for users in {@link #ownedPartitions()}, so indexing,
+ * webhook processing and scheduled tasks for a given user happen on one node at a time.</p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterCoordinator {
+
+    private static final String SEED_SQL = """
+            INSERT INTO work_partitions (id) SELECT generate_series(0, ? - 1)
+            ON CONFLICT (id) DO NOTHING
+            """;
+
+    private static final String CLAIM_SQL = """
+            UPDATE work_partitions SET owner = ?, lease_expires_at = ?
+            WHERE id IN (SELECT id FROM work_partitions
+                         WHERE owner IS NULL OR lease_expires_at < ?
+                         ORDER BY id
+                         LIMIT ?
+                         FOR UPDATE SKIP LOCKED)
+            RETURNING id
+            """;
+
+    private final ClusterNodeRepository nodeRepository;
+    private final WorkPartitionRepository partitionRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${cluster.partitions:64}")
+    private int partitions;
+
+    @Value("${cluster.heartbeat-ms:5000}")
+    private long heartbeatMs;
+
+    @Value("${cluster.node-ttl-ms:15000}")
+    private long nodeTtlMs;
+
+    @Value("${cluster.lease-ms:30000}")
+    private long leaseMs;
+
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    private volatile Set<Integer> owned = Set.of();
+    // Owned partitions are trusted only until the leases renewed by the last good beat could have run out
+    private volatile long ownedUntil;
+
+    @PostConstruct
+    void init() {
+        if (nodeId == null || nodeId.isBlank()) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                host = "node";
+            }
+            nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        jdbcTemplate.update(SEED_SQL, partitions);
+        jdbcTemplate.update("DELETE FROM work_partitions WHERE id >= ?", partitions);
+        log.info("Cluster node {} started with {} work partitions", nodeId, partitions);
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public int partitions() {
+        return partitions;
+    }
+
+    public int partitionOf(Long userId) {
+        return (int) Math.floorMod(userId, (long) partitions);
+    }
+
+    /**
+     * Partitions this node may run work for; empty when its leases can no longer be vouched for.
+     */
+    public Set<Integer> ownedPartitions() {
+        return System.currentTimeMillis() < ownedUntil ? owned : Set.of();
+    }
+
+    public boolean owns(Long userId) {
+        return userId != null && ownedPartitions().contains(partitionOf(userId));
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-ms:5000}")
+    public void heartbeat() {
+        long beatStarted = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            nodeRepository.save(new ClusterNode(nodeId, startedAt, now));
+            nodeRepository.deleteStale(now.minus(Duration.ofMillis(nodeTtlMs * 10)));
+
+            long live = Math.max(1, nodeRepository.countLive(now.minus(Duration.ofMillis(nodeTtlMs))));
+            int target = (int) ((partitions + live - 1) / live);
+
+            LocalDateTime leaseUntil = now.plus(Duration.ofMillis(leaseMs));
+            partitionRepository.renew(nodeId, now, leaseUntil);
+            List<Integer> held = new ArrayList<>(partitionRepository.findOwned(nodeId, now));
+
+            if (held.size() > target) {
+                List<Integer> surplus = List.copyOf(held.subList(target, held.size()));
+                partitionRepository.release(surplus, nodeId);
+                held.removeAll(surplus);
+            } else if (held.size() < target) {
+                held.addAll(jdbcTemplate.queryForList(CLAIM_SQL, Integer.class, nodeId,
+                        Timestamp.valueOf(leaseUntil), Timestamp.valueOf(now), target - held.size()));
+            }
+
+            Set<Integer> updated = Set.copyOf(new TreeSet<>(held));
+            if (!updated.equals(owned)) {
+                log.info("Node {} now owns {} of {} partitions ({} live nodes)", nodeId, updated.size(), partitions, live);
+            }
+            owned = updated;
+            // One beat of margin so a late heartbeat never leaves us acting on a lease another node took
+            ownedUntil = beatStarted + leaseMs - heartbeatMs;
+        } catch (Exception e) {
+            log.warn("Cluster heartbeat failed for node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Hand partitions back on shutdown so the remaining nodes take over without waiting for expiry.
+     */
+    @PreDestroy
+    void leave() {
+        owned = Set.of();
+        ownedUntil = 0;
+        try {
+            partitionRepository.releaseAll(nodeId);
+            nodeRepository.deleteById(nodeId);
+        } catch (Exception e) {
+            log.warn("Could not release partitions of node {}: {}", nodeId, e.getMessage());
+        }
+    }
+}
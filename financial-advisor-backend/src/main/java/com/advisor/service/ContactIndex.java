@@ -0,0 +1,408 @@
+package com.advisor.service;
+
+import com.advisor.model.Contact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable in-memory matcher over one user's contacts. Name, email and company are split into
+ * tokens; each distinct token is reachable through a prefix trie (exact, prefix and one-edit
+ * matches), a trigram index (misspellings such as "Thomspon") and a Soundex key (sound-alikes such
+ * as "Jon" / "John"). Every query token is scored against the candidate tokens, and contacts are
+ * ranked by how many query tokens they match, then by match quality weighted by field.
+ */
+final class ContactIndex {
+
+    /**
+     * Snapshot of the contact fields the index answers with.
+     */
+    record Entry(Long id, String hubspotId, String name, String email, String company, String notes) {
+    }
+
+    private static final Pattern TOKEN_SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Filler words the AI tends to pass along with names ("john from Acme")
+    private static final Set<String> STOP_WORDS = Set.of("from", "at", "of", "the", "and", "with", "in", "mr", "mrs", "ms", "dr");
+
+    // Field a token came from, packed into the low bits of a posting
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_EMAIL = 1;
+    private static final int FIELD_COMPANY = 2;
+    private static final int FIELD_BITS = 2;
+    private static final double[] FIELD_WEIGHTS = {1.0, 0.9, 0.8};
+
+    private static final double EXACT = 1.0;
+    private static final double ONE_EDIT = 0.8;
+    private static final double TRIGRAM = 0.85; // scaled by the Dice coefficient
+    private static final double PHONETIC = 0.5;
+    private static final double MIN_TRIGRAM_DICE = 0.5;
+    private static final int FUZZY_MIN_LENGTH = 4;
+
+    private final List<Entry> entries;
+    private final Map<String, int[]> byEmail;
+
+    // Distinct tokens; postings[t] lists (entry << FIELD_BITS | field) for token t
+    private final List<String> tokens;
+    private final int[][] postings;
+
+    private final TrieNode trie = new TrieNode();
+    private final Map<String, int[]> trigrams;
+    private final Map<String, int[]> phonetic;
+
+    private ContactIndex(List<Entry> entries) {
+        this.entries = entries;
+
+        Map<String, IntList> emailIndex = new HashMap<>();
+        Map<String, Integer> tokenIds = new HashMap<>();
+        List<String> tokenList = new ArrayList<>();
+        List<IntList> postingLists = new ArrayList<>();
+
+        for (int entry = 0; entry < entries.size(); entry++) {
+            Entry contact = entries.get(entry);
+            if (contact.email() != null && !contact.email().isBlank()) {
+                emailIndex.computeIfAbsent(contact.email().trim().toLowerCase(Locale.ROOT), key -> new IntList()).add(entry);
+            }
+            for (int field = FIELD_NAME; field <= FIELD_COMPANY; field++) {
+                for (String token : fieldTokens(contact, field)) {
+                    Integer id = tokenIds.get(token);
+                    if (id == null) {
+                        id = tokenList.size();
+                        tokenIds.put(token, id);
+                        tokenList.add(token);
+                        postingLists.add(new IntList());
+                    }
+                    postingLists.get(id).addUnique(entry << FIELD_BITS | field);
+                }
+            }
+        }
+
+        this.tokens = tokenList;
+        this.postings = new int[tokenList.size()][];
+        Map<String, IntList> trigramIndex = new HashMap<>();
+        Map<String, IntList> phoneticIndex = new HashMap<>();
+        for (int id = 0; id < tokenList.size(); id++) {
+            String token = tokenList.get(id);
+            postings[id] = postingLists.get(id).toArray();
+            trie.insert(token, id);
+            for (String trigram : trigrams(token)) {
+                trigramIndex.computeIfAbsent(trigram, key -> new IntList()).addUnique(id);
+            }
+            String code = soundex(token);
+            if (code != null) {
+                phoneticIndex.computeIfAbsent(code, key -> new IntList()).add(id);
+            }
+        }
+        this.byEmail = freeze(emailIndex);
+        this.trigrams = freeze(trigramIndex);
+        this.phonetic = freeze(phoneticIndex);
+    }
+
+    static ContactIndex build(List<Contact> contacts) {
+        List<Entry> entries = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            entries.add(new Entry(contact.getId(), contact.getHubspotId(), contact.getName(),
+                    contact.getEmail(), contact.getCompany(), contact.getNotes()));
+        }
+        return new ContactIndex(entries);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Contacts matching the query, best first: more matched query tokens win, then closer matches.
+     */
+    List<Entry> search(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+
+        // Full email address: exact lookup only, a near miss is a different person
+        String normalized = query.trim().toLowerCase(Locale.ROOT);
+        if (normalized.contains("@")) {
+            int[] exact = byEmail.getOrDefault(normalized, new int[0]);
+            return Arrays.stream(exact).limit(limit).mapToObj(entries::get).toList();
+        }
+
+        List<String> queryTokens = new ArrayList<>(tokens(normalized));
+        if (queryTokens.size() > 1) {
+            queryTokens.removeIf(STOP_WORDS::contains);
+        }
+
+        Map<Integer, double[]> scores = new HashMap<>(); // entry -> {matched tokens, score}
+        for (String queryToken : queryTokens) {
+            Map<Integer, Double> entryScores = new HashMap<>();
+            candidateTokens(queryToken).forEach((tokenId, similarity) -> {
+                for (int posting : postings[tokenId]) {
+                    double score = similarity * FIELD_WEIGHTS[posting & ((1 << FIELD_BITS) - 1)];
+                    entryScores.merge(posting >>> FIELD_BITS, score, Math::max);
+                }
+            });
+            entryScores.forEach((entry, score) -> {
+                double[] total = scores.computeIfAbsent(entry, key -> new double[2]);
+                total[0]++;
+                total[1] += score;
+            });
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<Integer, double[]>>comparingDouble(e -> -e.getValue()[0])
+                        .thenComparingDouble(e -> -e.getValue()[1])
+                        .thenComparing(e -> entries.get(e.getKey()).name(), Comparator.nullsLast(String::compareToIgnoreCase)))
+                .limit(limit)
+                .map(e -> entries.get(e.getKey()))
+                .toList();
+    }
+
+    /**
+     * Indexed tokens similar to the query token, with their best similarity in (0, 1].
+     */
+    private Map<Integer, Double> candidateTokens(String queryToken) {
+        Map<Integer, Double> candidates = new HashMap<>();
+
+        // Exact and prefix: "gre" -> "greg", scored by how much of the token was typed
+        trie.collectPrefix(queryToken, (tokenId, length) ->
+                candidates.merge(tokenId, length == queryToken.length() ? EXACT
+                        : 0.6 + 0.3 * queryToken.length() / length, Math::max));
+
+        // Typo and sound-alike matching only when the token isn't spelled like a known one
+        if (candidates.containsValue(EXACT)) {
+            return candidates;
+        }
+
+        if (queryToken.length() >= FUZZY_MIN_LENGTH) {
+            trie.collectWithinOneEdit(queryToken, tokenId -> candidates.merge(tokenId, ONE_EDIT, Math::max));
+        }
+
+        if (queryToken.length() >= 3) {
+            // Trigram Dice coefficient catches transpositions and multi-letter typos
+            List<String> queryTrigrams = trigrams(queryToken);
+            Map<Integer, Integer> shared = new HashMap<>();
+            for (String trigram : queryTrigrams) {
+                for (int tokenId : trigrams.getOrDefault(trigram, new int[0])) {
+                    shared.merge(tokenId, 1, Integer::sum);
+                }
+            }
+            shared.forEach((tokenId, count) -> {
+                // A padded token of length n has n + 1 trigrams
+                double dice = 2.0 * count / (queryTrigrams.size() + tokens.get(tokenId).length() + 1);
+                if (dice >= MIN_TRIGRAM_DICE) {
+                    candidates.merge(tokenId, TRIGRAM * dice, Math::max);
+                }
+            });
+
+            String code = soundex(queryToken);
+            if (code != null) {
+                for (int tokenId : phonetic.getOrDefault(code, new int[0])) {
+                    candidates.merge(tokenId, PHONETIC, Math::max);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static List<String> fieldTokens(Entry entry, int field) {
+        if (field == FIELD_NAME) {
+            return tokens(entry.name());
+        }
+        if (field == FIELD_COMPANY) {
+            return tokens(entry.company());
+        }
+        if (entry.email() == null) {
+            return List.of();
+        }
+        // "jane.doe@acme.com" is findable as "jane", "doe" and "acme"
+        String email = entry.email().toLowerCase(Locale.ROOT);
+        int at = email.indexOf('@');
+        List<String> emailTokens = new ArrayList<>(tokens(at >= 0 ? email.substring(0, at) : email));
+        if (at >= 0) {
+            String domain = email.substring(at + 1);
+            int dot = domain.indexOf('.');
+            emailTokens.add(dot > 0 ? domain.substring(0, dot) : domain);
+        }
+        return emailTokens;
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : TOKEN_SPLIT.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Trigrams of the token padded with boundary markers, so short tokens still have a few.
+     */
+    private static List<String> trigrams(String token) {
+        String padded = "$$" + token + "$";
+        List<String> trigrams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * American Soundex of a token, or null for tokens without a leading letter.
+     */
+    static String soundex(String token) {
+        if (token.isEmpty() || token.charAt(0) < 'a' || token.charAt(0) > 'z') {
+            return null;
+        }
+        StringBuilder code = new StringBuilder(4).append(Character.toUpperCase(token.charAt(0)));
+        char previous = soundexDigit(token.charAt(0));
+        for (int i = 1; i < token.length() && code.length() < 4; i++) {
+            char c = token.charAt(i);
+            char digit = soundexDigit(c);
+            if (digit != '0' && digit != previous) {
+                code.append(digit);
+            }
+            // 'h' and 'w' don't separate letters with the same code; vowels do
+            if (c != 'h' && c != 'w') {
+                previous = digit;
+            }
+        }
+        while (code.length() < 4) {
+            code.append('0');
+        }
+        return code.toString();
+    }
+
+    private static char soundexDigit(char c) {
+        return switch (c) {
+            case 'b', 'f', 'p', 'v' -> '1';
+            case 'c', 'g', 'j', 'k', 'q', 's', 'x', 'z' -> '2';
+            case 'd', 't' -> '3';
+            case 'l' -> '4';
+            case 'm', 'n' -> '5';
+            case 'r' -> '6';
+            default -> '0';
+        };
+    }
+
+    private static Map<String, int[]> freeze(Map<String, IntList> index) {
+        Map<String, int[]> frozen = new HashMap<>(index.size() * 4 / 3 + 1);
+        index.forEach((key, list) -> frozen.put(key, list.toArray()));
+        return frozen;
+    }
+
+    private interface PrefixVisitor {
+        void visit(int tokenId, int tokenLength);
+    }
+
+    private interface TokenVisitor {
+        void visit(int tokenId);
+    }
+
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private int tokenId = -1;
+
+        void insert(String token, int id) {
+            TrieNode node = this;
+            for (int i = 0; i < token.length(); i++) {
+                node = node.children.computeIfAbsent(token.charAt(i), key -> new TrieNode());
+            }
+            node.tokenId = id;
+        }
+
+        void collectPrefix(String prefix, PrefixVisitor visitor) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            if (node != null) {
+                node.collectSubtree(prefix.length(), visitor);
+            }
+        }
+
+        private void collectSubtree(int depth, PrefixVisitor visitor) {
+            if (tokenId >= 0) {
+                visitor.visit(tokenId, depth);
+            }
+            for (TrieNode child : children.values()) {
+                child.collectSubtree(depth + 1, visitor);
+            }
+        }
+
+        /**
+         * Walk the trie with an edit-distance row per node (adjacent transpositions count as one
+         * edit), pruning branches already more than one edit away.
+         */
+        void collectWithinOneEdit(String token, TokenVisitor visitor) {
+            int[] firstRow = new int[token.length() + 1];
+            for (int i = 0; i < firstRow.length; i++) {
+                firstRow[i] = i;
+            }
+            for (Map.Entry<Character, TrieNode> child : children.entrySet()) {
+                child.getValue().withinOneEdit(child.getKey(), (char) 0, token, firstRow, null, visitor);
+            }
+        }
+
+        private void withinOneEdit(char letter, char previousLetter, String token, int[] previousRow,
+                                   int[] rowBeforePrevious, TokenVisitor visitor) {
+            int columns = token.length() + 1;
+            int[] row = new int[columns];
+            row[0] = previousRow[0] + 1;
+            int rowMin = row[0];
+            for (int i = 1; i < columns; i++) {
+                int replace = previousRow[i - 1] + (token.charAt(i - 1) == letter ? 0 : 1);
+                row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), replace);
+                if (rowBeforePrevious != null && i > 1
+                        && token.charAt(i - 1) == previousLetter && token.charAt(i - 2) == letter) {
+                    row[i] = Math.min(row[i], rowBeforePrevious[i - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, row[i]);
+            }
+
+            if (tokenId >= 0 && row[columns - 1] <= 1) {
+                visitor.visit(tokenId);
+            }
+            if (rowMin <= 1) {
+                for (Map.Entry<Character, TrieNode> child : children.entrySet()) {
+                    child.getValue().withinOneEdit(child.getKey(), letter, token, row, previousRow, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable int array, to keep postings unboxed once built.
+     */
+    private static final class IntList {
+        private int[] values = new int[2];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addUnique(int value) {
+            // Postings are appended in entry order, so a duplicate can only be the last value
+            if (size == 0 || values[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
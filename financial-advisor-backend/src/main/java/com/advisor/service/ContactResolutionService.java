@@ -0,0 +1,129 @@
+package com.advisor.service;
+
+import com.advisor.model.User;
+import com.advisor.repository.ContactRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves free-text contact references ("Greg", "jane@acme.com") for tools. Answers come from an
+ * in-memory index of the user's local contacts; HubSpot is only searched on a local miss, and
+ * queries that found nothing anywhere are remembered briefly so retries don't hit the API again.
+ */
+@Service
+@RequiredArgsConstructor
+public class ContactResolutionService {
+
+    private static final int MAX_NEGATIVE_ENTRIES = 10_000;
+
+    private final ContactRepository contactRepository;
+    private final HubSpotService hubSpotService;
+
+    @Value("${contacts.resolution.index-ttl-ms:300000}")
+    private long indexTtlMs;
+
+    @Value("${contacts.resolution.negative-ttl-ms:60000}")
+    private long negativeTtlMs;
+
+    @Value("${contacts.resolution.max-results:10}")
+    private int maxResults;
+
+    private record CachedIndex(ContactIndex index, long builtAt) {
+    }
+
+    private final Map<Long, CachedIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<String, Long> negativeCache = new ConcurrentHashMap<>();
+
+    /**
+     * Contacts matching the query, best match first, in the map shape tools already format.
+     */
+    public List<Map<String, Object>> search(User user, String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (ContactIndex.Entry entry : indexFor(user).search(query, maxResults)) {
+            results.add(toMap(entry));
+        }
+        if (!results.isEmpty() || user.getHubspotAccessToken() == null) {
+            return results;
+        }
+
+        String negativeKey = user.getId() + ":" + query.trim().toLowerCase(Locale.ROOT);
+        Long expiresAt = negativeCache.get(negativeKey);
+        if (expiresAt != null) {
+            if (expiresAt > System.currentTimeMillis()) {
+                return results;
+            }
+            negativeCache.remove(negativeKey);
+        }
+
+        List<Map<String, Object>> remote = deduplicate(hubSpotService.searchRemoteContacts(user, query));
+        if (remote.isEmpty()) {
+            if (negativeCache.size() >= MAX_NEGATIVE_ENTRIES) {
+                negativeCache.clear();
+            }
+            negativeCache.put(negativeKey, System.currentTimeMillis() + negativeTtlMs);
+        }
+        return remote;
+    }
+
+    @EventListener
+    public void onContactsChanged(ContactsChangedEvent event) {
+        indexes.remove(event.userId());
+        String prefix = event.userId() + ":";
+        negativeCache.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private ContactIndex indexFor(User user) {
+        long now = System.currentTimeMillis();
+        CachedIndex cached = indexes.get(user.getId());
+        if (cached == null || now - cached.builtAt() > indexTtlMs) {
+            cached = new CachedIndex(ContactIndex.build(contactRepository.findByUserOrderByNameAsc(user)), now);
+            indexes.put(user.getId(), cached);
+        }
+        return cached.index();
+    }
+
+    private Map<String, Object> toMap(ContactIndex.Entry entry) {
+        Map<String, Object> contactMap = new HashMap<>();
+        contactMap.put("id", entry.id().toString());
+        contactMap.put("hubspotId", entry.hubspotId());
+        contactMap.put("name", entry.name());
+        contactMap.put("email", entry.email());
+        contactMap.put("company", entry.company());
+        contactMap.put("notes", entry.notes());
+        contactMap.put("source", "local");
+        return contactMap;
+    }
+
+    /**
+     * Keep the first contact per email address / HubSpot id.
+     */
+    private List<Map<String, Object>> deduplicate(List<Map<String, Object>> contacts) {
+        Set<String> seen = new HashSet<>();
+        List<Map<String, Object>> unique = new ArrayList<>();
+        for (Map<String, Object> contact : contacts) {
+            Object email = contact.get("email");
+            Object hubspotId = contact.get("hubspotId");
+            boolean newEmail = email == null || seen.add("email:" + email.toString().toLowerCase(Locale.ROOT));
+            boolean newId = hubspotId == null || seen.add("hubspot:" + hubspotId);
+            if (newEmail && newId) {
+                unique.add(contact);
+            }
+        }
+        return unique;
+    }
+}
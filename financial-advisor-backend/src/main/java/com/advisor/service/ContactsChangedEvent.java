@@ -0,0 +1,7 @@
+package com.advisor.service;
+
+/**
+ * Published after a user's local contacts are created, updated or synced.
+ */
+public record ContactsChangedEvent(Long userId) {
+}
@@ -0,0 +1,134 @@
+package com.advisor.service;
+
+import com.advisor.config.AsyncConfig;
+import com.advisor.model.ChatMessage;
+import com.advisor.model.ConversationSummary;
+import com.advisor.model.User;
+import com.advisor.repository.ChatMessageRepository;
+import com.advisor.repository.ConversationSummaryRepository;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a rolling per-session summary of the turns that have scrolled out of the recent
+ * history window, so long sessions keep their context at a constant prompt size.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationSummaryService {
+
+    private static final String SUMMARY_INSTRUCTIONS = """
+            You maintain a running summary of a conversation between a financial advisor and their AI assistant.
+            Merge the new messages into the existing summary. Keep client names, dates, amounts, decisions \
+            and open requests; drop small talk. Reply with the updated summary only, in under 200 words.""";
+
+    private final ConversationSummaryRepository summaryRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final OpenAIGateway openAiGateway;
+    private final OutboundQuotaManager quotaManager;
+
+    @Value("${chat.summary.model:gpt-3.5-turbo}")
+    private String summaryModel;
+
+    @Value("${chat.summary.batch-size:20}")
+    private int batchSize;
+
+    @Value("${chat.summary.max-message-chars:1500}")
+    private int maxMessageChars;
+
+    // One refresh per session at a time; a skipped refresh is picked up by the next turn
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public Optional<String> getSummary(User user, String sessionId) {
+        return summaryRepository.findByUserAndSessionId(user, sessionId)
+                .map(ConversationSummary::getSummary)
+                .filter(summary -> !summary.isBlank());
+    }
+
+    /**
+     * Fold every message older than the last {@code keepRecent} into the session summary.
+     */
+    @Async(AsyncConfig.IO_EXECUTOR)
+    public void refreshAsync(User user, String sessionId, int keepRecent) {
+        String key = user.getId() + ":" + sessionId;
+        if (!inFlight.add(key)) {
+            return;
+        }
+        try {
+            quotaManager.runInBackground(user, () -> refresh(user, sessionId, keepRecent));
+        } catch (Exception e) {
+            log.warn("Failed to refresh conversation summary for session {}: {}", sessionId, e.getMessage());
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    public void deleteSummary(User user, String sessionId) {
+        summaryRepository.deleteByUserAndSessionId(user, sessionId);
+    }
+
+    private void refresh(User user, String sessionId, int keepRecent) {
+        List<ChatMessage> window = chatMessageRepository.findByUserAndSessionIdOrderByTimestampDescIdDesc(
+                user, sessionId, PageRequest.of(0, keepRecent));
+        if (window.size() < keepRecent) {
+            return; // the whole session still fits in the recent history
+        }
+        long windowStartId = window.stream().mapToLong(ChatMessage::getId).min().getAsLong();
+
+        ConversationSummary summary = summaryRepository.findByUserAndSessionId(user, sessionId)
+                .orElseGet(() -> new ConversationSummary(user, sessionId));
+
+        List<ChatMessage> pending;
+        do {
+            pending = chatMessageRepository.findSessionMessagesBetween(user, sessionId,
+                    summary.getLastSummarizedMessageId(), windowStartId, PageRequest.of(0, batchSize));
+            if (pending.isEmpty()) {
+                break;
+            }
+
+            summary.setSummary(summarize(summary.getSummary(), pending));
+            summary.setLastSummarizedMessageId(pending.get(pending.size() - 1).getId());
+            summary.setSummarizedMessageCount(summary.getSummarizedMessageCount() + pending.size());
+            summary.setUpdatedAt(LocalDateTime.now());
+            summary = summaryRepository.save(summary);
+        } while (pending.size() == batchSize);
+    }
+
+    private String summarize(String existingSummary, List<ChatMessage> messages) {
+        StringBuilder transcript = new StringBuilder();
+        transcript.append("Existing summary:\n")
+                .append(existingSummary != null && !existingSummary.isBlank() ? existingSummary : "(none)")
+                .append("\n\nNew messages:\n");
+        for (ChatMessage message : messages) {
+            String content = message.getContent();
+            if (content.length() > maxMessageChars) {
+                content = content.substring(0, maxMessageChars) + "...";
+            }
+            transcript.append(message.getRole()).append(": ").append(content).append("\n");
+        }
+
+        ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(summaryModel)
+                .messages(List.of(
+                        new com.theokanning.openai.completion.chat.ChatMessage(ChatMessageRole.SYSTEM.value(), SUMMARY_INSTRUCTIONS),
+                        new com.theokanning.openai.completion.chat.ChatMessage(ChatMessageRole.USER.value(), transcript.toString())))
+                .temperature(0.2)
+                .maxTokens(400)
+                .build();
+
+        return openAiGateway.createChatCompletion(request).getChoices().get(0).getMessage().getContent().trim();
+    }
+}
@@ -0,0 +1,188 @@
+package com.advisor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns raw email bodies into embedding-sized chunks: strips HTML, quoted reply chains and
+ * signatures, then packs paragraphs (falling back to sentences, then words) into windows
+ * measured in estimated tokens.
+ */
+@Service
+public class EmailChunker {
+
+    private static final Pattern HTML_HINT = Pattern.compile("(?is)<(html|body|div|p|br|table|span)\\b");
+    private static final Pattern HTML_BLOCKS = Pattern.compile("(?is)<(style|script|head)\\b.*?</\\1>");
+    private static final Pattern HTML_BREAKS = Pattern.compile("(?i)<br\\s*/?>|</(p|div|tr|li|h[1-6])>");
+    private static final Pattern HTML_TAGS = Pattern.compile("(?s)<[^>]+>");
+
+    // "On Mon, 3 Jun 2024 at 10:00, Jane <jane@x.com> wrote:", possibly wrapped onto a second line.
+    // Requiring the date's digits keeps prose like "On the fees, Bob wrote:" in the message.
+    private static final Pattern REPLY_HEADER = Pattern.compile(
+            "(?m)^On\\s(?=[^\\n]*\\d|[^\\n]*\\n[^\\n]*\\d)[^\\n]{0,300}?(\\n[^\\n]{0,300}?)?wrote:[ \\t]*$");
+    private static final Pattern FORWARD_HEADER = Pattern.compile(
+            "(?m)^(-{2,}\\s*(Original Message|Forwarded message)\\s*-{2,}|_{10,}|From:\\s.+\\R(Sent|Date):\\s.+)");
+    private static final Pattern SIGNATURE = Pattern.compile(
+            "(?m)^(--\\s*|Sent from my \\w+.*|Get Outlook for \\w+.*)$");
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_BREAK = Pattern.compile("(?<=[.!?])\\s+(?=[A-Z0-9\"'(])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${email.chunking.max-tokens:500}")
+    private int maxTokens;
+
+    @Value("${email.chunking.overlap-tokens:50}")
+    private int overlapTokens;
+
+    /**
+     * Only the text the sender actually wrote in this message.
+     */
+    public String clean(String body) {
+        if (body == null || body.isBlank()) {
+            return "";
+        }
+        String text = body.replace("\r\n", "\n").replace('\r', '\n');
+
+        if (HTML_HINT.matcher(text).find()) {
+            text = stripHtml(text);
+        }
+
+        text = cutAt(text, REPLY_HEADER);
+        text = cutAt(text, FORWARD_HEADER);
+        text = cutAt(text, SIGNATURE);
+
+        StringBuilder kept = new StringBuilder();
+        for (String line : text.split("\n", -1)) {
+            if (!line.stripLeading().startsWith(">")) {
+                kept.append(line.stripTrailing()).append('\n');
+            }
+        }
+        return kept.toString().replaceAll("\\n{3,}", "\n\n").trim();
+    }
+
+    /**
+     * Clean the body and split it into chunks, skipping paragraphs already seen in the same thread.
+     *
+     * @param seenInThread normalized paragraphs already indexed for this thread; updated in place
+     */
+    public List<String> chunk(String body, Set<String> seenInThread) {
+        List<String> paragraphs = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_BREAK.split(clean(body))) {
+            String trimmed = paragraph.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (seenInThread == null || seenInThread.add(normalize(trimmed))) {
+                paragraphs.add(trimmed);
+            }
+        }
+        return pack(paragraphs);
+    }
+
+    /**
+     * Record the paragraphs of an already indexed message so later replies don't repeat them.
+     */
+    public void remember(String body, Set<String> seenInThread) {
+        for (String paragraph : PARAGRAPH_BREAK.split(clean(body))) {
+            String trimmed = paragraph.trim();
+            if (!trimmed.isEmpty()) {
+                seenInThread.add(normalize(trimmed));
+            }
+        }
+    }
+
+    public static int estimateTokens(String text) {
+        // ~4 characters per token for English text
+        return (text.length() + 3) / 4;
+    }
+
+    private List<String> pack(List<String> paragraphs) {
+        List<String> units = new ArrayList<>();
+        for (String paragraph : paragraphs) {
+            if (estimateTokens(paragraph) <= maxTokens) {
+                units.add(paragraph);
+            } else {
+                for (String sentence : SENTENCE_BREAK.split(paragraph)) {
+                    units.addAll(estimateTokens(sentence) <= maxTokens ? List.of(sentence) : splitWords(sentence));
+                }
+            }
+        }
+
+        List<String> chunks = new ArrayList<>();
+        List<String> window = new ArrayList<>();
+        int windowTokens = 0;
+        for (String unit : units) {
+            int unitTokens = estimateTokens(unit);
+            if (!window.isEmpty() && windowTokens + unitTokens > maxTokens) {
+                chunks.add(String.join("\n\n", window));
+
+                // Carry trailing units forward as overlap so context isn't cut mid-thought
+                List<String> overlap = new ArrayList<>();
+                int overlapSize = 0;
+                for (int i = window.size() - 1; i >= 0; i--) {
+                    int size = estimateTokens(window.get(i));
+                    if (overlapSize + size > overlapTokens || overlapSize + size + unitTokens > maxTokens) {
+                        break;
+                    }
+                    overlap.add(0, window.get(i));
+                    overlapSize += size;
+                }
+                window = overlap;
+                windowTokens = overlapSize;
+            }
+            window.add(unit);
+            windowTokens += unitTokens;
+        }
+        if (!window.isEmpty()) {
+            chunks.add(String.join("\n\n", window));
+        }
+        return chunks;
+    }
+
+    private List<String> splitWords(String sentence) {
+        List<String> pieces = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String word : WHITESPACE.split(sentence)) {
+            if (current.length() > 0 && estimateTokens(current + " " + word) > maxTokens) {
+                pieces.add(current.toString());
+                current.setLength(0);
+            }
+            if (current.length() > 0) {
+                current.append(' ');
+            }
+            current.append(word);
+        }
+        if (current.length() > 0) {
+            pieces.add(current.toString());
+        }
+        return pieces;
+    }
+
+    private String stripHtml(String html) {
+        String text = HTML_BLOCKS.matcher(html).replaceAll(" ");
+        text = HTML_BREAKS.matcher(text).replaceAll("\n");
+        text = HTML_TAGS.matcher(text).replaceAll("");
+        return text.replace("&nbsp;", " ")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&amp;", "&");
+    }
+
+    private String cutAt(String text, Pattern marker) {
+        var matcher = marker.matcher(text);
+        // A marker on the very first line means there is no new text above it; keep the body as is
+        return matcher.find() && matcher.start() > 0 ? text.substring(0, matcher.start()) : text;
+    }
+
+    private String normalize(String paragraph) {
+        return WHITESPACE.matcher(paragraph.toLowerCase()).replaceAll(" ");
+    }
+}
@@ -1,19 +1,21 @@
 package com.advisor.service;
 
 import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.embedding.Embedding;
 import com.theokanning.openai.embedding.EmbeddingRequest;
-import com.theokanning.openai.service.OpenAiService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class EmbeddingService {
 
-    private final OpenAiService openAiService;
+    private final OpenAIGateway openAiGateway;
 
     @Value("${openai.embedding.model:text-embedding-ada-002}")
     private String embeddingModel;
@@ -23,6 +25,10 @@ public class EmbeddingService {
     private static final int MAX_TOKENS_TEXT_EMBEDDING_3_SMALL = 8000;
     private static final int MAX_TOKENS_TEXT_EMBEDDING_3_LARGE = 8000;
 
+    // Per-request limits for list input
+    private static final int MAX_BATCH_INPUTS = 100;
+    private static final int MAX_BATCH_TOKENS = 100_000;
+
     // Rough token estimation (1 token ≈ 4 characters for English text)
     private static final double CHARS_PER_TOKEN = 4.0;
 
@@ -39,7 +45,7 @@ public class EmbeddingService {
                     .input(List.of(processedText))
                     .build();
 
-            return openAiService.createEmbeddings(request)
+            return openAiGateway.createEmbeddings(request)
                     .getData()
                     .get(0)
                     .getEmbedding();
@@ -143,7 +149,7 @@ public class EmbeddingService {
                     .input(List.of(text))
                     .build();
 
-            return openAiService.createEmbeddings(request)
+            return openAiGateway.createEmbeddings(request)
                     .getData()
                     .get(0)
                     .getEmbedding();
@@ -155,12 +161,54 @@ public class EmbeddingService {
     }
 
     /**
-     * Batch process multiple texts with token validation.
+     * Embed many texts with one request per batch (the embeddings endpoint accepts a list input).
+     * A batch the API rejects is retried text by text, so one oversized input doesn't fail the rest.
      */
     public List<List<Double>> generateEmbeddings(List<String> texts) {
-        return texts.stream()
-                .map(this::generateEmbedding)
-                .toList();
+        List<List<Double>> embeddings = new ArrayList<>(texts.size());
+        int start = 0;
+        while (start < texts.size()) {
+            // Cap each request by input count and by total estimated tokens
+            int end = start;
+            int batchTokens = 0;
+            List<String> batch = new ArrayList<>();
+            while (end < texts.size() && batch.size() < MAX_BATCH_INPUTS) {
+                String processed = validateAndProcessText(texts.get(end));
+                int tokens = estimateTokenCount(processed);
+                if (!batch.isEmpty() && batchTokens + tokens > MAX_BATCH_TOKENS) {
+                    break;
+                }
+                batch.add(processed);
+                batchTokens += tokens;
+                end++;
+            }
+
+            embeddings.addAll(embedBatch(batch));
+            start = end;
+        }
+        return embeddings;
+    }
+
+    private List<List<Double>> embedBatch(List<String> batch) {
+        if (batch.size() == 1) {
+            return List.of(generateEmbedding(batch.get(0)));
+        }
+        try {
+            EmbeddingRequest request = EmbeddingRequest.builder()
+                    .model(embeddingModel)
+                    .input(batch)
+                    .build();
+
+            List<List<Double>> embeddings = new ArrayList<>(Collections.nCopies(batch.size(), null));
+            for (Embedding embedding : openAiGateway.createEmbeddings(request).getData()) {
+                embeddings.set(embedding.getIndex(), embedding.getEmbedding());
+            }
+            return embeddings;
+
+        } catch (OpenAiHttpException e) {
+            System.err.println("Batch embedding rejected, retrying inputs individually: " + e.getMessage());
+            return batch.stream().map(this::generateEmbedding).toList();
+        }
     }
 
     /**
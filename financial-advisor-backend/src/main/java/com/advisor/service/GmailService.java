@@ -1,64 +1,74 @@
 package com.advisor.service;
 
+import com.advisor.config.AsyncConfig;
 import com.advisor.model.User;
 import com.advisor.model.Email;
 import com.advisor.repository.EmailRepository;
-import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.advisor.repository.UserRepository;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.*;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.Properties;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class GmailService {
     private final EmailRepository emailRepository;
+    private final OutboundQuotaManager quotaManager;
+    private final EmailChunker emailChunker;
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexingPipelineMetrics pipelineMetrics;
+    private final OAuthTokenManager tokenManager;
+    private final UserRepository userRepository;
+    private final UserService userService;
 
-    @Value("${spring.security.oauth2.client.registration.google.client-id}")
-    private String clientId;
-
-    @Value("${spring.security.oauth2.client.registration.google.client-secret}")
-    private String clientSecret;
+    @Qualifier(AsyncConfig.FANOUT_EXECUTOR)
+    private final AsyncTaskExecutor fanoutTaskExecutor;
 
     private static final String APPLICATION_NAME = "Financial Advisor Agent";
     private static final JacksonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
 
-    // Configuration for content chunking
-    private static final int MAX_CONTENT_LENGTH = 6000; // Conservative limit in characters
-    private static final int CHUNK_SIZE = 4000; // Size of each chunk
-    private static final int CHUNK_OVERLAP = 200; // Overlap between chunks
+    private static final int EMAIL_BATCH_SIZE = 200;
+    private static final int STREAM_PAGE_SIZE = 20; // messages fetched ahead of the chunking stage
+    private static final String EMAIL_UPSERT_SQL = """
+            INSERT INTO emails (user_id, gmail_id, thread_id, from_email, from_name, to_email, subject, body,
+                                sent_at, received_at, is_read, is_important)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (gmail_id) DO UPDATE SET thread_id = COALESCE(emails.thread_id, EXCLUDED.thread_id)
+            """;
 
     /**
      * Create Gmail service with user's OAuth credentials.
      */
     private Gmail getGmailService(User user) {
         try {
-            Credential credential = new GoogleCredential.Builder()
-                    .setTransport(GoogleNetHttpTransport.newTrustedTransport())
-                    .setJsonFactory(JSON_FACTORY)
-                    .setClientSecrets(clientId, clientSecret)
-                    .build()
-                    .setAccessToken(user.getGoogleAccessToken())
-                    .setRefreshToken(user.getGoogleRefreshToken());
-
             return new Gmail.Builder(
                     GoogleNetHttpTransport.newTrustedTransport(),
                     JSON_FACTORY,
-                    credential
+                    tokenManager.googleCredential(user)
             )
                     .setApplicationName(APPLICATION_NAME)
                     .build();
@@ -70,54 +80,183 @@ public class GmailService {
     }
 
     /**
-     * Get user's emails and convert to documents for RAG indexing with content chunking.
+     * Get user's new emails and convert to documents for RAG indexing with content chunking.
+     * Messages already indexed are skipped; each thread only contributes text it hasn't indexed before.
      */
     public List<Document> getEmailsAsDocuments(User user) {
+        List<Document> documents = new ArrayList<>();
+        streamEmailDocuments(user, documents::add);
+        return documents;
+    }
+
+    /**
+     * Streaming form of {@link #getEmailsAsDocuments}: messages are fetched, parsed, saved and
+     * chunked a page at a time, with the next page's fetches already in flight, and each chunk is
+     * handed to {@code sink} as soon as it exists. A blocking sink applies backpressure to fetching.
+     * Failing to list the mailbox throws, so the indexing step fails and is retried; a single
+     * message that can't be fetched or parsed is skipped.
+     *
+     * @return number of documents emitted
+     */
+    public int streamEmailDocuments(User user, Consumer<Document> sink) {
         try {
             Gmail service = getGmailService(user);
-            List<Document> documents = new ArrayList<>();
 
             // Get list of messages (last 100)
+            quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user);
             ListMessagesResponse listResponse = service.users().messages()
                     .list(user.getEmail())
                     .setMaxResults(100L)
                     .execute();
 
-            List<Message> messages = listResponse.getMessages();
-            if (messages == null || messages.isEmpty()) {
-                return documents;
+            List<Message> listed = listResponse.getMessages();
+            if (listed == null || listed.isEmpty()) {
+                return 0;
             }
 
-            // Process each message
-            for (Message message : messages) {
-                try {
-                    Message fullMessage = service.users().messages()
-                            .get(user.getEmail(), message.getId())
-                            .execute();
-
-                    Email emailEntity = processGmailMessage(user, fullMessage);
-                    if (emailEntity != null) {
-                        // Create chunked documents for RAG
-                        List<Document> emailDocuments = createEmailDocuments(emailEntity);
-                        documents.addAll(emailDocuments);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing message " + message.getId() + ": " + e.getMessage());
+            // Incremental: don't fetch or embed messages that are already in the vector store
+            Set<String> alreadyIndexed = new HashSet<>(emailRepository.findIndexedGmailIds(user,
+                    listed.stream().map(Message::getId).toList()));
+            List<Message> messages = new ArrayList<>(listed.stream()
+                    .filter(message -> !alreadyIndexed.contains(message.getId()))
+                    .toList());
+            if (messages.isEmpty()) {
+                return 0;
+            }
+
+            // Gmail lists newest first; walk oldest first so replies only add what the thread hasn't said yet
+            Collections.reverse(messages);
+
+            // Seed each touched thread with what earlier indexing runs already embedded
+            Map<String, Set<String>> seenByThread = new HashMap<>();
+            Set<String> threadIds = messages.stream()
+                    .map(Message::getThreadId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            if (!threadIds.isEmpty()) {
+                for (Email indexed : emailRepository.findIndexedByThreadIds(user, threadIds)) {
+                    emailChunker.remember(indexed.getBody(),
+                            seenByThread.computeIfAbsent(indexed.getThreadId(), key -> new HashSet<>()));
                 }
             }
 
-            return documents;
+            int emitted = 0;
+            List<CompletableFuture<Message>> fetches = fetchMessagesConcurrently(service, user,
+                    messages.subList(0, Math.min(STREAM_PAGE_SIZE, messages.size())));
+            for (int start = 0; start < messages.size(); start += STREAM_PAGE_SIZE) {
+                List<CompletableFuture<Message>> page = fetches;
+                int next = start + STREAM_PAGE_SIZE;
+                fetches = next < messages.size()
+                        ? fetchMessagesConcurrently(service, user, messages.subList(next, Math.min(next + STREAM_PAGE_SIZE, messages.size())))
+                        : List.of();
+                emitted += processPage(user, page, seenByThread, sink);
+            }
+            return emitted;
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new ArrayList<>();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to list Gmail messages for " + user.getEmail(), e);
         }
     }
 
     /**
-     * Create document chunks from an email entity to stay within token limits.
+     * Parse, save and chunk one page of fetched messages, emitting their documents.
      */
-    private List<Document> createEmailDocuments(Email emailEntity) {
+    private int processPage(User user, List<CompletableFuture<Message>> page,
+                            Map<String, Set<String>> seenByThread, Consumer<Document> sink) {
+        List<Message> fetched = page.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+        pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.FETCH, fetched.size());
+
+        List<Email> emails = pipelineMetrics.time(IndexingPipelineMetrics.Stage.PARSE, () -> {
+            List<Email> parsed = new ArrayList<>();
+            for (Message message : fetched) {
+                Email emailEntity = parseGmailMessage(user, message);
+                if (emailEntity != null) {
+                    parsed.add(emailEntity);
+                }
+            }
+            saveEmails(parsed);
+            return parsed;
+        });
+        pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.PARSE, emails.size());
+
+        int emitted = 0;
+        List<String> nothingNew = new ArrayList<>();
+        for (Email emailEntity : emails) {
+            List<Document> emailDocuments;
+            try {
+                // Create chunked documents for RAG
+                String threadKey = emailEntity.getThreadId() != null ? emailEntity.getThreadId() : emailEntity.getGmailId();
+                emailDocuments = createEmailDocuments(emailEntity,
+                        seenByThread.computeIfAbsent(threadKey, key -> new HashSet<>()));
+            } catch (Exception e) {
+                log.warn("Error processing message {}: {}", emailEntity.getGmailId(), e.getMessage());
+                continue;
+            }
+            if (emailDocuments.isEmpty()) {
+                nothingNew.add(emailEntity.getGmailId());
+            }
+            pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.CHUNK, emailDocuments.size());
+            emailDocuments.forEach(sink);
+            emitted += emailDocuments.size();
+        }
+
+        // Replies that only quoted the thread have nothing to embed, so they are done already
+        markIndexed(nothingNew);
+        return emitted;
+    }
+
+    /**
+     * Record that these messages are in the vector store so incremental indexing skips them.
+     */
+    public void markIndexed(Collection<String> gmailIds) {
+        if (!gmailIds.isEmpty()) {
+            emailRepository.markIndexed(gmailIds, LocalDateTime.now());
+        }
+    }
+
+    public long countEmails(User user) {
+        return emailRepository.countByUser(user);
+    }
+
+    public long countIndexedEmails(User user) {
+        return emailRepository.countByUserAndIndexedAtIsNotNull(user);
+    }
+
+    /**
+     * Forget indexing marks so the next run re-chunks every fetched message; stored chunks are
+     * deduplicated by content hash, so only changed chunks get embedded again.
+     */
+    public void resetIndexed(User user) {
+        emailRepository.clearIndexed(user);
+    }
+
+    /**
+     * Start one fetch per message on the fan-out executor; failed fetches resolve to null. Callers
+     * often run on the I/O executor themselves, so the fetches must not queue behind them there.
+     */
+    private List<CompletableFuture<Message>> fetchMessagesConcurrently(Gmail service, User user, List<Message> messages) {
+        // Executor threads don't inherit the caller's quota context, so carry the priority across
+        OutboundQuotaManager.Priority priority = quotaManager.currentPriority();
+        return messages.stream()
+                .map(message -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user, priority);
+                        return service.users().messages()
+                                .get(user.getEmail(), message.getId())
+                                .execute();
+                    } catch (Exception e) {
+                        log.warn("Error fetching message {}: {}", message.getId(), e.getMessage());
+                        return null;
+                    }
+                }, fanoutTaskExecutor))
+                .toList();
+    }
+
+    /**
+     * Create document chunks from an email entity. Quoted history, signatures and paragraphs
+     * already indexed for the same thread are left out.
+     */
+    private List<Document> createEmailDocuments(Email emailEntity, Set<String> seenInThread) {
         List<Document> documents = new ArrayList<>();
 
         // Create email header information
@@ -129,156 +268,211 @@ public class GmailService {
         );
 
         // Base metadata for all chunks
-        Map<String, Object> baseMetadata = Map.of(
-                "type", "email",
-                "from", emailEntity.getFromEmail(),
-                "subject", emailEntity.getSubject(),
-                "date", emailEntity.getReceivedAt() != null ? emailEntity.getReceivedAt().toString() : LocalDateTime.now().toString(),
-                "userId", emailEntity.getUser().getId().toString(),
-                "gmailId", emailEntity.getGmailId()
-        );
-
-        String emailBody = emailEntity.getBody() != null ? emailEntity.getBody() : "";
-
-        // If the email is short enough, create a single document
-        String fullContent = emailHeader + ". Content: " + emailBody;
-        if (fullContent.length() <= MAX_CONTENT_LENGTH) {
-            Map<String, Object> metadata = new HashMap<>(baseMetadata);
-            metadata.put("chunkIndex", 0);
-            metadata.put("totalChunks", 1);
-            metadata.put("isComplete", true);
-
-            documents.add(new Document(fullContent, metadata));
-            return documents;
+        Map<String, Object> baseMetadata = new HashMap<>();
+        baseMetadata.put("type", "email");
+        baseMetadata.put("from", emailEntity.getFromEmail());
+        baseMetadata.put("subject", emailEntity.getSubject());
+        baseMetadata.put("date", emailEntity.getReceivedAt() != null ? emailEntity.getReceivedAt().toString() : LocalDateTime.now().toString());
+        baseMetadata.put("userId", emailEntity.getUser().getId().toString());
+        baseMetadata.put("gmailId", emailEntity.getGmailId());
+        if (emailEntity.getThreadId() != null) {
+            baseMetadata.put("threadId", emailEntity.getThreadId());
         }
 
-        // For long emails, create multiple chunks
-        if (emailBody.length() > CHUNK_SIZE) {
-            List<String> bodyChunks = chunkText(emailBody, CHUNK_SIZE, CHUNK_OVERLAP);
-
-            for (int i = 0; i < bodyChunks.size(); i++) {
-                String chunkContent = emailHeader + ". Content (Part " + (i + 1) + "/" + bodyChunks.size() + "): " + bodyChunks.get(i);
-
-                Map<String, Object> metadata = new HashMap<>(baseMetadata);
-                metadata.put("chunkIndex", i);
-                metadata.put("totalChunks", bodyChunks.size());
-                metadata.put("isComplete", false);
+        String emailBody = emailEntity.getBody() != null ? emailEntity.getBody() : "";
+        List<String> bodyChunks = emailChunker.chunk(emailBody, seenInThread);
 
-                documents.add(new Document(chunkContent, metadata));
+        if (bodyChunks.isEmpty()) {
+            // Nothing new beyond what the thread already said; keep a header-only document for empty bodies
+            if (!emailChunker.clean(emailBody).isEmpty()) {
+                return documents;
             }
-        } else {
-            // Email body is manageable, but header + body is too long
-            // Truncate the body to fit
-            int availableSpace = MAX_CONTENT_LENGTH - emailHeader.length() - 12; // 12 for ". Content: "
-            String truncatedBody = emailBody.length() > availableSpace ?
-                    emailBody.substring(0, availableSpace) + "..." : emailBody;
+            bodyChunks = List.of("");
+        }
 
-            String content = emailHeader + ". Content: " + truncatedBody;
+        for (int i = 0; i < bodyChunks.size(); i++) {
+            String chunkContent = bodyChunks.size() == 1
+                    ? emailHeader + ". Content: " + bodyChunks.get(i)
+                    : emailHeader + ". Content (Part " + (i + 1) + "/" + bodyChunks.size() + "): " + bodyChunks.get(i);
 
             Map<String, Object> metadata = new HashMap<>(baseMetadata);
-            metadata.put("chunkIndex", 0);
-            metadata.put("totalChunks", 1);
-            metadata.put("isComplete", emailBody.length() <= availableSpace);
-            metadata.put("truncated", emailBody.length() > availableSpace);
+            metadata.put("chunkIndex", i);
+            metadata.put("totalChunks", bodyChunks.size());
+            metadata.put("isComplete", bodyChunks.size() == 1);
 
-            documents.add(new Document(content, metadata));
+            documents.add(new Document(chunkContent, metadata));
         }
 
         return documents;
     }
 
     /**
-     * Split text into overlapping chunks.
+     * Send email using Gmail API.
      */
-    private List<String> chunkText(String text, int chunkSize, int overlap) {
-        List<String> chunks = new ArrayList<>();
-
-        if (text.length() <= chunkSize) {
-            chunks.add(text);
-            return chunks;
-        }
-
-        int start = 0;
-        while (start < text.length()) {
-            int end = Math.min(start + chunkSize, text.length());
-
-            // Try to break at word boundaries
-            if (end < text.length()) {
-                int lastSpace = text.lastIndexOf(' ', end);
-                if (lastSpace > start + chunkSize / 2) {
-                    end = lastSpace;
-                }
-            }
-
-            chunks.add(text.substring(start, end));
+    public String sendEmail(User user, String to, String subject, String body) {
+        try {
+            Message message = sendMessage(user, to, subject, body);
 
-            if (end >= text.length()) {
-                break;
-            }
+            return String.format("Email sent successfully to %s with subject '%s'. Message ID: %s",
+                    to, subject, message.getId());
 
-            start = end - overlap;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "Failed to send email: " + e.getMessage();
         }
+    }
 
-        return chunks;
+    /**
+     * Send an email and record it locally; the returned message carries the Gmail thread id
+     * that replies will arrive on.
+     */
+    public Message sendMessage(User user, String to, String subject, String body) throws Exception {
+        Gmail service = getGmailService(user);
+
+        // Create the email content
+        Properties props = new Properties();
+        Session session = Session.getDefaultInstance(props, null);
+
+        MimeMessage email = new MimeMessage(session);
+        email.setFrom(user.getEmail());
+        email.addRecipient(javax.mail.Message.RecipientType.TO, new javax.mail.internet.InternetAddress(to));
+        email.setSubject(subject);
+        email.setText(body);
+
+        // Encode the email
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        email.writeTo(buffer);
+        byte[] bytes = buffer.toByteArray();
+        String encodedEmail = Base64.getUrlEncoder().encodeToString(bytes);
+
+        // Create Gmail message
+        Message message = new Message();
+        message.setRaw(encodedEmail);
+
+        // Send the message
+        quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user);
+        message = service.users().messages().send(user.getEmail(), message).execute();
+
+        // Store sent email in database
+        Email sentEmail = new Email(user, message.getId(), user.getEmail(), subject);
+        sentEmail.setThreadId(message.getThreadId());
+        sentEmail.setToEmail(to);
+        sentEmail.setBody(body);
+        sentEmail.setSentAt(LocalDateTime.now());
+        emailRepository.save(sentEmail);
+
+        return message;
     }
 
     /**
-     * Send email using Gmail API.
+     * Fetch a single message by Gmail id and store it; empty if it no longer exists or can't be
+     * parsed. Any other failure throws, so the caller can retry.
      */
-    public String sendEmail(User user, String to, String subject, String body) {
+    public Optional<Email> fetchEmail(User user, String gmailId) {
+        Gmail service = getGmailService(user);
+        Message message;
         try {
-            Gmail service = getGmailService(user);
-
-            // Create the email content
-            Properties props = new Properties();
-            Session session = Session.getDefaultInstance(props, null);
+            quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user);
+            message = service.users().messages().get(user.getEmail(), gmailId).execute();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) {
+                throw new IllegalStateException("Failed to fetch Gmail message " + gmailId, e);
+            }
+            log.info("Gmail message {} was deleted before it could be fetched", gmailId);
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to fetch Gmail message " + gmailId, e);
+        }
 
-            MimeMessage email = new MimeMessage(session);
-            email.setFrom(user.getEmail());
-            email.addRecipient(javax.mail.Message.RecipientType.TO, new javax.mail.internet.InternetAddress(to));
-            email.setSubject(subject);
-            email.setText(body);
+        Email email = parseGmailMessage(user, message);
+        if (email != null) {
+            saveEmails(List.of(email));
+        }
+        return Optional.ofNullable(email);
+    }
 
-            // Encode the email
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            email.writeTo(buffer);
-            byte[] bytes = buffer.toByteArray();
-            String encodedEmail = Base64.getUrlEncoder().encodeToString(bytes);
+    /**
+     * Messages a push notification covers and the history id to store once they are processed.
+     */
+    public record NewMessages(List<String> ids, long historyId) {
+    }
 
-            // Create Gmail message
-            Message message = new Message();
-            message.setRaw(encodedEmail);
+    /**
+     * Ids of messages added to the mailbox since the last processed notification, oldest first,
+     * leaving out the user's own sent mail and drafts. The stored history id is left alone; the
+     * caller passes the returned one to {@link #advanceHistoryId} once every message is handled,
+     * so a retry after a failure sees the same messages again.
+     *
+     * <p>Without a stored history id (the first notification), or when Gmail no longer has history
+     * that far back, the cursor restarts at the notified id and nothing is returned; the
+     * incremental index picks those messages up.</p>
+     */
+    public NewMessages newMessages(User user, long notifiedHistoryId) {
+        Long startHistoryId = user.getGmailHistoryId();
+        if (startHistoryId == null || startHistoryId >= notifiedHistoryId) {
+            return new NewMessages(List.of(), notifiedHistoryId);
+        }
 
-            // Send the message
-            message = service.users().messages().send(user.getEmail(), message).execute();
+        Gmail service = getGmailService(user);
+        Set<String> messageIds = new LinkedHashSet<>();
+        BigInteger latest = BigInteger.valueOf(notifiedHistoryId);
+        String pageToken = null;
+        try {
+            do {
+                quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user);
+                ListHistoryResponse response = service.users().history()
+                        .list(user.getEmail())
+                        .setStartHistoryId(BigInteger.valueOf(startHistoryId))
+                        .setHistoryTypes(List.of("messageAdded"))
+                        .setPageToken(pageToken)
+                        .execute();
+
+                if (response.getHistory() != null) {
+                    for (History history : response.getHistory()) {
+                        if (history.getMessagesAdded() == null) {
+                            continue;
+                        }
+                        for (HistoryMessageAdded added : history.getMessagesAdded()) {
+                            List<String> labels = added.getMessage().getLabelIds();
+                            if (labels == null || !(labels.contains("SENT") || labels.contains("DRAFT"))) {
+                                messageIds.add(added.getMessage().getId());
+                            }
+                        }
+                    }
+                }
+                if (response.getHistoryId() != null && response.getHistoryId().compareTo(latest) > 0) {
+                    latest = response.getHistoryId();
+                }
+                pageToken = response.getNextPageToken();
+            } while (pageToken != null);
 
-            // Store sent email in database
-            Email sentEmail = new Email(user, message.getId(), user.getEmail(), subject);
-            sentEmail.setToEmail(to);
-            sentEmail.setBody(body);
-            sentEmail.setSentAt(LocalDateTime.now());
-            emailRepository.save(sentEmail);
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) {
+                throw new IllegalStateException("Failed to list Gmail history for " + user.getEmail(), e);
+            }
+            // The start id has expired (Gmail keeps about a week of history)
+            return new NewMessages(List.of(), notifiedHistoryId);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to list Gmail history for " + user.getEmail(), e);
+        }
 
-            return String.format("Email sent successfully to %s with subject '%s'. Message ID: %s",
-                    to, subject, message.getId());
+        return new NewMessages(List.copyOf(messageIds), latest.longValue());
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Failed to send email: " + e.getMessage();
+    /**
+     * Store the history id new-mail notifications have been processed up to; never moves back.
+     */
+    public void advanceHistoryId(User user, long historyId) {
+        if (userRepository.advanceGmailHistoryId(user.getId(), historyId) > 0) {
+            userService.evictCachedUser(user.getId());
         }
     }
 
     /**
-     * Process Gmail message and save to database.
+     * Map a Gmail message to an (unsaved) email entity.
      */
-    private Email processGmailMessage(User user, Message message) {
+    private Email parseGmailMessage(User user, Message message) {
         try {
-            // Check if email already exists
-            Optional<Email> existingEmail = emailRepository.findByGmailId(message.getId());
-            if (existingEmail.isPresent()) {
-                return existingEmail.get();
-            }
-
             MessagePart payload = message.getPayload();
             Map<String, String> headers = new HashMap<>();
 
@@ -301,6 +495,7 @@ public class GmailService {
 
             // Create email entity
             Email email = new Email(user, message.getId(), fromEmail, subject);
+            email.setThreadId(message.getThreadId());
             email.setFromName(fromName);
             email.setToEmail(to);
             email.setBody(body);
@@ -309,8 +504,9 @@ public class GmailService {
                     ZoneId.systemDefault()
             ));
             email.setRead(message.getLabelIds() == null || !message.getLabelIds().contains("UNREAD"));
+            email.setImportant(message.getLabelIds() != null && message.getLabelIds().contains("IMPORTANT"));
 
-            return emailRepository.save(email);
+            return email;
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -318,6 +514,30 @@ public class GmailService {
         }
     }
 
+    /**
+     * Upsert emails with JDBC batches keyed on gmail_id: one round trip per batch instead of a
+     * lookup and an insert per message. Existing rows only get a missing thread id backfilled.
+     */
+    private void saveEmails(List<Email> emails) {
+        for (int start = 0; start < emails.size(); start += EMAIL_BATCH_SIZE) {
+            List<Email> batch = emails.subList(start, Math.min(start + EMAIL_BATCH_SIZE, emails.size()));
+            jdbcTemplate.batchUpdate(EMAIL_UPSERT_SQL, batch, batch.size(), (ps, email) -> {
+                ps.setLong(1, email.getUser().getId());
+                ps.setString(2, email.getGmailId());
+                ps.setString(3, email.getThreadId());
+                ps.setString(4, email.getFromEmail());
+                ps.setString(5, email.getFromName());
+                ps.setString(6, email.getToEmail());
+                ps.setString(7, email.getSubject());
+                ps.setString(8, email.getBody());
+                ps.setTimestamp(9, email.getSentAt() != null ? Timestamp.valueOf(email.getSentAt()) : null);
+                ps.setTimestamp(10, email.getReceivedAt() != null ? Timestamp.valueOf(email.getReceivedAt()) : null);
+                ps.setBoolean(11, email.isRead());
+                ps.setBoolean(12, email.isImportant());
+            });
+        }
+    }
+
     /**
      * Extract email body from message payload.
      */
@@ -372,6 +592,7 @@ public class GmailService {
             Gmail service = getGmailService(user);
 
             // Search using Gmail API query syntax
+            quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user);
             ListMessagesResponse response = service.users().messages()
                     .list(user.getEmail())
                     .setQ(query)
@@ -382,17 +603,9 @@ public class GmailService {
                 return new ArrayList<>();
             }
 
-            return response.getMessages().stream()
-                    .map(message -> {
-                        try {
-                            Message fullMessage = service.users().messages()
-                                    .get(user.getEmail(), message.getId())
-                                    .execute();
-                            return extractEmailSummary(fullMessage);
-                        } catch (Exception e) {
-                            return "Error retrieving message: " + e.getMessage();
-                        }
-                    })
+            return fetchMessagesConcurrently(service, user, response.getMessages()).stream()
+                    .map(CompletableFuture::join)
+                    .map(fullMessage -> fullMessage != null ? extractEmailSummary(fullMessage) : "Error retrieving message")
                     .collect(Collectors.toList());
 
         } catch (Exception e) {
@@ -442,22 +655,20 @@ public class GmailService {
             Gmail service = getGmailService(user);
 
             // Get latest emails
+            quotaManager.acquire(OutboundQuotaManager.Provider.GMAIL, user);
             ListMessagesResponse response = service.users().messages()
                     .list(user.getEmail())
                     .setMaxResults(20L)
                     .execute();
 
             if (response.getMessages() != null) {
-                for (Message message : response.getMessages()) {
-                    try {
-                        Message fullMessage = service.users().messages()
-                                .get(user.getEmail(), message.getId())
-                                .execute();
-                        processGmailMessage(user, fullMessage);
-                    } catch (Exception e) {
-                        System.err.println("Error syncing message " + message.getId());
-                    }
-                }
+                List<Email> emails = fetchMessagesConcurrently(service, user, response.getMessages()).stream()
+                        .map(CompletableFuture::join)
+                        .filter(Objects::nonNull)
+                        .map(fullMessage -> parseGmailMessage(user, fullMessage))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+                saveEmails(emails);
             }
 
         } catch (Exception e) {
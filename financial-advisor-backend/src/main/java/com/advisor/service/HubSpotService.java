@@ -3,11 +3,17 @@ package com.advisor.service;
 import com.advisor.model.Contact;
 import com.advisor.model.User;
 import com.advisor.repository.ContactRepository;
+import com.advisor.repository.UserRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -15,29 +21,37 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class HubSpotService {
 
     private final ContactRepository contactRepository;
+    private final OutboundQuotaManager quotaManager;
+    private final IndexingPipelineMetrics pipelineMetrics;
+    private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OAuthTokenManager tokenManager;
+    private final UserService userService;
 
     @Value("${hubspot.client-id}")
     private String hubspotClientId;
 
-    @Value("${hubspot.client-secret}")
-    private String hubspotClientSecret;
-
     @Value("${hubspot.redirect-uri:http://localhost:3000/auth/hubspot/callback}")
     private String hubspotRedirectUri;
 
@@ -45,6 +59,11 @@ public class HubSpotService {
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private static final String HUBSPOT_API_BASE = "https://api.hubapi.com";
+    private static final List<String> CONTACT_PROPERTIES = List.of(
+            "firstname", "lastname", "email", "company", "phone", "notes_last_contacted", "lastmodifieddate");
+    private static final int CONTACT_PAGE_SIZE = 100; // HubSpot maximum per page
+    private static final int SEARCH_RESULT_LIMIT = 10_000; // search API stops paging here
+    private static final Duration INCREMENTAL_SYNC_OVERLAP = Duration.ofMinutes(5);
 
     /**
      * Create HTTP headers with HubSpot access token.
@@ -52,7 +71,7 @@ public class HubSpotService {
     private HttpHeaders createHeaders(User user) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(user.getHubspotAccessToken());
+        headers.setBearerAuth(tokenManager.hubspotAccessToken(user));
         return headers;
     }
 
@@ -89,6 +108,7 @@ public class HubSpotService {
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
 
             // Call HubSpot API
+            quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
             ResponseEntity<String> response = restTemplate.postForEntity(
                     HUBSPOT_API_BASE + "/crm/v3/objects/contacts",
                     entity,
@@ -106,6 +126,7 @@ public class HubSpotService {
                 contact.setNotes(notes);
                 contact.setLastSyncAt(LocalDateTime.now());
                 contactRepository.save(contact);
+                eventPublisher.publishEvent(new ContactsChangedEvent(user.getId()));
 
                 return String.format("Contact '%s' created successfully in HubSpot with ID: %s", name, hubspotId);
             } else {
@@ -128,6 +149,7 @@ public class HubSpotService {
             contact.setCompany(company);
             contact.setNotes(notes);
             contactRepository.save(contact);
+            eventPublisher.publishEvent(new ContactsChangedEvent(user.getId()));
 
             return String.format("Contact '%s' created successfully (stored locally - HubSpot integration pending)", name);
         } catch (Exception e) {
@@ -152,6 +174,7 @@ public class HubSpotService {
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
 
             // Call HubSpot API
+            quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
             restTemplate.exchange(
                     HUBSPOT_API_BASE + "/crm/v3/objects/contacts/" + contactId,
                     HttpMethod.PATCH,
@@ -160,7 +183,7 @@ public class HubSpotService {
             );
 
             // Update local contact as well
-            updateLocalContactByHubSpotId(contactId, updates);
+            updateLocalContactByHubSpotId(user, contactId, updates);
 
             return String.format("Contact %s updated successfully in HubSpot", contactId);
 
@@ -194,6 +217,7 @@ public class HubSpotService {
                 }
 
                 contactRepository.save(contact);
+                eventPublisher.publishEvent(new ContactsChangedEvent(contact.getUser().getId()));
                 return "Contact updated successfully (locally)";
             } else {
                 return "Contact not found";
@@ -206,9 +230,9 @@ public class HubSpotService {
     /**
      * Update local contact by HubSpot ID.
      */
-    private void updateLocalContactByHubSpotId(String hubspotId, Map<String, String> updates) {
+    private void updateLocalContactByHubSpotId(User user, String hubspotId, Map<String, String> updates) {
         try {
-            Optional<Contact> contactOpt = contactRepository.findByHubspotId(hubspotId);
+            Optional<Contact> contactOpt = contactRepository.findByUserAndHubspotId(user, hubspotId);
             if (contactOpt.isPresent()) {
                 Contact contact = contactOpt.get();
 
@@ -221,6 +245,7 @@ public class HubSpotService {
 
                 contact.setLastSyncAt(LocalDateTime.now());
                 contactRepository.save(contact);
+                eventPublisher.publishEvent(new ContactsChangedEvent(user.getId()));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -231,93 +256,39 @@ public class HubSpotService {
      * Get contacts as documents for RAG indexing.
      */
     public List<Document> getContactsAsDocuments(User user) {
-        try {
-            List<Document> documents = new ArrayList<>();
-
-            if (user.getHubspotAccessToken() != null) {
-                // Fetch from HubSpot API
-                documents.addAll(fetchHubSpotContacts(user));
-            }
-
-            // Also include local contacts
-            documents.addAll(fetchLocalContacts(user));
-
-            // If no contacts found, add sample data
-            if (documents.isEmpty()) {
-                documents.addAll(createSampleContactDocuments(user));
-            }
-
-            return documents;
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return createSampleContactDocuments(user);
-        }
+        List<Document> documents = new ArrayList<>();
+        streamContactDocuments(user, documents::add);
+        return documents;
     }
 
     /**
-     * Fetch contacts from HubSpot API.
+     * Streaming form of {@link #getContactsAsDocuments}: syncs HubSpot into the local contact
+     * table, then hands each local contact document to {@code sink} a page at a time, so a
+     * blocking sink applies backpressure. A failed sync throws, so the indexing step fails and is
+     * retried rather than indexing a stale table as if it were complete.
+     *
+     * @return number of documents emitted
      */
-    private List<Document> fetchHubSpotContacts(User user) {
-        List<Document> documents = new ArrayList<>();
-
-        try {
-            HttpHeaders headers = createHeaders(user);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            // Fetch contacts from HubSpot
-            ResponseEntity<String> response = restTemplate.exchange(
-                    HUBSPOT_API_BASE + "/crm/v3/objects/contacts?properties=firstname,lastname,email,company,notes_last_contacted&limit=100",
-                    HttpMethod.GET,
-                    entity,
-                    String.class
-            );
+    public int streamContactDocuments(User user, Consumer<Document> sink) {
+        AtomicInteger emitted = new AtomicInteger();
+        Consumer<Document> counting = document -> {
+            sink.accept(document);
+            emitted.incrementAndGet();
+            pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.PARSE, 1);
+        };
 
-            if (response.getStatusCode() == HttpStatus.OK) {
-                JsonNode responseJson = objectMapper.readTree(response.getBody());
-                JsonNode results = responseJson.get("results");
+        if (user.getHubspotAccessToken() != null) {
+            // Bring the local table up to date with HubSpot first
+            syncAllContacts(user);
+        }
 
-                for (JsonNode contact : results) {
-                    JsonNode properties = contact.get("properties");
+        fetchLocalContacts(user, counting);
 
-                    String firstName = getPropertyValue(properties, "firstname");
-                    String lastName = getPropertyValue(properties, "lastname");
-                    String email = getPropertyValue(properties, "email");
-                    String company = getPropertyValue(properties, "company");
-                    String notes = getPropertyValue(properties, "notes_last_contacted");
-
-                    String fullName = (firstName + " " + lastName).trim();
-                    String contactId = contact.get("id").asText();
-
-                    // Create document content
-                    String content = String.format(
-                            "Contact: %s, Email: %s, Company: %s. Notes: %s",
-                            fullName, email, company != null ? company : "Not specified",
-                            notes != null ? notes : "No notes available"
-                    );
-
-                    Map<String, Object> metadata = Map.of(
-                            "type", "contact",
-                            "contactId", contactId,
-                            "contactName", fullName,
-                            "email", email,
-                            "company", company != null ? company : "",
-                            "userId", user.getId().toString(),
-                            "source", "hubspot"
-                    );
-
-                    documents.add(new Document(content, metadata));
-
-                    // Also store/update local contact
-                    syncLocalContact(user, contactId, fullName, email, company, notes);
-                }
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        // If no contacts found, add sample data
+        if (emitted.get() == 0) {
+            createSampleContactDocuments(user).forEach(counting);
         }
-
-        return documents;
+        return emitted.get();
     }
 
     /**
@@ -328,44 +299,15 @@ public class HubSpotService {
         return property != null && !property.isNull() ? property.asText() : null;
     }
 
-    /**
-     * Sync contact with local database.
-     */
-    private void syncLocalContact(User user, String hubspotId, String name, String email, String company, String notes) {
-        try {
-            Optional<Contact> existingContact = contactRepository.findByHubspotId(hubspotId);
-            Contact contact;
-
-            if (existingContact.isPresent()) {
-                contact = existingContact.get();
-            } else {
-                contact = new Contact(user, name, email);
-                contact.setHubspotId(hubspotId);
-            }
-
-            contact.setName(name);
-            contact.setEmail(email);
-            contact.setCompany(company);
-            contact.setNotes(notes);
-            contact.setLastSyncAt(LocalDateTime.now());
-
-            contactRepository.save(contact);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
     /**
      * Fetch local contacts and convert to documents.
      */
-    private List<Document> fetchLocalContacts(User user) {
-        List<Document> documents = new ArrayList<>();
-
-        try {
-            List<Contact> contacts = contactRepository.findByUserOrderByNameAsc(user);
-
-            for (Contact contact : contacts) {
+    private void fetchLocalContacts(User user, Consumer<Document> sink) {
+        Pageable pageable = PageRequest.of(0, CONTACT_PAGE_SIZE);
+        Slice<Contact> page;
+        do {
+            page = contactRepository.findByUserOrderByIdAsc(user, pageable);
+            for (Contact contact : page) {
                 String content = String.format(
                         "Contact: %s, Email: %s, Company: %s. Phone: %s. Notes: %s",
                         contact.getName(),
@@ -375,24 +317,22 @@ public class HubSpotService {
                         contact.getNotes() != null ? contact.getNotes() : "No notes available"
                 );
 
-                Map<String, Object> metadata = Map.of(
-                        "type", "contact",
-                        "contactId", contact.getId().toString(),
-                        "contactName", contact.getName(),
-                        "email", contact.getEmail(),
-                        "company", contact.getCompany() != null ? contact.getCompany() : "",
-                        "userId", user.getId().toString(),
-                        "source", "local"
-                );
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("type", "contact");
+                metadata.put("contactId", contact.getId().toString());
+                metadata.put("contactName", contact.getName());
+                metadata.put("email", contact.getEmail() != null ? contact.getEmail() : "");
+                metadata.put("company", contact.getCompany() != null ? contact.getCompany() : "");
+                metadata.put("userId", user.getId().toString());
+                metadata.put("source", contact.getHubspotId() != null ? "hubspot" : "local");
+                if (contact.getHubspotId() != null) {
+                    metadata.put("hubspotId", contact.getHubspotId());
+                }
 
-                documents.add(new Document(content, metadata));
+                sink.accept(new Document(content, metadata));
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return documents;
+            pageable = page.nextPageable();
+        } while (page.hasNext());
     }
 
     /**
@@ -437,43 +377,9 @@ public class HubSpotService {
     }
 
     /**
-     * Search contacts in HubSpot and locally.
-     */
-    public List<Map<String, Object>> searchContacts(User user, String query) {
-        List<Map<String, Object>> results = new ArrayList<>();
-
-        try {
-            // Search local contacts first
-            List<Contact> localContacts = contactRepository.searchContacts(user, query);
-
-            for (Contact contact : localContacts) {
-                Map<String, Object> contactMap = new HashMap<>();
-                contactMap.put("id", contact.getId().toString());
-                contactMap.put("hubspotId", contact.getHubspotId());
-                contactMap.put("name", contact.getName());
-                contactMap.put("email", contact.getEmail());
-                contactMap.put("company", contact.getCompany());
-                contactMap.put("notes", contact.getNotes());
-                contactMap.put("source", "local");
-                results.add(contactMap);
-            }
-
-            // If HubSpot is connected, search there too
-            if (user.getHubspotAccessToken() != null) {
-                results.addAll(searchHubSpotContacts(user, query));
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return results;
-    }
-
-    /**
-     * Search contacts in HubSpot.
+     * Search contacts in HubSpot. Local lookups go through {@link ContactResolutionService}.
      */
-    private List<Map<String, Object>> searchHubSpotContacts(User user, String query) {
+    public List<Map<String, Object>> searchRemoteContacts(User user, String query) {
         List<Map<String, Object>> results = new ArrayList<>();
 
         try {
@@ -492,6 +398,7 @@ public class HubSpotService {
                     "limit", 10
             );
 
+            quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
             ResponseEntity<String> response = restTemplate.postForEntity(
                     searchUrl,
                     new HttpEntity<>(searchRequest, headers),
@@ -508,7 +415,9 @@ public class HubSpotService {
                     Map<String, Object> contactMap = new HashMap<>();
                     contactMap.put("id", contact.get("id").asText());
                     contactMap.put("hubspotId", contact.get("id").asText());
-                    contactMap.put("name", getPropertyValue(properties, "firstname") + " " + getPropertyValue(properties, "lastname"));
+                    String firstName = getPropertyValue(properties, "firstname");
+                    String lastName = getPropertyValue(properties, "lastname");
+                    contactMap.put("name", ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim());
                     contactMap.put("email", getPropertyValue(properties, "email"));
                     contactMap.put("company", getPropertyValue(properties, "company"));
                     contactMap.put("notes", getPropertyValue(properties, "notes_last_contacted"));
@@ -526,24 +435,208 @@ public class HubSpotService {
     }
 
     /**
-     * Sync all contacts from HubSpot.
+     * Sync contacts from HubSpot into the local contact table, upserting by HubSpot id. The first
+     * sync walks every page of the contacts list and drops local HubSpot contacts it didn't see;
+     * later syncs only ask the search API for contacts modified since the previous one, and drop
+     * contacts archived since then. Failures propagate and leave the sync cursor where it was.
+     *
+     * @return number of contacts created or updated
      */
-    public void syncAllContacts(User user) {
+    public int syncAllContacts(User user) {
         try {
             if (user.getHubspotAccessToken() == null) {
-                System.out.println("HubSpot not connected for user: " + user.getEmail());
-                return;
+                log.info("HubSpot not connected for user: {}", user.getEmail());
+                return 0;
             }
 
-            System.out.println("Syncing contacts from HubSpot for user: " + user.getEmail());
+            log.info("Syncing contacts from HubSpot for user: {}", user.getEmail());
 
-            // Fetch and sync contacts
-            fetchHubSpotContacts(user);
+            LocalDateTime startedAt = LocalDateTime.now();
+            LocalDateTime since = user.getHubspotContactsSyncedAt();
+            int synced;
+            int removed;
+            if (since == null) {
+                synced = fullContactSync(user);
+                // Every contact still in HubSpot was just stamped, so anything older is gone there
+                removed = contactRepository.deleteHubspotContactsNotSyncedSince(user, startedAt);
+            } else {
+                synced = incrementalContactSync(user, since);
+                removed = removeArchivedContacts(user, since);
+            }
+            if (removed > 0) {
+                eventPublisher.publishEvent(new ContactsChangedEvent(user.getId()));
+            }
 
-            System.out.println("Contact sync completed for user: " + user.getEmail());
+            userRepository.updateHubspotContactsSyncedAt(user.getId(), startedAt);
+            userService.evictCachedUser(user.getId());
+            user.setHubspotContactsSyncedAt(startedAt);
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            log.info("Contact sync completed for user: {} ({} contacts, {} removed)", user.getEmail(), synced, removed);
+            return synced;
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to sync HubSpot contacts for " + user.getEmail(), e);
+        }
+    }
+
+    private int fullContactSync(User user) throws IOException {
+        HttpEntity<String> entity = new HttpEntity<>(createHeaders(user));
+        int synced = 0;
+        String after = null;
+        do {
+            String url = HUBSPOT_API_BASE + "/crm/v3/objects/contacts?limit=" + CONTACT_PAGE_SIZE
+                    + "&properties=" + String.join(",", CONTACT_PROPERTIES)
+                    + (after != null ? "&after=" + after : "");
+
+            quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
+            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
+
+            JsonNode page = objectMapper.readTree(response.getBody());
+            synced += upsertContacts(user, page.path("results"));
+            after = nextCursor(page);
+        } while (after != null);
+        return synced;
+    }
+
+    private int incrementalContactSync(User user, LocalDateTime since) throws IOException {
+        HttpHeaders headers = createHeaders(user);
+        // Overlap the window a little so edits racing the previous sync aren't missed; upserts are idempotent
+        long modifiedSince = since.minus(INCREMENTAL_SYNC_OVERLAP).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int synced = 0;
+        String after = null;
+
+        while (true) {
+            Map<String, Object> filter = Map.of(
+                    "propertyName", "lastmodifieddate",
+                    "operator", "GTE",
+                    "value", String.valueOf(modifiedSince)
+            );
+            Map<String, Object> searchRequest = new HashMap<>();
+            searchRequest.put("filterGroups", List.of(Map.of("filters", List.of(filter))));
+            searchRequest.put("sorts", List.of(Map.of("propertyName", "lastmodifieddate", "direction", "ASCENDING")));
+            searchRequest.put("properties", CONTACT_PROPERTIES);
+            searchRequest.put("limit", CONTACT_PAGE_SIZE);
+            if (after != null) {
+                searchRequest.put("after", after);
+            }
+
+            quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
+            ResponseEntity<String> response = restTemplate.postForEntity(
+                    HUBSPOT_API_BASE + "/crm/v3/objects/contacts/search",
+                    new HttpEntity<>(searchRequest, headers),
+                    String.class
+            );
+
+            JsonNode page = objectMapper.readTree(response.getBody());
+            JsonNode results = page.path("results");
+            synced += upsertContacts(user, results);
+
+            after = nextCursor(page);
+            if (after == null) {
+                return synced;
+            }
+            if (parseCursor(after) >= SEARCH_RESULT_LIMIT) {
+                // Search stops paging after 10k results; restart the window from the last modification seen
+                String lastModified = results.isEmpty() ? null
+                        : getPropertyValue(results.get(results.size() - 1).path("properties"), "lastmodifieddate");
+                long restartFrom = lastModified != null ? Instant.parse(lastModified).toEpochMilli() : modifiedSince;
+                if (restartFrom <= modifiedSince) {
+                    return synced;
+                }
+                modifiedSince = restartFrom;
+                after = null;
+            }
+        }
+    }
+
+    /**
+     * Delete local copies of contacts archived (HubSpot's delete) since the previous sync. The
+     * search API never returns archived contacts, so they are listed separately; HubSpot purges
+     * them after 90 days, which keeps the list short.
+     */
+    private int removeArchivedContacts(User user, LocalDateTime since) throws IOException {
+        HttpEntity<String> entity = new HttpEntity<>(createHeaders(user));
+        Instant archivedSince = since.minus(INCREMENTAL_SYNC_OVERLAP).atZone(ZoneId.systemDefault()).toInstant();
+        int removed = 0;
+        String after = null;
+        do {
+            String url = HUBSPOT_API_BASE + "/crm/v3/objects/contacts?archived=true&limit=" + CONTACT_PAGE_SIZE
+                    + (after != null ? "&after=" + after : "");
+
+            quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
+            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
+
+            JsonNode page = objectMapper.readTree(response.getBody());
+            List<String> archived = new ArrayList<>();
+            for (JsonNode result : page.path("results")) {
+                String archivedAt = result.path("archivedAt").asText(null);
+                if (archivedAt == null || !Instant.parse(archivedAt).isBefore(archivedSince)) {
+                    archived.add(result.get("id").asText());
+                }
+            }
+            if (!archived.isEmpty()) {
+                removed += contactRepository.deleteByUserAndHubspotIdIn(user, archived);
+            }
+            after = nextCursor(page);
+        } while (after != null);
+        return removed;
+    }
+
+    /**
+     * Upsert one page of HubSpot contacts into the local table.
+     */
+    private int upsertContacts(User user, JsonNode results) {
+        if (results == null || results.isEmpty()) {
+            return 0;
+        }
+        pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.FETCH, results.size());
+
+        List<String> hubspotIds = new ArrayList<>();
+        results.forEach(result -> hubspotIds.add(result.get("id").asText()));
+        Map<String, Contact> existing = new HashMap<>();
+        for (Contact contact : contactRepository.findByUserAndHubspotIdIn(user, hubspotIds)) {
+            existing.put(contact.getHubspotId(), contact);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Contact> contacts = new ArrayList<>();
+        for (JsonNode result : results) {
+            JsonNode properties = result.path("properties");
+            String hubspotId = result.get("id").asText();
+
+            String firstName = getPropertyValue(properties, "firstname");
+            String lastName = getPropertyValue(properties, "lastname");
+            String email = getPropertyValue(properties, "email");
+            String fullName = ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+
+            Contact contact = existing.get(hubspotId);
+            if (contact == null) {
+                contact = new Contact(user, null, null);
+                contact.setHubspotId(hubspotId);
+            }
+            contact.setName(!fullName.isEmpty() ? fullName : email);
+            contact.setEmail(email);
+            contact.setCompany(getPropertyValue(properties, "company"));
+            contact.setPhone(getPropertyValue(properties, "phone"));
+            contact.setNotes(getPropertyValue(properties, "notes_last_contacted"));
+            contact.setLastSyncAt(now);
+            contacts.add(contact);
+        }
+        contactRepository.saveAll(contacts);
+        eventPublisher.publishEvent(new ContactsChangedEvent(user.getId()));
+        return contacts.size();
+    }
+
+    private String nextCursor(JsonNode page) {
+        JsonNode after = page.path("paging").path("next").path("after");
+        return after.isMissingNode() || after.isNull() || after.asText().isEmpty() ? null : after.asText();
+    }
+
+    private int parseCursor(String after) {
+        try {
+            return Integer.parseInt(after);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
@@ -578,33 +671,13 @@ public class HubSpotService {
                 "&redirect_uri=" + java.net.URLEncoder.encode(hubspotRedirectUri, java.nio.charset.StandardCharsets.UTF_8);
     }
 
-    public String exchangeCodeForToken(String code) {
+    /**
+     * Exchange the OAuth callback code for access and refresh tokens.
+     */
+    public OAuthTokenManager.TokenGrant exchangeCodeForToken(String code) {
         try {
-            String tokenUrl = "https://api.hubapi.com/oauth/v1/token";
-
-            MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-            params.add("grant_type", "authorization_code");
-            params.add("client_id", hubspotClientId);
-            params.add("client_secret", hubspotClientSecret);
-            params.add("redirect_uri", hubspotRedirectUri);
-            params.add("code", code);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-            HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(params, headers);
-
-            ResponseEntity<String> response = restTemplate.postForEntity(tokenUrl, entity, String.class);
-
-            if (response.getStatusCode() == HttpStatus.OK) {
-                JsonNode responseJson = objectMapper.readTree(response.getBody());
-                return responseJson.get("access_token").asText();
-            } else {
-                throw new RuntimeException("Token exchange failed with status: " + response.getStatusCode());
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+            return tokenManager.exchangeHubSpotCode(code, hubspotRedirectUri);
+        } catch (java.io.IOException e) {
             throw new RuntimeException("Error exchanging code for token: " + e.getMessage(), e);
         }
     }
@@ -0,0 +1,277 @@
+package com.advisor.service;
+
+import com.advisor.config.AsyncConfig;
+import com.advisor.dto.IndexingJobResponse;
+import com.advisor.model.IndexingJob;
+import com.advisor.model.IndexingJobStep;
+import com.advisor.model.User;
+import com.advisor.repository.IndexingJobRepository;
+import com.advisor.repository.IndexingJobStepRepository;
+import com.advisor.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Durable background indexing. Jobs are rows in {@code indexing_jobs} with one step per source;
+ * a poller claims queued jobs up to a global concurrency limit (one job per user at a time) and
+ * runs them on the I/O executor. Completed steps are checkpoints, so a job interrupted by a
+ * restart resumes at the first unfinished source once its heartbeat goes stale. Each node only
+ * runs jobs of users in the partitions it owns (see {@link ClusterCoordinator}).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IndexingJobService {
+
+    private static final List<IndexingJob.JobStatus> ACTIVE = List.of(IndexingJob.JobStatus.QUEUED, IndexingJob.JobStatus.RUNNING);
+
+    private final IndexingJobRepository jobRepository;
+    private final IndexingJobStepRepository stepRepository;
+    private final UserRepository userRepository;
+    private final RAGService ragService;
+    private final GmailService gmailService;
+    private final ClusterCoordinator clusterCoordinator;
+
+    @Qualifier(AsyncConfig.IO_EXECUTOR)
+    private final AsyncTaskExecutor ioTaskExecutor;
+
+    @Value("${indexing.jobs.max-concurrent:2}")
+    private int maxConcurrentJobs;
+
+    @Value("${indexing.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${indexing.jobs.stale-after-ms:600000}")
+    private long staleAfterMs;
+
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+    private final Set<Long> runningUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Queue a job for the user unless one is already queued or running.
+     */
+    public IndexingJob enqueue(User user, IndexingJob.JobType type) {
+        Optional<IndexingJob> active = jobRepository.findFirstByUserAndStatusInOrderByCreatedAtDesc(user, ACTIVE);
+        if (active.isPresent()) {
+            return active.get();
+        }
+
+        IndexingJob job = jobRepository.save(new IndexingJob(user, type));
+        for (IndexingJobStep.Source source : IndexingJobStep.Source.values()) {
+            stepRepository.save(new IndexingJobStep(job, source));
+        }
+        log.info("Queued {} indexing job {} for user {}", type, job.getId(), user.getId());
+        return job;
+    }
+
+    /**
+     * First login gets a full index; later logins only pick up what changed.
+     */
+    public IndexingJob enqueueOnLogin(User user) {
+        boolean indexedBefore = jobRepository
+                .findFirstByUserAndStatusOrderByCompletedAtDesc(user, IndexingJob.JobStatus.COMPLETED)
+                .isPresent();
+        return enqueue(user, indexedBefore ? IndexingJob.JobType.INCREMENTAL : IndexingJob.JobType.FULL);
+    }
+
+    @Scheduled(fixedDelayString = "${indexing.jobs.poll-interval-ms:5000}")
+    public void dispatch() {
+        LocalDateTime now = LocalDateTime.now();
+        if (!runningJobs.isEmpty()) {
+            jobRepository.heartbeat(runningJobs, now);
+        }
+
+        int free = maxConcurrentJobs - runningJobs.size();
+        Set<Integer> partitions = clusterCoordinator.ownedPartitions();
+        if (free <= 0 || partitions.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime staleBefore = now.minus(Duration.ofMillis(staleAfterMs));
+        for (IndexingJob job : jobRepository.findRunnable(staleBefore, clusterCoordinator.partitions(), partitions, free * 4)) {
+            if (free == 0) {
+                break;
+            }
+            Long userId = job.getUser().getId();
+            if (runningJobs.contains(job.getId()) || runningUsers.contains(userId)) {
+                continue;
+            }
+            if (job.getAttempts() >= maxAttempts) {
+                finish(job, IndexingJob.JobStatus.FAILED, "Gave up after " + job.getAttempts() + " attempts");
+                continue;
+            }
+            if (jobRepository.claim(job.getId(), now, staleBefore) == 1 && runningUsers.add(userId)) {
+                runningJobs.add(job.getId());
+                free--;
+                ioTaskExecutor.execute(() -> run(job.getId(), userId));
+            }
+        }
+    }
+
+    private void run(Long jobId, Long userId) {
+        try {
+            IndexingJob job = jobRepository.findById(jobId).orElseThrow();
+            User user = userRepository.findById(userId).orElseThrow();
+
+            if (job.getType() == IndexingJob.JobType.FULL && job.getAttempts() == 1) {
+                gmailService.resetIndexed(user);
+            }
+
+            // Sources run concurrently; each step is checkpointed as soon as its documents are persisted
+            Map<IndexingJobStep.Source, IndexingJobStep> pending = new EnumMap<>(IndexingJobStep.Source.class);
+            for (IndexingJobStep step : stepRepository.findByJobOrderByIdAsc(job)) {
+                if (step.getStatus() != IndexingJobStep.StepStatus.COMPLETED) {
+                    step.setStatus(IndexingJobStep.StepStatus.RUNNING);
+                    step.setStartedAt(LocalDateTime.now());
+                    step.setError(null);
+                    pending.put(step.getSource(), stepRepository.save(step));
+                }
+            }
+
+            List<RAGService.SourceResult> results = ragService.indexSources(user, pending.keySet(),
+                    result -> checkpoint(pending.get(result.source()), result));
+
+            List<String> errors = results.stream()
+                    .filter(result -> result.error() != null)
+                    .map(result -> result.source() + ": " + result.error())
+                    .toList();
+            if (!errors.isEmpty()) {
+                throw new IllegalStateException(String.join("; ", errors));
+            }
+
+            finish(job, IndexingJob.JobStatus.COMPLETED, null);
+            log.info("Indexing job {} completed for user {}", jobId, userId);
+
+        } catch (Exception e) {
+            log.error("Indexing job {} failed: {}", jobId, e.getMessage(), e);
+            jobRepository.findById(jobId).ifPresent(job -> {
+                if (job.getAttempts() < maxAttempts) {
+                    // Back to the queue; completed steps are kept
+                    job.setStatus(IndexingJob.JobStatus.QUEUED);
+                    job.setError(e.getMessage());
+                    jobRepository.save(job);
+                } else {
+                    finish(job, IndexingJob.JobStatus.FAILED, e.getMessage());
+                }
+            });
+        } finally {
+            runningJobs.remove(jobId);
+            runningUsers.remove(userId);
+        }
+    }
+
+    private void checkpoint(IndexingJobStep step, RAGService.SourceResult result) {
+        step.setItemsIndexed(result.indexed());
+        step.setCompletedAt(LocalDateTime.now());
+        step.setStatus(result.error() == null ? IndexingJobStep.StepStatus.COMPLETED : IndexingJobStep.StepStatus.FAILED);
+        step.setError(result.error());
+        stepRepository.save(step);
+    }
+
+    private void finish(IndexingJob job, IndexingJob.JobStatus status, String error) {
+        job.setStatus(status);
+        job.setError(error);
+        job.setCompletedAt(LocalDateTime.now());
+        jobRepository.save(job);
+    }
+
+    public Optional<IndexingJobResponse> getLatestProgress(User user) {
+        return jobRepository.findFirstByUserOrderByCreatedAtDesc(user).map(job -> toResponse(user, job));
+    }
+
+    public Optional<IndexingJobResponse> getProgress(User user, Long jobId) {
+        return jobRepository.findById(jobId)
+                .filter(job -> job.getUser().getId().equals(user.getId()))
+                .map(job -> toResponse(user, job));
+    }
+
+    private IndexingJobResponse toResponse(User user, IndexingJob job) {
+        List<IndexingJobStep> steps = stepRepository.findByJobOrderByIdAsc(job);
+        long completed = steps.stream().filter(s -> s.getStatus() == IndexingJobStep.StepStatus.COMPLETED).count();
+
+        return IndexingJobResponse.builder()
+                .jobId(job.getId())
+                .type(job.getType().name())
+                .status(job.getStatus().name())
+                .percentComplete(steps.isEmpty() ? 0 : (int) (completed * 100 / steps.size()))
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .completedAt(job.getCompletedAt())
+                .estimatedCompletionAt(estimateCompletion(user, job, steps))
+                .error(job.getError())
+                .steps(steps.stream()
+                        .map(step -> IndexingJobResponse.StepProgress.builder()
+                                .source(step.getSource().name())
+                                .status(step.getStatus().name())
+                                .itemsIndexed(step.getItemsIndexed())
+                                .startedAt(step.getStartedAt())
+                                .completedAt(step.getCompletedAt())
+                                .build())
+                        .toList())
+                .counts(ragService.getIndexingStats(user))
+                .build();
+    }
+
+    /**
+     * ETA from how long each source took in this user's last completed job, falling back to the
+     * average of the steps this job already finished. Sources run concurrently, so the job ends
+     * with its slowest remaining step.
+     */
+    private LocalDateTime estimateCompletion(User user, IndexingJob job, List<IndexingJobStep> steps) {
+        if (job.getStatus() == IndexingJob.JobStatus.COMPLETED || job.getStatus() == IndexingJob.JobStatus.FAILED) {
+            return job.getCompletedAt();
+        }
+
+        Map<IndexingJobStep.Source, Duration> previous = new EnumMap<>(IndexingJobStep.Source.class);
+        jobRepository.findFirstByUserAndStatusOrderByCompletedAtDesc(user, IndexingJob.JobStatus.COMPLETED)
+                .ifPresent(last -> stepRepository.findByJobOrderByIdAsc(last).forEach(step -> {
+                    Duration duration = durationOf(step);
+                    if (duration != null) {
+                        previous.put(step.getSource(), duration);
+                    }
+                }));
+
+        List<Duration> finished = steps.stream().map(this::durationOf).filter(d -> d != null).toList();
+        Duration average = finished.isEmpty() ? null
+                : finished.stream().reduce(Duration.ZERO, Duration::plus).dividedBy(finished.size());
+
+        LocalDateTime now = LocalDateTime.now();
+        Duration remaining = Duration.ZERO;
+        for (IndexingJobStep step : steps) {
+            if (step.getStatus() == IndexingJobStep.StepStatus.COMPLETED) {
+                continue;
+            }
+            Duration expected = previous.getOrDefault(step.getSource(), average);
+            if (expected == null) {
+                return null; // nothing to base an estimate on yet
+            }
+            if (step.getStatus() == IndexingJobStep.StepStatus.RUNNING && step.getStartedAt() != null) {
+                Duration elapsed = Duration.between(step.getStartedAt(), now);
+                expected = expected.compareTo(elapsed) > 0 ? expected.minus(elapsed) : Duration.ZERO;
+            }
+            remaining = expected.compareTo(remaining) > 0 ? expected : remaining;
+        }
+        return now.plus(remaining);
+    }
+
+    private Duration durationOf(IndexingJobStep step) {
+        if (step.getStatus() != IndexingJobStep.StepStatus.COMPLETED || step.getStartedAt() == null || step.getCompletedAt() == null) {
+            return null;
+        }
+        return Duration.between(step.getStartedAt(), step.getCompletedAt());
+    }
+}
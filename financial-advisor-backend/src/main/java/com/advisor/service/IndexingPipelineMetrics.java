@@ -0,0 +1,71 @@
+package com.advisor.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Throughput and backlog of the indexing pipeline. Each stage counts the items it hands on
+ * ({@code indexing.pipeline.items}) and times its batches; bounded queues between stages are
+ * tracked while a run is active and reported as {@code indexing.pipeline.queue.depth}.
+ */
+@Component
+@RequiredArgsConstructor
+public class IndexingPipelineMetrics {
+
+    public enum Stage {
+        FETCH, PARSE, CHUNK, EMBED, PERSIST;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Set<Queue<?>>> liveQueues = new ConcurrentHashMap<>();
+
+    public void recordItems(Stage stage, int count) {
+        if (count > 0) {
+            meterRegistry.counter("indexing.pipeline.items", "stage", stage.tag()).increment(count);
+        }
+    }
+
+    public <T> T time(Stage stage, Supplier<T> work) {
+        return Timer.builder("indexing.pipeline.stage.duration")
+                .description("Time spent per indexing pipeline batch")
+                .tag("stage", stage.tag())
+                .register(meterRegistry)
+                .record(work);
+    }
+
+    /**
+     * Report a run's queue under the given name until {@link #untrack} is called; depths of
+     * concurrent runs are summed.
+     */
+    public void track(String queueName, Queue<?> queue) {
+        liveQueues.computeIfAbsent(queueName, name -> {
+            Set<Queue<?>> queues = ConcurrentHashMap.newKeySet();
+            Gauge.builder("indexing.pipeline.queue.depth", queues, live -> live.stream().mapToInt(Queue::size).sum())
+                    .description("Items buffered between indexing pipeline stages")
+                    .tag("queue", name)
+                    .register(meterRegistry);
+            return queues;
+        }).add(queue);
+    }
+
+    public void untrack(String queueName, Queue<?> queue) {
+        Set<Queue<?>> queues = liveQueues.get(queueName);
+        if (queues != null) {
+            queues.remove(queue);
+        }
+    }
+}
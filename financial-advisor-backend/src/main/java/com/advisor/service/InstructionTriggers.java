@@ -0,0 +1,240 @@
+package com.advisor.service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ongoing instructions compiled into triggers that say which events are worth showing to the
+ * model. Each instruction clause becomes one trigger: the sources and event types its condition
+ * mentions, plus optional sender, label and keyword predicates. Topic words ("about the quarterly
+ * report") are matched one whole word at a time; only quoted text must appear as a phrase. An
+ * event is evaluated by the LLM only if some trigger matches it; a clause that names no source
+ * matches every event, so instructions the compiler cannot read are never silently ignored.
+ */
+public record InstructionTriggers(List<Trigger> triggers) {
+
+    public static final InstructionTriggers NONE = new InstructionTriggers(List.of());
+
+    public record Trigger(Set<ProactiveEvent.Source> sources, Set<String> eventTypes, List<String> senders,
+                          Set<String> labels, List<String> keywords, List<String> phrases) {
+
+        boolean matches(ProactiveEvent event) {
+            if (!sources.isEmpty() && !sources.contains(event.source())) {
+                return false;
+            }
+            if (!eventTypes.isEmpty() && (event.type() == null || !eventTypes.contains(event.type()))) {
+                return false;
+            }
+            if (!senders.isEmpty() && !matchesSender(event.sender())) {
+                return false;
+            }
+            if (!labels.isEmpty() && labels.stream().noneMatch(event.labels()::contains)) {
+                return false;
+            }
+            if (keywords.isEmpty() && phrases.isEmpty()) {
+                return true;
+            }
+            String text = event.text();
+            return text != null && (keywords.stream().anyMatch(keyword -> containsWord(text, keyword))
+                    || phrases.stream().anyMatch(text::contains));
+        }
+
+        private boolean matchesSender(String sender) {
+            if (sender == null) {
+                return false;
+            }
+            for (String expected : senders) {
+                // "@acme.com" is a domain predicate, anything else an exact address
+                if (expected.startsWith("@") ? sender.endsWith(expected) : sender.equals(expected)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public boolean matches(ProactiveEvent event) {
+        for (Trigger trigger : triggers) {
+            if (trigger.matches(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final Pattern CLAUSE_BREAK = Pattern.compile("(?<=[.!?;])\\s+|\\n+");
+    private static final Pattern CONDITION = Pattern.compile(
+            "\\b(?:when(?:ever)?|if|every time|each time|any time|after|once)\\b(.*?)(?:,|\\bthen\\b|$)");
+    private static final Pattern WORD = Pattern.compile("[a-z][a-z-]*");
+    private static final Pattern ADDRESS = Pattern.compile("[a-z0-9._%+-]+@[a-z0-9.-]+\\.[a-z]{2,}");
+    private static final Pattern DOMAIN = Pattern.compile("(?<![a-z0-9._%+-])@[a-z0-9.-]+\\.[a-z]{2,}");
+    private static final Pattern QUOTED = Pattern.compile("[\"\u201c]([^\"\u201d]{2,60})[\"\u201d]");
+    private static final Pattern FLAG = Pattern.compile("\\b(important|unread|starred)\\b");
+    private static final Pattern LABELED = Pattern.compile("\\blabel(?:l?ed)?\\s+[\"']?([a-z0-9_-]+)");
+    private static final Pattern TOPIC = Pattern.compile(
+            "\\b(?:about|mentioning|mentions|containing|contains|regarding|subject)\\s+"
+                    + "(?:(?:the|a|an|my|our|their)\\s+)?([a-z0-9][\\w-]*(?:\\s+[a-z0-9][\\w-]*){0,2})");
+
+    private static final Set<String> EMAIL_WORDS = Set.of(
+            "email", "emails", "emailed", "e-mail", "e-mails", "mail", "inbox", "message", "messages",
+            "reply", "replies", "replied", "writes", "wrote");
+    private static final Set<String> CALENDAR_WORDS = Set.of(
+            "calendar", "meeting", "meetings", "event", "events", "appointment", "appointments",
+            "invite", "invites", "invitation", "invitations");
+    private static final Set<String> HUBSPOT_WORDS = Set.of(
+            "hubspot", "crm", "contact", "contacts", "deal", "deals");
+
+    // Checked in this order so "rescheduled" is an update rather than a creation
+    private static final Pattern DELETED = Pattern.compile("delet\\w*|cancel\\w*|remov\\w*");
+    private static final Pattern UPDATED = Pattern.compile("updat\\w*|chang\\w*|modif\\w*|reschedul\\w*|mov(?:e|es|ed|ing)|edit\\w*");
+    private static final Pattern CREATED = Pattern.compile("creat\\w*|add(?:s|ed|ing)?|new|schedul\\w*|book(?:s|ed|ing)?");
+
+    // Words that end a topic phrase: "about taxes from a client" is about "taxes"
+    private static final Set<String> TOPIC_STOPS = Set.of("from", "to", "in", "on", "and", "or", "that", "with", "by");
+    // Topic words too common to say anything about an event on their own
+    private static final Set<String> FILLER_WORDS = Set.of(
+            "the", "a", "an", "my", "our", "their", "his", "her", "its", "your", "this", "these", "those",
+            "any", "some", "all", "new", "anything", "something", "stuff", "things", "of", "for", "at");
+    private static final Pattern TOKEN = Pattern.compile("[a-z0-9][\\w-]*");
+
+    /**
+     * Compile free-text instructions. Pure string work, cheap enough to run on every save.
+     */
+    public static InstructionTriggers compile(String instructions) {
+        if (instructions == null || instructions.isBlank()) {
+            return NONE;
+        }
+
+        List<Trigger> triggers = new ArrayList<>();
+        for (String clause : CLAUSE_BREAK.split(instructions.toLowerCase(Locale.ROOT))) {
+            String trimmed = clause.trim();
+            if (!trimmed.isEmpty()) {
+                triggers.add(compileClause(trimmed));
+            }
+        }
+        return new InstructionTriggers(List.copyOf(triggers));
+    }
+
+    private static Trigger compileClause(String clause) {
+        // Only the condition decides which events matter; "..., send them an email" is the action
+        Matcher condition = CONDITION.matcher(clause);
+        String text = condition.find() && !condition.group(1).isBlank() ? condition.group(1) : clause;
+
+        Set<ProactiveEvent.Source> sources = EnumSet.noneOf(ProactiveEvent.Source.class);
+        Set<String> eventTypes = new LinkedHashSet<>();
+        Matcher words = WORD.matcher(text);
+        while (words.find()) {
+            String word = words.group();
+            if (EMAIL_WORDS.contains(word)) {
+                sources.add(ProactiveEvent.Source.EMAIL);
+            } else if (CALENDAR_WORDS.contains(word)) {
+                sources.add(ProactiveEvent.Source.CALENDAR);
+            } else if (HUBSPOT_WORDS.contains(word)) {
+                sources.add(ProactiveEvent.Source.HUBSPOT);
+            }
+            String type = eventType(word);
+            if (type != null) {
+                eventTypes.add(type);
+            }
+        }
+
+        List<String> senders = new ArrayList<>();
+        Matcher addresses = ADDRESS.matcher(text);
+        while (addresses.find()) {
+            senders.add(addresses.group());
+        }
+        Matcher domains = DOMAIN.matcher(text);
+        while (domains.find()) {
+            senders.add(domains.group());
+        }
+
+        Set<String> labels = new LinkedHashSet<>();
+        Matcher flags = FLAG.matcher(text);
+        while (flags.find()) {
+            labels.add(flags.group(1).toUpperCase(Locale.ROOT));
+        }
+        Matcher labeled = LABELED.matcher(text);
+        while (labeled.find()) {
+            labels.add(labeled.group(1).toUpperCase(Locale.ROOT));
+        }
+
+        List<String> phrases = new ArrayList<>();
+        Matcher quoted = QUOTED.matcher(text);
+        while (quoted.find()) {
+            phrases.add(quoted.group(1).trim());
+        }
+        // Quoted text is already covered as a phrase; its words shouldn't widen the match
+        Set<String> keywords = new LinkedHashSet<>();
+        Matcher topics = TOPIC.matcher(QUOTED.matcher(text).replaceAll(" "));
+        while (topics.find()) {
+            keywords.addAll(significantWords(trimTopic(topics.group(1))));
+        }
+
+        return new Trigger(sources, eventTypes, List.copyOf(senders), labels, List.copyOf(keywords),
+                List.copyOf(phrases));
+    }
+
+    private static String eventType(String word) {
+        if (DELETED.matcher(word).matches()) {
+            return "deleted";
+        }
+        if (UPDATED.matcher(word).matches()) {
+            return "updated";
+        }
+        if (CREATED.matcher(word).matches()) {
+            return "created";
+        }
+        return null;
+    }
+
+    private static String trimTopic(String phrase) {
+        List<String> kept = new ArrayList<>();
+        for (String word : phrase.split("\\s+")) {
+            if (TOPIC_STOPS.contains(word)) {
+                break;
+            }
+            kept.add(word);
+        }
+        return String.join(" ", kept);
+    }
+
+    private static List<String> significantWords(String phrase) {
+        Set<String> words = new LinkedHashSet<>();
+        Matcher tokens = TOKEN.matcher(phrase);
+        while (tokens.find()) {
+            String word = tokens.group();
+            if (word.length() > 1 && !FILLER_WORDS.contains(word) && !TOPIC_STOPS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return List.copyOf(words);
+    }
+
+    /**
+     * Whether {@code word} occurs in {@code text} as a whole word, allowing a plural ending, so
+     * "tax" matches "taxes" but not "syntax".
+     */
+    static boolean containsWord(String text, String word) {
+        for (int at = text.indexOf(word); at >= 0; at = text.indexOf(word, at + 1)) {
+            if (at > 0 && Character.isLetterOrDigit(text.charAt(at - 1))) {
+                continue;
+            }
+            int end = at + word.length();
+            if (text.startsWith("es", end)) {
+                end += 2;
+            } else if (text.startsWith("s", end)) {
+                end += 1;
+            }
+            if (end >= text.length() || !Character.isLetterOrDigit(text.charAt(end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,367 @@
+package com.advisor.service;
+
+import com.advisor.config.AsyncConfig;
+import com.advisor.model.User;
+import com.advisor.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.googleapis.auth.oauth2.GoogleRefreshTokenRequest;
+import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Owns the OAuth access tokens of every integration. Tokens are refreshed in the background
+ * ahead of expiry, so request paths normally just read a valid token; a caller only waits on a
+ * refresh when the token has actually run out or was rejected. Concurrent refreshes for the same
+ * user and provider collapse into one call to the token endpoint.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OAuthTokenManager {
+
+    public enum Provider {
+        GOOGLE, HUBSPOT
+    }
+
+    /**
+     * Tokens returned by an authorization or refresh grant.
+     */
+    public record TokenGrant(String accessToken, String refreshToken, LocalDateTime expiresAt) {
+    }
+
+    private record TokenKey(Long userId, Provider provider) {
+    }
+
+    private static final JacksonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+    private static final String HUBSPOT_TOKEN_URL = "https://api.hubapi.com/oauth/v1/token";
+
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final OutboundQuotaManager quotaManager;
+    private final ClusterCoordinator clusterCoordinator;
+
+    @Qualifier(AsyncConfig.IO_EXECUTOR)
+    private final AsyncTaskExecutor ioTaskExecutor;
+
+    @Value("${spring.security.oauth2.client.registration.google.client-id}")
+    private String googleClientId;
+
+    @Value("${spring.security.oauth2.client.registration.google.client-secret}")
+    private String googleClientSecret;
+
+    @Value("${hubspot.client-id}")
+    private String hubspotClientId;
+
+    @Value("${hubspot.client-secret}")
+    private String hubspotClientSecret;
+
+    @Value("${oauth.tokens.refresh-ahead-ms:600000}")
+    private long refreshAheadMs;
+
+    @Value("${oauth.tokens.expiry-skew-ms:60000}")
+    private long expirySkewMs;
+
+    @Value("${oauth.tokens.refresh-timeout-ms:15000}")
+    private long refreshTimeoutMs;
+
+    @Value("${oauth.tokens.retry-after-failure-ms:900000}")
+    private long retryAfterFailureMs;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Latest tokens this node has obtained; long-running jobs hold User objects older than these
+    private final Map<TokenKey, TokenGrant> latest = new ConcurrentHashMap<>();
+    private final Map<TokenKey, CompletableFuture<TokenGrant>> inFlight = new ConcurrentHashMap<>();
+    private final Map<TokenKey, Long> failedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * A valid Google access token for the user, refreshing first only if it has already expired.
+     */
+    public String googleAccessToken(User user) {
+        return accessToken(user, Provider.GOOGLE);
+    }
+
+    public String hubspotAccessToken(User user) {
+        return accessToken(user, Provider.HUBSPOT);
+    }
+
+    /**
+     * Credential for the Google API clients. The client library refreshes it on expiry and on 401
+     * responses; those refreshes go through this manager instead of the token endpoint directly.
+     */
+    public Credential googleCredential(User user) {
+        TokenGrant token = current(user, Provider.GOOGLE);
+        Credential credential = new Credential(BearerToken.authorizationHeaderAccessMethod()) {
+            @Override
+            protected TokenResponse executeRefreshToken() throws IOException {
+                TokenGrant fresh = refreshRejected(user, Provider.GOOGLE, getAccessToken());
+                if (fresh == null) {
+                    return null;
+                }
+                TokenResponse response = new TokenResponse()
+                        .setAccessToken(fresh.accessToken())
+                        .setTokenType("Bearer");
+                if (fresh.expiresAt() != null) {
+                    response.setExpiresInSeconds(Math.max(0,
+                            (toEpochMillis(fresh.expiresAt()) - System.currentTimeMillis()) / 1000));
+                }
+                return response;
+            }
+        };
+        credential.setAccessToken(token != null ? token.accessToken() : null);
+        if (token != null && token.expiresAt() != null) {
+            credential.setExpirationTimeMilliseconds(toEpochMillis(token.expiresAt()));
+        }
+        return credential;
+    }
+
+    /**
+     * Called after a provider rejected {@code rejectedToken}. If another caller has already replaced
+     * it, the newer token is returned without another refresh.
+     *
+     * @return the replacement token, or null if the user cannot be refreshed
+     */
+    public TokenGrant refreshRejected(User user, Provider provider, String rejectedToken) {
+        TokenGrant token = current(user, provider);
+        if (token != null && !Objects.equals(token.accessToken(), rejectedToken) && !expired(token)) {
+            return token;
+        }
+        return awaitRefresh(user, provider);
+    }
+
+    /**
+     * Refresh, in the background, every token that expires within the look-ahead window, for the
+     * users whose work partition this node owns.
+     */
+    @Scheduled(fixedDelayString = "${oauth.tokens.poll-interval-ms:60000}",
+            initialDelayString = "${oauth.tokens.poll-interval-ms:60000}")
+    public void refreshAhead() {
+        LocalDateTime horizon = LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(refreshAheadMs));
+        try {
+            scheduleRefreshes(userRepository.findByGoogleRefreshTokenIsNotNullAndGoogleTokenExpirationBefore(horizon),
+                    Provider.GOOGLE);
+            scheduleRefreshes(userRepository.findByHubspotRefreshTokenIsNotNullAndHubspotTokenExpirationBefore(horizon),
+                    Provider.HUBSPOT);
+        } catch (Exception e) {
+            log.error("Proactive token refresh failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void scheduleRefreshes(List<User> users, Provider provider) {
+        long now = System.currentTimeMillis();
+        for (User user : users) {
+            if (!clusterCoordinator.owns(user.getId())) {
+                continue;
+            }
+            TokenKey key = new TokenKey(user.getId(), provider);
+            TokenGrant token = current(user, provider);
+            if (token != null && token.expiresAt() != null
+                    && toEpochMillis(token.expiresAt()) > now + refreshAheadMs) {
+                continue; // this node already refreshed it; the row is catching up
+            }
+            if (failedUntil.getOrDefault(key, 0L) > now || inFlight.containsKey(key)) {
+                continue;
+            }
+            ioTaskExecutor.execute(() -> quotaManager.runInBackground(user, () -> singleFlight(user, provider)));
+        }
+    }
+
+    private String accessToken(User user, Provider provider) {
+        TokenGrant token = current(user, provider);
+        if (token == null) {
+            return null;
+        }
+        if (expired(token) && token.refreshToken() != null) {
+            TokenGrant fresh = awaitRefresh(user, provider);
+            if (fresh != null) {
+                return fresh.accessToken();
+            }
+        }
+        return token.accessToken();
+    }
+
+    private TokenGrant awaitRefresh(User user, Provider provider) {
+        try {
+            return singleFlight(user, provider).get(refreshTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Could not refresh {} token for user {}: {}", provider, user.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The first caller for a user and provider performs the refresh on its own thread; callers
+     * arriving meanwhile wait on the same future.
+     */
+    private CompletableFuture<TokenGrant> singleFlight(User user, Provider provider) {
+        TokenKey key = new TokenKey(user.getId(), provider);
+        CompletableFuture<TokenGrant> created = new CompletableFuture<>();
+        CompletableFuture<TokenGrant> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            TokenGrant grant = refresh(user, provider);
+            failedUntil.remove(key);
+            created.complete(grant);
+        } catch (Exception e) {
+            failedUntil.put(key, System.currentTimeMillis() + retryAfterFailureMs);
+            log.error("Failed to refresh {} token for user {}: {}", provider, user.getEmail(), e.getMessage());
+            created.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, created);
+        }
+        return created;
+    }
+
+    private TokenGrant refresh(User user, Provider provider) throws IOException {
+        TokenGrant token = current(user, provider);
+        if (token == null || token.refreshToken() == null) {
+            throw new IllegalStateException("No refresh token available");
+        }
+
+        TokenGrant grant = provider == Provider.GOOGLE
+                ? refreshGoogle(token.refreshToken())
+                : refreshHubSpot(user, token.refreshToken());
+
+        if (provider == Provider.GOOGLE) {
+            userRepository.updateGoogleTokens(user.getId(), grant.accessToken(), grant.refreshToken(), grant.expiresAt());
+            user.setGoogleAccessToken(grant.accessToken());
+            user.setGoogleRefreshToken(grant.refreshToken());
+            user.setGoogleTokenExpiration(grant.expiresAt());
+        } else {
+            userRepository.updateHubspotTokens(user.getId(), grant.accessToken(), grant.refreshToken(), grant.expiresAt());
+            user.setHubspotAccessToken(grant.accessToken());
+            user.setHubspotRefreshToken(grant.refreshToken());
+            user.setHubspotTokenExpiration(grant.expiresAt());
+        }
+        latest.put(new TokenKey(user.getId(), provider), grant);
+        userService.evictCachedUser(user.getId());
+
+        log.info("Refreshed {} token for user {}", provider, user.getEmail());
+        return grant;
+    }
+
+    private TokenGrant refreshGoogle(String refreshToken) throws IOException {
+        try {
+            GoogleTokenResponse response = new GoogleRefreshTokenRequest(
+                    GoogleNetHttpTransport.newTrustedTransport(), JSON_FACTORY,
+                    refreshToken, googleClientId, googleClientSecret)
+                    .execute();
+
+            // Google usually keeps the existing refresh token and omits it from the response
+            return new TokenGrant(
+                    response.getAccessToken(),
+                    response.getRefreshToken() != null ? response.getRefreshToken() : refreshToken,
+                    expiresIn(response.getExpiresInSeconds()));
+        } catch (java.security.GeneralSecurityException e) {
+            throw new IOException("Failed to create HTTP transport", e);
+        }
+    }
+
+    private TokenGrant refreshHubSpot(User user, String refreshToken) throws IOException {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("grant_type", "refresh_token");
+        params.add("client_id", hubspotClientId);
+        params.add("client_secret", hubspotClientSecret);
+        params.add("refresh_token", refreshToken);
+        return requestHubSpotToken(user, params, refreshToken);
+    }
+
+    /**
+     * Exchange a HubSpot authorization code for tokens.
+     */
+    public TokenGrant exchangeHubSpotCode(String code, String redirectUri) throws IOException {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("grant_type", "authorization_code");
+        params.add("client_id", hubspotClientId);
+        params.add("client_secret", hubspotClientSecret);
+        params.add("redirect_uri", redirectUri);
+        params.add("code", code);
+        return requestHubSpotToken(null, params, null);
+    }
+
+    private TokenGrant requestHubSpotToken(User user, MultiValueMap<String, String> params,
+                                           String previousRefreshToken) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        quotaManager.acquire(OutboundQuotaManager.Provider.HUBSPOT, user);
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                HUBSPOT_TOKEN_URL, new HttpEntity<>(params, headers), String.class);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IOException("Token request failed with status: " + response.getStatusCode());
+        }
+
+        JsonNode json = objectMapper.readTree(response.getBody());
+        return new TokenGrant(
+                json.get("access_token").asText(),
+                json.hasNonNull("refresh_token") ? json.get("refresh_token").asText() : previousRefreshToken,
+                json.hasNonNull("expires_in") ? expiresIn(json.get("expires_in").asLong()) : null);
+    }
+
+    /**
+     * The newer of the tokens on the user row and the last ones refreshed on this node.
+     */
+    private TokenGrant current(User user, Provider provider) {
+        TokenGrant stored = provider == Provider.GOOGLE
+                ? new TokenGrant(user.getGoogleAccessToken(), user.getGoogleRefreshToken(), user.getGoogleTokenExpiration())
+                : new TokenGrant(user.getHubspotAccessToken(), user.getHubspotRefreshToken(), user.getHubspotTokenExpiration());
+        TokenGrant refreshed = latest.get(new TokenKey(user.getId(), provider));
+
+        if (refreshed != null && (stored.accessToken() == null || stored.expiresAt() == null
+                || (refreshed.expiresAt() != null && refreshed.expiresAt().isAfter(stored.expiresAt())))) {
+            return refreshed;
+        }
+        return stored.accessToken() != null ? stored : null;
+    }
+
+    private boolean expired(TokenGrant token) {
+        return token.expiresAt() != null
+                && toEpochMillis(token.expiresAt()) <= System.currentTimeMillis() + expirySkewMs;
+    }
+
+    private static LocalDateTime expiresIn(Long seconds) {
+        return seconds != null ? LocalDateTime.now().plusSeconds(seconds) : null;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -9,7 +9,6 @@ import com.theokanning.openai.completion.chat.ChatFunction;
 import com.theokanning.openai.completion.chat.ChatFunctionCall;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.completion.chat.ChatMessageRole;
-import com.theokanning.openai.service.OpenAiService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -24,8 +23,9 @@ import java.util.Map;
 @Slf4j
 public class OpenAIChatService {
 
-    private final OpenAiService openAiService;
+    private final OpenAIGateway openAiGateway;
     private final ToolService toolService;
+    private final ActionLedger actionLedger;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
@@ -45,7 +45,7 @@ public class OpenAIChatService {
                     .maxTokens(2000)
                     .build();
 
-            ChatCompletionResult result = openAiService.createChatCompletion(request);
+            ChatCompletionResult result = openAiGateway.createChatCompletion(request);
             ChatMessage responseMessage = result.getChoices().get(0).getMessage();
 
             if (responseMessage.getFunctionCall() != null) {
@@ -116,7 +116,7 @@ public class OpenAIChatService {
                     .maxTokens(1000)
                     .build();
 
-            ChatCompletionResult followUpResult = openAiService.createChatCompletion(followUpRequest);
+            ChatCompletionResult followUpResult = openAiGateway.createChatCompletion(followUpRequest);
             return followUpResult.getChoices().get(0).getMessage().getContent();
 
         } catch (Exception e) {
@@ -140,7 +140,7 @@ public class OpenAIChatService {
                         .maxTokens(1000)
                         .build();
 
-                ChatCompletionResult errorResponse = openAiService.createChatCompletion(errorRequest);
+                ChatCompletionResult errorResponse = openAiGateway.createChatCompletion(errorRequest);
                 return errorResponse.getChoices().get(0).getMessage().getContent();
 
             } catch (Exception innerException) {
@@ -150,10 +150,20 @@ public class OpenAIChatService {
     }
 
     /**
-     * Execute the appropriate function based on function name and arguments.
+     * Execute the appropriate function based on function name and arguments. Functions with side
+     * effects go through the action ledger, so a repeat for the same trigger returns the recorded
+     * result instead of acting twice.
      */
     private String executeFunction(String functionName, Map<String, Object> args,
                                    com.advisor.model.User user) {
+        if (ActionLedger.MUTATING_ACTIONS.contains(functionName)) {
+            return actionLedger.run(user, functionName, args, () -> invokeTool(functionName, args, user));
+        }
+        return invokeTool(functionName, args, user);
+    }
+
+    private String invokeTool(String functionName, Map<String, Object> args,
+                              com.advisor.model.User user) {
         try {
             return switch (functionName) {
                 case "sendEmail" ->
@@ -0,0 +1,319 @@
+package com.advisor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.OpenAiError;
+import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
+import com.theokanning.openai.service.OpenAiService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import retrofit2.HttpException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single entry point for OpenAI calls. Requests run on the pooled OkHttp dispatcher,
+ * bounded by a concurrency limit and a circuit breaker, with optional hedging of slow
+ * requests and per-endpoint latency histograms.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OpenAIGateway {
+
+    private static final String CHAT_ENDPOINT = "chat";
+    private static final String EMBEDDING_ENDPOINT = "embeddings";
+
+    private final OpenAiApi openAiApi;
+    private final MeterRegistry meterRegistry;
+    private final OutboundQuotaManager quotaManager;
+    private final ObjectMapper errorMapper = OpenAiService.defaultObjectMapper();
+
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "openai-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${openai.gateway.max-concurrent-requests:32}")
+    private int maxConcurrentRequests;
+
+    @Value("${openai.gateway.acquire-timeout-ms:5000}")
+    private long acquireTimeoutMs;
+
+    @Value("${openai.gateway.chat.hedge-after-ms:0}")
+    private long chatHedgeAfterMs;
+
+    @Value("${openai.gateway.embedding.hedge-after-ms:1500}")
+    private long embeddingHedgeAfterMs;
+
+    @Value("${openai.gateway.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${openai.gateway.circuit.open-ms:30000}")
+    private long circuitOpenMs;
+
+    private Semaphore permits;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(maxConcurrentRequests);
+        circuitBreaker = new CircuitBreaker(failureThreshold, circuitOpenMs);
+
+        Gauge.builder("openai.client.in_flight", permits, p -> maxConcurrentRequests - p.availablePermits())
+                .description("OpenAI requests currently holding a concurrency permit")
+                .register(meterRegistry);
+        Gauge.builder("openai.client.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        hedgeScheduler.shutdownNow();
+    }
+
+    public CompletableFuture<ChatCompletionResult> createChatCompletionAsync(ChatCompletionRequest request) {
+        return submit(CHAT_ENDPOINT, chatHedgeAfterMs, () -> openAiApi.createChatCompletion(request));
+    }
+
+    public ChatCompletionResult createChatCompletion(ChatCompletionRequest request) {
+        return await(createChatCompletionAsync(request));
+    }
+
+    public CompletableFuture<EmbeddingResult> createEmbeddingsAsync(EmbeddingRequest request) {
+        return submit(EMBEDDING_ENDPOINT, embeddingHedgeAfterMs, () -> openAiApi.createEmbeddings(request));
+    }
+
+    public EmbeddingResult createEmbeddings(EmbeddingRequest request) {
+        return await(createEmbeddingsAsync(request));
+    }
+
+    private <T> CompletableFuture<T> submit(String endpoint, long hedgeAfterMs, Supplier<Single<T>> call) {
+        try {
+            // Rate quota is taken on the caller's thread so its user and priority context apply
+            quotaManager.acquire(OutboundQuotaManager.Provider.OPENAI);
+        } catch (IllegalStateException e) {
+            meterRegistry.counter("openai.client.rejected", "endpoint", endpoint, "reason", "quota").increment();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (!acquirePermit()) {
+            meterRegistry.counter("openai.client.rejected", "endpoint", endpoint, "reason", "saturated").increment();
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("OpenAI concurrency limit reached, try again shortly"));
+        }
+
+        if (!circuitBreaker.allowRequest()) {
+            permits.release();
+            meterRegistry.counter("openai.client.rejected", "endpoint", endpoint, "reason", "circuit_open").increment();
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("OpenAI is temporarily unavailable (circuit open)"));
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        HedgedCall<T> hedgedCall = new HedgedCall<>(endpoint, call, result);
+        hedgedCall.launchPrimary();
+
+        if (hedgeAfterMs > 0) {
+            ScheduledFuture<?> hedge = hedgeScheduler.schedule(hedgedCall::launchHedge, hedgeAfterMs, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, error) -> hedge.cancel(false));
+        }
+
+        return result.whenComplete((value, error) -> {
+            permits.release();
+            if (error != null && countsAsFailure(error)) {
+                circuitBreaker.recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+            }
+            sample.stop(Timer.builder("openai.client.requests")
+                    .description("OpenAI request latency including hedged attempts")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", error == null ? "success" : "error")
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+        });
+    }
+
+    private boolean acquirePermit() {
+        try {
+            return permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Only server-side trouble opens the circuit; a 400 for an oversized prompt says nothing about OpenAI's health.
+     */
+    private boolean countsAsFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof OpenAiHttpException httpException) {
+            return httpException.statusCode >= 500 || httpException.statusCode == 429;
+        }
+        return true;
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("OpenAI request failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Mirrors OpenAiService.execute(): turn Retrofit HTTP errors into OpenAiHttpException with the parsed error body.
+     */
+    private Throwable translate(Throwable error) {
+        if (error instanceof HttpException httpException
+                && httpException.response() != null
+                && httpException.response().errorBody() != null) {
+            try {
+                String body = httpException.response().errorBody().string();
+                OpenAiError openAiError = errorMapper.readValue(body, OpenAiError.class);
+                return new OpenAiHttpException(openAiError, httpException, httpException.code());
+            } catch (IOException e) {
+                return error;
+            }
+        }
+        return error;
+    }
+
+    /**
+     * One logical request: the primary attempt plus at most one hedge. The first success wins
+     * and disposes the other attempt; the request fails only when every launched attempt failed.
+     */
+    private final class HedgedCall<T> {
+        private final String endpoint;
+        private final Supplier<Single<T>> call;
+        private final CompletableFuture<T> result;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final List<Disposable> attempts = new CopyOnWriteArrayList<>();
+
+        HedgedCall(String endpoint, Supplier<Single<T>> call, CompletableFuture<T> result) {
+            this.endpoint = endpoint;
+            this.call = call;
+            this.result = result;
+        }
+
+        void launchPrimary() {
+            outstanding.incrementAndGet();
+            attempts.add(call.get().subscribe(this::onSuccess, this::onError));
+        }
+
+        void launchHedge() {
+            if (result.isDone() || !permits.tryAcquire()) {
+                return;
+            }
+            meterRegistry.counter("openai.client.hedges", "endpoint", endpoint).increment();
+            log.debug("Hedging slow OpenAI {} request", endpoint);
+
+            outstanding.incrementAndGet();
+            attempts.add(call.get()
+                    .doFinally(permits::release)
+                    .subscribe(this::onSuccess, this::onError));
+        }
+
+        private void onSuccess(T value) {
+            if (result.complete(value)) {
+                attempts.forEach(Disposable::dispose);
+            }
+        }
+
+        private void onError(Throwable error) {
+            if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(translate(error));
+            }
+        }
+    }
+
+    /**
+     * Consecutive-failure circuit breaker with a single half-open trial request.
+     */
+    static final class CircuitBreaker {
+
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openMillis;
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int failureThreshold, long openMillis) {
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+        }
+
+        synchronized boolean allowRequest() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            state = State.CLOSED;
+        }
+
+        synchronized void recordFailure() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                trialInFlight = false;
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.advisor.service;
+
+import com.advisor.model.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Coordinates calls to rate-limited providers. Every call takes a token from a project-wide
+ * bucket and from the calling user's bucket for that provider; a project rate of 0 means the
+ * provider only limits per account (HubSpot counts requests per installed portal). Callers that have to wait are
+ * queued per priority and served by weighted fair queuing, so interactive chat keeps moving
+ * while a background reindex is draining the same quota.
+ *
+ * <p>The priority and user of the current call are carried in a thread-local context set with
+ * {@link #callAs} / {@link #runInBackground}; code running on another thread must pass them explicitly.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboundQuotaManager {
+
+    public enum Provider {
+        OPENAI(50, 10),
+        GMAIL(200, 40),
+        CALENDAR(50, 10),
+        HUBSPOT(0, 10);
+
+        private final double defaultProjectPerSecond;
+        private final double defaultUserPerSecond;
+
+        Provider(double defaultProjectPerSecond, double defaultUserPerSecond) {
+            this.defaultProjectPerSecond = defaultProjectPerSecond;
+            this.defaultUserPerSecond = defaultUserPerSecond;
+        }
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private record CallContext(Long userId, Priority priority) {
+    }
+
+    private static final ThreadLocal<CallContext> CONTEXT = new ThreadLocal<>();
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${outbound.quota.weights.interactive:4}")
+    private int interactiveWeight;
+
+    @Value("${outbound.quota.weights.background:1}")
+    private int backgroundWeight;
+
+    @Value("${outbound.quota.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    private final Map<Provider, ProviderGate> gates = new EnumMap<>(Provider.class);
+
+    @PostConstruct
+    void init() {
+        for (Provider provider : Provider.values()) {
+            double projectRate = environment.getProperty("outbound.quota." + provider.key() + ".project-per-second",
+                    Double.class, provider.defaultProjectPerSecond);
+            double userRate = environment.getProperty("outbound.quota." + provider.key() + ".user-per-second",
+                    Double.class, provider.defaultUserPerSecond);
+
+            ProviderGate gate = new ProviderGate(projectRate, userRate);
+            gates.put(provider, gate);
+
+            for (Priority priority : Priority.values()) {
+                Gauge.builder("outbound.quota.queue.depth", gate, g -> g.queueDepth(priority))
+                        .description("Calls waiting for provider quota")
+                        .tag("provider", provider.key())
+                        .tag("priority", priority.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Run work on behalf of a user, keeping the priority of any enclosing context (interactive by default).
+     */
+    public <T> T callAs(User user, Supplier<T> work) {
+        return callAs(user, currentPriority(), work);
+    }
+
+    public <T> T callAs(User user, Priority priority, Supplier<T> work) {
+        CallContext previous = CONTEXT.get();
+        CONTEXT.set(new CallContext(user != null ? user.getId() : null, priority));
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CONTEXT.set(previous);
+            } else {
+                CONTEXT.remove();
+            }
+        }
+    }
+
+    public void runInBackground(User user, Runnable work) {
+        callAs(user, Priority.BACKGROUND, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public Priority currentPriority() {
+        CallContext context = CONTEXT.get();
+        return context != null ? context.priority() : Priority.INTERACTIVE;
+    }
+
+    /**
+     * Block until the provider grants a call for the user and priority of the current context.
+     */
+    public void acquire(Provider provider) {
+        CallContext context = CONTEXT.get();
+        acquire(provider, context != null ? context.userId() : null, currentPriority());
+    }
+
+    public void acquire(Provider provider, User user) {
+        acquire(provider, user, currentPriority());
+    }
+
+    public void acquire(Provider provider, User user, Priority priority) {
+        acquire(provider, user != null ? user.getId() : null, priority);
+    }
+
+    private void acquire(Provider provider, Long userId, Priority priority) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            gates.get(provider).acquire(userId, priority, TimeUnit.MILLISECONDS.toNanos(maxWaitMs));
+        } finally {
+            sample.stop(Timer.builder("outbound.quota.wait")
+                    .description("Time spent waiting for provider quota")
+                    .tag("provider", provider.key())
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    private int weight(Priority priority) {
+        return Math.max(1, priority == Priority.INTERACTIVE ? interactiveWeight : backgroundWeight);
+    }
+
+    /**
+     * Token buckets and wait queues for one provider, all guarded by a single lock.
+     */
+    private final class ProviderGate {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        private final TokenBucket projectBucket;
+        private final double userRate;
+        private final Map<Long, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+
+        private final Map<Priority, ArrayDeque<Waiter>> queues = new EnumMap<>(Priority.class);
+        private final Map<Priority, AtomicInteger> depths = new EnumMap<>(Priority.class);
+        private final Map<Priority, Double> virtualTimes = new EnumMap<>(Priority.class);
+        private double systemVirtualTime;
+
+        ProviderGate(double projectRate, double userRate) {
+            this.projectBucket = new TokenBucket(projectRate);
+            this.userRate = userRate;
+            for (Priority priority : Priority.values()) {
+                queues.put(priority, new ArrayDeque<>());
+                depths.put(priority, new AtomicInteger());
+                virtualTimes.put(priority, 0.0);
+            }
+        }
+
+        int queueDepth(Priority priority) {
+            return depths.get(priority).get();
+        }
+
+        void acquire(Long userId, Priority priority, long maxWaitNanos) {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            Waiter waiter = new Waiter(userId);
+
+            lock.lock();
+            try {
+                ArrayDeque<Waiter> queue = queues.get(priority);
+                if (queue.isEmpty()) {
+                    // A queue that was idle starts at the current virtual time instead of spending saved-up credit
+                    virtualTimes.put(priority, Math.max(virtualTimes.get(priority), systemVirtualTime));
+                }
+                queue.addLast(waiter);
+                depths.get(priority).incrementAndGet();
+
+                while (true) {
+                    dispatch();
+                    if (waiter.granted) {
+                        return;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        depths.get(priority).decrementAndGet();
+                        throw new IllegalStateException("Timed out waiting for outbound API quota");
+                    }
+                    long pause = Math.min(remaining, Math.max(projectBucket.nanosUntilToken(), TimeUnit.MILLISECONDS.toNanos(1)));
+                    changed.awaitNanos(Math.min(pause, TimeUnit.MILLISECONDS.toNanos(50)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!waiter.granted && queues.get(priority).remove(waiter)) {
+                    depths.get(priority).decrementAndGet();
+                }
+                throw new IllegalStateException("Interrupted while waiting for outbound API quota", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Grant as many queued calls as the buckets allow, always serving the backlogged
+         * priority with the lowest virtual finish time.
+         */
+        private void dispatch() {
+            boolean grantedAny = false;
+            while (projectBucket.available()) {
+                Priority next = null;
+                Waiter candidate = null;
+                for (Priority priority : Priority.values()) {
+                    Waiter eligible = firstEligible(queues.get(priority));
+                    if (eligible != null && (next == null || virtualTimes.get(priority) < virtualTimes.get(next))) {
+                        next = priority;
+                        candidate = eligible;
+                    }
+                }
+                if (candidate == null) {
+                    break;
+                }
+
+                queues.get(next).remove(candidate);
+                depths.get(next).decrementAndGet();
+                projectBucket.take();
+                if (candidate.userId != null) {
+                    userBucket(candidate.userId).take();
+                }
+                candidate.granted = true;
+                grantedAny = true;
+
+                systemVirtualTime = virtualTimes.get(next);
+                virtualTimes.put(next, systemVirtualTime + 1.0 / weight(next));
+            }
+            if (grantedAny) {
+                changed.signalAll();
+            }
+        }
+
+        private Waiter firstEligible(ArrayDeque<Waiter> queue) {
+            Iterator<Waiter> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.userId == null || userBucket(waiter.userId).available()) {
+                    return waiter;
+                }
+            }
+            return null;
+        }
+
+        private TokenBucket userBucket(Long userId) {
+            return userBuckets.computeIfAbsent(userId, id -> new TokenBucket(userRate));
+        }
+    }
+
+    private static final class Waiter {
+        private final Long userId;
+        private boolean granted;
+
+        Waiter(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * Classic token bucket refilled continuously; burst capacity is one second of traffic. A rate
+     * of 0 or less never runs out.
+     */
+    private static final class TokenBucket {
+        private final boolean unbounded;
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double perSecond) {
+            this.unbounded = perSecond <= 0;
+            this.capacity = Math.max(1.0, perSecond);
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+        }
+
+        boolean available() {
+            if (unbounded) {
+                return true;
+            }
+            refill();
+            return tokens >= 1.0;
+        }
+
+        void take() {
+            tokens -= 1.0;
+        }
+
+        long nanosUntilToken() {
+            if (unbounded) {
+                return 0;
+            }
+            refill();
+            return tokens >= 1.0 ? 0 : (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
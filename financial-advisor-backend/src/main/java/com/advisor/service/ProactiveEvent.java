@@ -0,0 +1,46 @@
+package com.advisor.service;
+
+import com.advisor.model.Email;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Something that happened in a connected integration, reduced to the fields instruction triggers
+ * can test. Text fields are lower-cased once here so matching is plain string comparison.
+ */
+public record ProactiveEvent(Source source, String type, String sender, String text, Set<String> labels) {
+
+    public enum Source {
+        EMAIL, CALENDAR, HUBSPOT
+    }
+
+    public ProactiveEvent {
+        type = lower(type);
+        sender = lower(sender);
+        text = lower(text);
+        labels = labels != null ? Set.copyOf(labels) : Set.of();
+    }
+
+    public static ProactiveEvent email(Email email) {
+        Set<String> labels = new HashSet<>();
+        if (email.isImportant()) {
+            labels.add("IMPORTANT");
+        }
+        if (!email.isRead()) {
+            labels.add("UNREAD");
+        }
+        String text = (email.getFromName() != null ? email.getFromName() + "\n" : "")
+                + (email.getSubject() != null ? email.getSubject() + "\n" : "")
+                + (email.getBody() != null ? email.getBody() : "");
+        return new ProactiveEvent(Source.EMAIL, "created", email.getFromEmail(), text, labels);
+    }
+
+    public static ProactiveEvent of(Source source, String type, String text) {
+        return new ProactiveEvent(source, type, null, text, Set.of());
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase() : null;
+    }
+}
@@ -0,0 +1,92 @@
+package com.advisor.service;
+
+import com.advisor.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides locally whether an integration event is worth a proactive LLM evaluation. Ongoing
+ * instructions are compiled into {@link InstructionTriggers} when they are saved and stored next
+ * to them; webhooks test each event against the compiled set instead of calling the model.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProactiveEventService {
+
+    private final UserService userService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private record Compiled(String source, InstructionTriggers triggers) {
+    }
+
+    // Parsed trigger sets keyed by user, reused while the stored JSON is unchanged
+    private final Map<Long, Compiled> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * Save new ongoing instructions together with their compiled triggers.
+     */
+    public User saveInstructions(User user, String instructions) {
+        InstructionTriggers triggers = InstructionTriggers.compile(instructions);
+        user.setOngoingInstructions(instructions);
+        user.setInstructionTriggers(toJson(triggers));
+        User saved = userService.saveUser(user);
+
+        compiled.put(saved.getId(), new Compiled(saved.getInstructionTriggers(), triggers));
+        log.info("Compiled {} instruction triggers for user {}", triggers.triggers().size(), saved.getId());
+        return saved;
+    }
+
+    /**
+     * True if any of the user's ongoing instructions could apply to the event.
+     */
+    public boolean shouldEvaluate(User user, ProactiveEvent event) {
+        if (user.getOngoingInstructions() == null || user.getOngoingInstructions().isBlank()) {
+            return false;
+        }
+        boolean matched = triggersFor(user).matches(event);
+        log.debug("Proactive {} {} event for user {}: {}", event.source(), event.type(), user.getId(),
+                matched ? "matched" : "skipped");
+        return matched;
+    }
+
+    private InstructionTriggers triggersFor(User user) {
+        // Instructions saved before triggers existed are compiled on first use
+        String json = user.getInstructionTriggers() != null
+                ? user.getInstructionTriggers()
+                : "instructions:" + user.getOngoingInstructions();
+
+        Compiled cached = compiled.get(user.getId());
+        if (cached != null && cached.source().equals(json)) {
+            return cached.triggers();
+        }
+
+        InstructionTriggers triggers = user.getInstructionTriggers() != null
+                ? fromJson(user)
+                : InstructionTriggers.compile(user.getOngoingInstructions());
+        compiled.put(user.getId(), new Compiled(json, triggers));
+        return triggers;
+    }
+
+    private InstructionTriggers fromJson(User user) {
+        try {
+            return objectMapper.readValue(user.getInstructionTriggers(), InstructionTriggers.class);
+        } catch (Exception e) {
+            log.warn("Recompiling unreadable instruction triggers for user {}: {}", user.getId(), e.getMessage());
+            return InstructionTriggers.compile(user.getOngoingInstructions());
+        }
+    }
+
+    private String toJson(InstructionTriggers triggers) {
+        try {
+            return objectMapper.writeValueAsString(triggers);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not serialize instruction triggers", e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.advisor.service;
+
+import com.advisor.config.AsyncConfig;
+import com.advisor.model.Email;
+import com.advisor.model.IndexingJob;
+import com.advisor.model.Task;
+import com.advisor.model.User;
+import com.advisor.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Proactive handling of integration webhooks. Controllers only record each notification as a
+ * {@code PROACTIVE_ACTION} task; {@link TaskDispatcher} runs it here on the node that owns the
+ * user's partition, so an event is acted on by one node even with several replicas behind the
+ * load balancer.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProactiveWorkflowService {
+
+    private final UserRepository userRepository;
+    private final ToolService toolService;
+    private final TaskService taskService;
+    private final ProactiveEventService proactiveEventService;
+    private final ChatService chatService;
+    private final GmailService gmailService;
+    private final CalendarService calendarService;
+    private final IndexingJobService indexingJobService;
+    private final OutboundQuotaManager quotaManager;
+    private final ActionLedger actionLedger;
+
+    @Qualifier(AsyncConfig.FANOUT_EXECUTOR)
+    private final AsyncTaskExecutor fanoutTaskExecutor;
+
+    /**
+     * Record a webhook event for the owning node to process.
+     */
+    public Task enqueue(User user, String source, Map<String, Object> event) {
+        Map<String, Object> context = new LinkedHashMap<>(event);
+        context.put("source", source);
+        Task task = new Task(user, "Process " + source + " notification", null, Task.TaskType.PROACTIVE_ACTION);
+        taskService.writeContext(task, context);
+        return taskService.executeTask(task);
+    }
+
+    /**
+     * Run a queued webhook event; called by {@link TaskDispatcher}.
+     */
+    String process(Task task) {
+        User user = userRepository.findById(task.getUser().getId()).orElseThrow();
+        Map<String, Object> event = taskService.readContext(task);
+        String source = String.valueOf(event.get("source"));
+
+        // A notification can cover several messages, and overlapping ones the same message twice,
+        // so each message is its own trigger. The cursor only moves once all of them went through;
+        // a failure fails the task, and its retry replays the messages the ledger hasn't recorded.
+        if ("gmail".equals(source)) {
+            GmailService.NewMessages messages = gmailService.newMessages(user, Long.parseLong(text(event, "historyId")));
+            for (String emailId : messages.ids()) {
+                actionLedger.withTrigger("gmail:" + emailId, () -> {
+                    processNewEmail(user, emailId);
+                    return null;
+                });
+            }
+            gmailService.advanceHistoryId(user, messages.historyId());
+            return "Processed " + messages.ids().size() + " new gmail message(s)";
+        }
+
+        // Keyed by the event itself, so a redelivered webhook can't repeat what the first one did
+        return actionLedger.withTrigger(triggerId(source, event), () -> {
+            switch (source) {
+                case "calendar" -> processCalendarEvent(user, text(event, "eventId"), text(event, "eventType"));
+                case "hubspot" -> processHubSpotEvent(user, text(event, "objectType"), text(event, "eventType"),
+                        text(event, "objectId"));
+                default -> {
+                    return "Unknown event source: " + source;
+                }
+            }
+            return "Processed " + source + " notification";
+        });
+    }
+
+    private static String triggerId(String source, Map<String, Object> event) {
+        return switch (source) {
+            case "calendar" -> "calendar:" + text(event, "eventId") + ":" + text(event, "eventType");
+            case "hubspot" -> "hubspot:" + text(event, "objectType") + ":" + text(event, "objectId")
+                    + ":" + text(event, "eventType");
+            default -> null;
+        };
+    }
+
+    private static String text(Map<String, Object> event, String key) {
+        Object value = event.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Handle one new message. Failures propagate so the notification task is retried.
+     */
+    private void processNewEmail(User user, String emailId) {
+        log.info("Processing new email for user: {} with email ID: {}", user.getEmail(), emailId);
+
+        // A reply to a workflow we started resumes that task only, found by sender and thread
+        Optional<Email> email = gmailService.fetchEmail(user, emailId);
+        Optional<Task> waiting = email.flatMap(message ->
+                taskService.claimWaitingTask(user, message.getFromEmail(), message.getThreadId()));
+        if (waiting.isPresent()) {
+            String result = toolService.resumeTask(user, waiting.get(), email.get());
+            log.info("Resumed task {} from email {}: {}", waiting.get().getId(), emailId, result);
+            indexingJobService.enqueue(user, IndexingJob.JobType.INCREMENTAL);
+            return;
+        }
+
+        // Only events some compiled instruction trigger matches are worth a chat completion
+        ProactiveEvent event = email.map(ProactiveEvent::email)
+                .orElseGet(() -> ProactiveEvent.of(ProactiveEvent.Source.EMAIL, "created", null));
+        if (proactiveEventService.shouldEvaluate(user, event)) {
+
+            // Trigger proactive AI response
+            String sessionId = "proactive_" + System.currentTimeMillis();
+            String proactiveMessage = String.format(
+                    "A new email (ID: %s) has arrived. Based on ongoing instructions, should I take any proactive action?",
+                    emailId
+            );
+
+            String response = chatService.processMessage(user, proactiveMessage, sessionId);
+            log.info("Proactive email response: {}", response);
+        }
+
+        // Re-index for updated RAG context; the job picks up only what changed
+        indexingJobService.enqueue(user, IndexingJob.JobType.INCREMENTAL);
+    }
+
+    private void processCalendarEvent(User user, String eventId, String eventType) {
+        try {
+            log.info("Processing calendar event for user: {} with event ID: {} and type: {}",
+                    user.getEmail(), eventId, eventType);
+
+            // Check if user has ongoing instructions about calendar events
+            if (proactiveEventService.shouldEvaluate(user,
+                    ProactiveEvent.of(ProactiveEvent.Source.CALENDAR, eventType, null))) {
+
+                String action = switch (eventType.toLowerCase()) {
+                    case "created" -> "A new calendar event was created";
+                    case "updated" -> "A calendar event was updated";
+                    case "deleted" -> "A calendar event was deleted";
+                    default -> "A calendar event was modified";
+                };
+
+                // Check for specific ongoing instructions
+                if (user.getOngoingInstructions().contains("send an email to attendees")) {
+                    handleCalendarEventEmail(user, eventId, eventType);
+                }
+
+                // Trigger proactive AI response
+                String sessionId = "proactive_calendar_" + System.currentTimeMillis();
+                String proactiveMessage = String.format(
+                        "%s (ID: %s). Based on ongoing instructions, should I take any proactive action?",
+                        action, eventId
+                );
+
+                String response = chatService.processMessage(user, proactiveMessage, sessionId);
+                log.info("Proactive calendar response: {}", response);
+            }
+
+            // Re-index for updated RAG context; the job picks up only what changed
+            indexingJobService.enqueue(user, IndexingJob.JobType.INCREMENTAL);
+
+        } catch (Exception e) {
+            log.error("Error processing calendar event for user: {}", user.getEmail(), e);
+        }
+    }
+
+    private void processHubSpotEvent(User user, String objectType, String eventType, String contactId) {
+        try {
+            log.info("Processing HubSpot event for user: {} with object type: {}, event type: {}, ID: {}",
+                    user.getEmail(), objectType, eventType, contactId);
+
+            if ("contact".equals(objectType) && "created".equals(eventType)) {
+                // Check if user has ongoing instructions about new contacts
+                if (user.getOngoingInstructions() != null &&
+                        user.getOngoingInstructions().contains("send them an email telling them thank you")) {
+
+                    handleNewContactWelcomeEmail(user, contactId);
+                }
+            }
+
+            // Trigger proactive AI response when an instruction trigger covers this HubSpot event
+            if (proactiveEventService.shouldEvaluate(user,
+                    ProactiveEvent.of(ProactiveEvent.Source.HUBSPOT, eventType, objectType))) {
+                String sessionId = "proactive_hubspot_" + System.currentTimeMillis();
+                String proactiveMessage = String.format(
+                        "A %s was %s in HubSpot (ID: %s). Based on ongoing instructions, should I take any proactive action?",
+                        objectType, eventType, contactId
+                );
+
+                String response = chatService.processMessage(user, proactiveMessage, sessionId);
+                log.info("Proactive HubSpot response: {}", response);
+            }
+
+            // Re-index for updated RAG context; the job picks up only what changed
+            indexingJobService.enqueue(user, IndexingJob.JobType.INCREMENTAL);
+
+        } catch (Exception e) {
+            log.error("Error processing HubSpot event for user: {}", user.getEmail(), e);
+        }
+    }
+
+    private void handleCalendarEventEmail(User user, String eventId, String eventType) {
+        try {
+            if ("created".equals(eventType)) {
+                // Get event details and send email to attendees
+                String searchResult = calendarService.searchEvents(user, eventId, null, null);
+
+                // Extract attendees from event details (simplified)
+                if (searchResult.contains("Attendees:")) {
+                    String attendeesLine = searchResult.substring(searchResult.indexOf("Attendees:"));
+                    String[] attendees = attendeesLine.split(",");
+
+                    // Sends run on other threads, which don't see the event's trigger
+                    String triggerId = actionLedger.currentTrigger();
+                    List<CompletableFuture<Void>> notifications = new ArrayList<>();
+                    for (String attendee : attendees) {
+                        String email = attendee.trim();
+                        if (email.contains("@") && !email.equals(user.getEmail())) {
+                            String subject = "Meeting Notification";
+                            String body = "A new meeting has been scheduled. Please check your calendar for details.";
+
+                            notifications.add(CompletableFuture.runAsync(() -> quotaManager.runInBackground(user, () -> {
+                                actionLedger.run(user, triggerId, "sendEmail", Map.of("to", email, "subject", subject, "body", body),
+                                        () -> toolService.sendEmail(user, email, subject, body));
+                                log.info("Sent meeting notification to: {}", email);
+                            }), fanoutTaskExecutor));
+                        }
+                    }
+                    CompletableFuture.allOf(notifications.toArray(new CompletableFuture[0])).join();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error handling calendar event email", e);
+        }
+    }
+
+    private void handleNewContactWelcomeEmail(User user, String contactId) {
+        try {
+            // Get contact details
+            String contactDetails = toolService.searchContacts(user, contactId);
+
+            if (contactDetails.contains("Email:")) {
+                // Extract email from contact details (simplified parsing)
+                String[] lines = contactDetails.split("\n");
+                String email = null;
+                String name = null;
+
+                for (String line : lines) {
+                    if (line.startsWith("Email:")) {
+                        email = line.substring(6).trim();
+                    }
+                    if (line.startsWith("Name:")) {
+                        name = line.substring(5).trim();
+                    }
+                }
+
+                if (email != null && !email.equals(user.getEmail())) {
+                    String subject = "Welcome - Thank you for being a client!";
+                    String body = String.format(
+                            "Dear %s,\n\n" +
+                                    "Thank you for being a valued client! We're excited to work with you and help you achieve your financial goals.\n\n" +
+                                    "If you have any questions or need assistance, please don't hesitate to reach out.\n\n" +
+                                    "Best regards,\n" +
+                                    "Your Financial Advisor Team",
+                            name != null ? name : "Valued Client"
+                    );
+
+                    String to = email;
+                    actionLedger.run(user, "sendEmail", Map.of("to", to, "subject", subject, "body", body),
+                            () -> toolService.sendEmail(user, to, subject, body));
+                    log.info("Sent welcome email to new contact: {}", email);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error handling new contact welcome email", e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.advisor.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Product quantization: a vector is split into {@code subspaces} equal slices and each slice is
+ * replaced by the index of its nearest of 256 trained centroids, so a 1536-dimension embedding
+ * becomes {@code subspaces} bytes. A query is scored against codes through a lookup table of its
+ * inner product with every centroid, one table read per slice.
+ */
+final class ProductQuantizer {
+
+    static final int CENTROIDS = 256;
+    private static final int MAGIC = 0x50514342; // "PQCB"
+
+    final int dim;
+    final int subspaces;
+    final int subDim;
+
+    // [subspace][centroid][subDim], flattened
+    private final float[] centroids;
+
+    private ProductQuantizer(int dim, int subspaces, float[] centroids) {
+        this.dim = dim;
+        this.subspaces = subspaces;
+        this.subDim = dim / subspaces;
+        this.centroids = centroids;
+    }
+
+    /**
+     * Train centroids per subspace with a few rounds of k-means over the sample.
+     */
+    static ProductQuantizer train(float[][] sample, int subspaces, int iterations, long seed) {
+        int dim = sample[0].length;
+        if (dim % subspaces != 0) {
+            throw new IllegalArgumentException(dim + " dimensions can't be split into " + subspaces + " subspaces");
+        }
+        int subDim = dim / subspaces;
+        float[] centroids = new float[subspaces * CENTROIDS * subDim];
+        Random random = new Random(seed);
+        int[] assignment = new int[sample.length];
+        float[] sums = new float[CENTROIDS * subDim];
+        int[] counts = new int[CENTROIDS];
+
+        for (int s = 0; s < subspaces; s++) {
+            int base = s * CENTROIDS * subDim;
+            int from = s * subDim;
+            for (int c = 0; c < CENTROIDS; c++) {
+                System.arraycopy(sample[random.nextInt(sample.length)], from, centroids, base + c * subDim, subDim);
+            }
+
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                for (int i = 0; i < sample.length; i++) {
+                    assignment[i] = nearest(centroids, base, subDim, sample[i], from);
+                }
+
+                Arrays.fill(sums, 0f);
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < sample.length; i++) {
+                    int c = assignment[i];
+                    counts[c]++;
+                    for (int d = 0; d < subDim; d++) {
+                        sums[c * subDim + d] += sample[i][from + d];
+                    }
+                }
+                for (int c = 0; c < CENTROIDS; c++) {
+                    if (counts[c] == 0) {
+                        // Reseed an empty cluster from a random sample
+                        System.arraycopy(sample[random.nextInt(sample.length)], from, centroids, base + c * subDim, subDim);
+                        continue;
+                    }
+                    for (int d = 0; d < subDim; d++) {
+                        centroids[base + c * subDim + d] = sums[c * subDim + d] / counts[c];
+                    }
+                }
+            }
+        }
+        return new ProductQuantizer(dim, subspaces, centroids);
+    }
+
+    /**
+     * Write the code of {@code vector} into {@code codes[offset .. offset + subspaces)}.
+     */
+    void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            codes[offset + s] = (byte) nearest(centroids, s * CENTROIDS * subDim, subDim, vector, s * subDim);
+        }
+    }
+
+    /**
+     * Inner product of each query slice with every centroid of its subspace.
+     */
+    float[] table(float[] query) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int base = s * CENTROIDS * subDim;
+            int from = s * subDim;
+            for (int c = 0; c < CENTROIDS; c++) {
+                float sum = 0f;
+                int centroid = base + c * subDim;
+                for (int d = 0; d < subDim; d++) {
+                    sum += query[from + d] * centroids[centroid + d];
+                }
+                table[s * CENTROIDS + c] = sum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Approximate inner product of the query behind {@code table} with one encoded vector.
+     */
+    static float score(float[] table, byte[] codes, int offset, int subspaces) {
+        float sum = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            sum += table[s * CENTROIDS + (codes[offset + s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    private static int nearest(float[] centroids, int base, int subDim, float[] vector, int from) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < CENTROIDS; c++) {
+            int centroid = base + c * subDim;
+            float distance = 0f;
+            for (int d = 0; d < subDim; d++) {
+                float delta = vector[from + d] - centroids[centroid + d];
+                distance += delta * delta;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(dim);
+            out.writeInt(subspaces);
+            for (float value : centroids) {
+                out.writeFloat(value);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static ProductQuantizer read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a product quantizer codebook: " + path);
+            }
+            int dim = in.readInt();
+            int subspaces = in.readInt();
+            float[] centroids = new float[subspaces * CENTROIDS * (dim / subspaces)];
+            for (int i = 0; i < centroids.length; i++) {
+                centroids[i] = in.readFloat();
+            }
+            return new ProductQuantizer(dim, subspaces, centroids);
+        }
+    }
+}
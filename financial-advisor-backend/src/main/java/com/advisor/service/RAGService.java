@@ -1,32 +1,77 @@
 package com.advisor.service;
 
+import com.advisor.config.AsyncConfig;
+import com.advisor.model.IndexingJobStep;
 import com.advisor.model.User;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class RAGService {
 
     private final VectorService vectorService;
     private final GmailService gmailService;
     private final HubSpotService hubSpotService;
     private final CalendarService calendarService;
+    private final OutboundQuotaManager quotaManager;
+    private final IndexingPipelineMetrics pipelineMetrics;
 
+    @Qualifier(AsyncConfig.PIPELINE_EXECUTOR)
+    private final AsyncTaskExecutor pipelineTaskExecutor;
+
+    @Value("${indexing.pipeline.document-queue-capacity:256}")
+    private int documentQueueCapacity;
+
+    @Value("${indexing.pipeline.embedded-queue-capacity:4}")
+    private int embeddedQueueCapacity;
+
+    @Value("${indexing.pipeline.embed-workers:2}")
+    private int embedWorkers;
+
+    @Value("${indexing.pipeline.embed-batch-size:64}")
+    private int embedBatchSize;
+
+    private static final int MAX_CONTEXT_PASSAGES = 5;
+    private static final int CONTEXT_NEIGHBOUR_CHUNKS = 1;
+    private static final int MAX_EXPANDED_PASSAGE_LENGTH = 4000; // characters
 
     /**
      * Retrieve relevant context for a user query using vector similarity search.
+     * Hits from the same email thread are collapsed into one passage, expanded with the
+     * neighbouring chunks of the best-matching message.
      */
     public String retrieveRelevantContext(User user, String query) {
         try {
-            // Get relevant documents from vector store
-            List<String> similarDocuments = vectorService.searchSimilar(query, 5);
+            // Over-fetch so collapsing threads still leaves enough distinct passages
+            List<VectorService.ScoredDocument> hits = vectorService.searchHitsByUser(user, query, MAX_CONTEXT_PASSAGES * 4);
+            List<String> passages = collapseByThread(user, hits, MAX_CONTEXT_PASSAGES);
 
-            if (similarDocuments.isEmpty()) {
+            if (passages.isEmpty()) {
                 return "No relevant context found.";
             }
 
@@ -34,146 +79,393 @@ public class RAGService {
             StringBuilder context = new StringBuilder();
             context.append("RELEVANT INFORMATION:\n\n");
 
-            for (int i = 0; i < similarDocuments.size(); i++) {
-                context.append(String.format("%d. %s\n\n", i + 1, similarDocuments.get(i)));
+            for (int i = 0; i < passages.size(); i++) {
+                context.append(String.format("%d. %s\n\n", i + 1, passages.get(i)));
             }
 
             return context.toString();
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to build RAG context for user {}", user.getEmail(), e);
             return "";
         }
     }
 
+    private List<String> collapseByThread(User user, List<VectorService.ScoredDocument> hits, int limit) {
+        // Hits arrive best first, so the first hit of each group is its best match
+        Map<String, List<VectorService.ScoredDocument>> groups = new LinkedHashMap<>();
+        for (VectorService.ScoredDocument hit : hits) {
+            Object threadId = hit.getMetadata().get("threadId");
+            String key = threadId != null ? "thread:" + threadId : "doc:" + hit.getId();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(hit);
+        }
+
+        List<String> passages = new ArrayList<>();
+        for (List<VectorService.ScoredDocument> group : groups.values()) {
+            if (passages.size() >= limit) {
+                break;
+            }
+            VectorService.ScoredDocument best = group.get(0);
+            String passage = expandChunk(user, best);
+
+            long otherMessages = group.stream()
+                    .map(hit -> hit.getMetadata().get("gmailId"))
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .count() - 1;
+            if (otherMessages > 0) {
+                passage += String.format(" [+%d more matching message(s) in this thread]", otherMessages);
+            }
+            passages.add(passage);
+        }
+        return passages;
+    }
+
     /**
-     * Index emails into vector store for RAG search.
+     * Widen a chunk of a multi-part email to its neighbours so the passage isn't cut mid-thought.
      */
-    public void indexEmails(User user) {
-        try {
-            //System.out.println("Starting email indexing for user: " + user.getEmail());
+    private String expandChunk(User user, VectorService.ScoredDocument hit) {
+        Map<String, Object> metadata = hit.getMetadata();
+        Object gmailId = metadata.get("gmailId");
+        if (gmailId == null || !(metadata.get("chunkIndex") instanceof Number chunkIndex)
+                || !(metadata.get("totalChunks") instanceof Number totalChunks) || totalChunks.intValue() <= 1) {
+            return hit.getContent();
+        }
 
-            // Get emails as documents from Gmail service
-            List<Document> emailDocuments = gmailService.getEmailsAsDocuments(user);
+        int index = chunkIndex.intValue();
+        List<String> window = vectorService.findEmailChunks(user, gmailId.toString(),
+                Math.max(0, index - CONTEXT_NEIGHBOUR_CHUNKS), index + CONTEXT_NEIGHBOUR_CHUNKS);
+        String expanded = String.join("\n", window);
+        return expanded.isEmpty() || expanded.length() > MAX_EXPANDED_PASSAGE_LENGTH ? hit.getContent() : expanded;
+    }
 
-            if (emailDocuments.isEmpty()) {
-                //System.out.println("No emails found to index for user: " + user.getEmail());
-                // Add sample data for testing
-                addSampleEmailData(user);
-                return;
-            }
+    /**
+     * Index emails into vector store for RAG search. Runs at background priority for outbound quotas.
+     */
+    public int indexEmails(User user) {
+        return indexSource(user, IndexingJobStep.Source.EMAILS);
+    }
 
-            // Add each email document to vector store
-            int indexed = 0;
-            for (Document doc : emailDocuments) {
-                try {
-                    vectorService.addDocument(doc.getFormattedContent(), doc.getMetadata(), user);
-                    indexed++;
-                } catch (Exception e) {
-                    System.err.println("Error indexing email document: " + e.getMessage());
-                }
-            }
+    /**
+     * Index CRM contacts and notes into vector store. Runs at background priority for outbound quotas.
+     */
+    public int indexCRMData(User user) {
+        return indexSource(user, IndexingJobStep.Source.CRM);
+    }
 
-            System.out.println(String.format("Successfully indexed %d emails for user: %s", indexed, user.getEmail()));
+    /**
+     * Index calendar events into vector store. Runs at background priority for outbound quotas.
+     */
+    public int indexCalendarData(User user) {
+        return indexSource(user, IndexingJobStep.Source.CALENDAR);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Failed to index emails for user: " + user.getEmail());
-        }
+    private int indexSource(User user, IndexingJobStep.Source source) {
+        SourceResult result = indexSources(user, List.of(source), null).get(0);
+        return result.error() == null ? result.indexed() : 0;
+    }
+
+    /**
+     * Outcome of indexing one source; {@code error} is null when the source completed.
+     */
+    public record SourceResult(IndexingJobStep.Source source, int indexed, String error) {
+    }
+
+    private record SourceDocument(IndexingJobStep.Source source, Document document) {
     }
 
     /**
-     * Index CRM contacts and notes into vector store.
+     * Work for the persist stage: an embedded batch, or the end of a source's stream.
      */
-    public void indexCRMData(User user) {
+    private sealed interface PersistTask permits EmbeddedTask, SourceDone {
+    }
+
+    private record EmbeddedTask(IndexingJobStep.Source source, List<Document> documents,
+                                VectorService.EmbeddedBatch batch) implements PersistTask {
+    }
+
+    private record SourceDone(IndexingJobStep.Source source, int produced, String error) implements PersistTask {
+    }
+
+    /**
+     * Index the given sources through a staged pipeline:
+     * <pre>
+     * fetch/parse/chunk (one producer per source) -> [documents] -> embed (batched, N workers) -> [embedded] -> persist
+     * </pre>
+     * Producers and embedders run on the pipeline executor and stream documents as they are built;
+     * the bounded queues keep memory flat and push back on fetching when embedding falls behind.
+     * The persist stage runs on the calling thread. A source whose stages stop without reporting
+     * back (a stage thread died) comes back as failed instead of stalling the job.
+     *
+     * @param onSourceIndexed called on the calling thread once all documents of a source are persisted (may be null)
+     */
+    public List<SourceResult> indexSources(User user, Collection<IndexingJobStep.Source> sources,
+                                           Consumer<SourceResult> onSourceIndexed) {
+        return quotaManager.callAs(user, OutboundQuotaManager.Priority.BACKGROUND,
+                () -> runPipeline(user, sources, onSourceIndexed));
+    }
+
+    private List<SourceResult> runPipeline(User user, Collection<IndexingJobStep.Source> sources,
+                                           Consumer<SourceResult> onSourceIndexed) {
+        BlockingQueue<SourceDocument> documents = new ArrayBlockingQueue<>(Math.max(1, documentQueueCapacity));
+        BlockingQueue<PersistTask> embedded = new ArrayBlockingQueue<>(Math.max(1, embeddedQueueCapacity));
+        CountDownLatch producersDone = new CountDownLatch(sources.size());
+        int workers = Math.max(1, embedWorkers);
+        CountDownLatch stagesDone = new CountDownLatch(sources.size() + workers);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        pipelineMetrics.track("documents", documents);
+        pipelineMetrics.track("embedded", embedded);
+
+        try {
+            for (IndexingJobStep.Source source : sources) {
+                pipelineTaskExecutor.execute(() -> {
+                    try {
+                        quotaManager.runInBackground(user, () -> produce(user, source, documents, embedded, cancelled));
+                    } finally {
+                        producersDone.countDown();
+                        stagesDone.countDown();
+                    }
+                });
+            }
+            for (int i = 0; i < workers; i++) {
+                pipelineTaskExecutor.execute(() -> {
+                    try {
+                        quotaManager.runInBackground(user, () -> embed(user, documents, embedded, producersDone, cancelled));
+                    } finally {
+                        stagesDone.countDown();
+                    }
+                });
+            }
+            return persist(user, sources, embedded, stagesDone, onSourceIndexed);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while indexing", e);
+        } finally {
+            cancelled.set(true);
+            pipelineMetrics.untrack("documents", documents);
+            pipelineMetrics.untrack("embedded", embedded);
+        }
+    }
+
+    private void produce(User user, IndexingJobStep.Source source, BlockingQueue<SourceDocument> documents,
+                         BlockingQueue<PersistTask> embedded, AtomicBoolean cancelled) {
+        AtomicInteger produced = new AtomicInteger();
+        String error = null;
         try {
-            System.out.println("Starting CRM data indexing for user: " + user.getEmail());
+            fetchDocuments(user, source, document -> {
+                if (!offer(documents, new SourceDocument(source, document), cancelled)) {
+                    throw new CancellationException("Indexing pipeline stopped");
+                }
+                produced.incrementAndGet();
+            });
+        } catch (CancellationException e) {
+            return;
+        } catch (Exception e) {
+            log.error("Failed to fetch {} data for user {}", source, user.getEmail(), e);
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        offer(embedded, new SourceDone(source, produced.get(), error), cancelled);
+    }
 
-            // Get contacts as documents from HubSpot service
-            List<Document> crmDocuments = hubSpotService.getContactsAsDocuments(user);
+    private void embed(User user, BlockingQueue<SourceDocument> documents, BlockingQueue<PersistTask> embedded,
+                       CountDownLatch producersDone, AtomicBoolean cancelled) {
+        try {
+            while (!cancelled.get()) {
+                SourceDocument first = documents.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (producersDone.getCount() == 0 && documents.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                List<SourceDocument> drained = new ArrayList<>();
+                drained.add(first);
+                documents.drainTo(drained, Math.max(1, embedBatchSize) - 1);
 
-            if (crmDocuments.isEmpty()) {
-                System.out.println("No CRM data found to index for user: " + user.getEmail());
-                // Add sample data for testing
-                addSampleCRMData(user);
-                return;
+                Map<IndexingJobStep.Source, List<Document>> bySource = new EnumMap<>(IndexingJobStep.Source.class);
+                for (SourceDocument item : drained) {
+                    bySource.computeIfAbsent(item.source(), key -> new ArrayList<>()).add(item.document());
+                }
+                for (Map.Entry<IndexingJobStep.Source, List<Document>> group : bySource.entrySet()) {
+                    List<Document> batch = group.getValue();
+                    VectorService.EmbeddedBatch result = pipelineMetrics.time(IndexingPipelineMetrics.Stage.EMBED, () -> {
+                        try {
+                            return vectorService.embedDocuments(batch, user);
+                        } catch (Exception e) {
+                            log.error("Failed to embed {} batch for user {}", group.getKey(), user.getEmail(), e);
+                            return new VectorService.EmbeddedBatch(List.of(), batch);
+                        }
+                    });
+                    pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.EMBED, batch.size());
+                    if (!offer(embedded, new EmbeddedTask(group.getKey(), batch, result), cancelled)) {
+                        return;
+                    }
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Persist stage: stores embedded batches and completes a source once every document it
+     * produced has come through.
+     */
+    private List<SourceResult> persist(User user, Collection<IndexingJobStep.Source> sources,
+                                       BlockingQueue<PersistTask> embedded, CountDownLatch stagesDone,
+                                       Consumer<SourceResult> onSourceIndexed) throws InterruptedException {
+        Map<IndexingJobStep.Source, Integer> accounted = new EnumMap<>(IndexingJobStep.Source.class);
+        Map<IndexingJobStep.Source, Integer> indexed = new EnumMap<>(IndexingJobStep.Source.class);
+        Map<IndexingJobStep.Source, SourceDone> done = new EnumMap<>(IndexingJobStep.Source.class);
+        Set<String> gmailIds = new HashSet<>();
+        Set<String> failedGmailIds = new HashSet<>();
+        List<SourceResult> results = new ArrayList<>();
+
+        while (results.size() < sources.size()) {
+            PersistTask task = embedded.poll(1, TimeUnit.SECONDS);
+            if (task == null) {
+                if (stagesDone.getCount() == 0 && embedded.isEmpty()) {
+                    // Every stage has exited, so nothing more is coming for the open sources
+                    for (IndexingJobStep.Source source : sources) {
+                        if (results.stream().noneMatch(result -> result.source() == source)) {
+                            SourceResult result = new SourceResult(source, indexed.getOrDefault(source, 0),
+                                    "Indexing pipeline stopped before " + source.name().toLowerCase() + " finished");
+                            results.add(result);
+                            if (onSourceIndexed != null) {
+                                onSourceIndexed.accept(result);
+                            }
+                        }
+                    }
+                }
+                continue;
+            }
+            IndexingJobStep.Source source;
 
-            // Add each CRM document to vector store
-            int indexed = 0;
-            for (Document doc : crmDocuments) {
+            if (task instanceof EmbeddedTask batch) {
+                source = batch.source();
+                List<Document> failed = new ArrayList<>(batch.batch().failed());
                 try {
-                    vectorService.addDocument(doc.getFormattedContent(), doc.getMetadata(), user);
-                    indexed++;
+                    pipelineMetrics.time(IndexingPipelineMetrics.Stage.PERSIST, () -> {
+                        vectorService.persist(batch.batch());
+                        return null;
+                    });
+                    pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.PERSIST, batch.batch().rows().size());
                 } catch (Exception e) {
-                    System.err.println("Error indexing CRM document: " + e.getMessage());
+                    log.error("Failed to store {} batch for user {}", source, user.getEmail(), e);
+                    failed = batch.documents();
+                }
+                accounted.merge(source, batch.documents().size(), Integer::sum);
+                indexed.merge(source, batch.documents().size() - failed.size(), Integer::sum);
+                if (source == IndexingJobStep.Source.EMAILS) {
+                    gmailIds.addAll(gmailIdsOf(batch.documents()));
+                    failedGmailIds.addAll(gmailIdsOf(failed));
                 }
+            } else {
+                SourceDone end = (SourceDone) task;
+                source = end.source();
+                done.put(source, end);
             }
 
-            System.out.println(String.format("Successfully indexed %d CRM records for user: %s", indexed, user.getEmail()));
+            SourceDone end = done.get(source);
+            if (end == null || accounted.getOrDefault(source, 0) < end.produced()) {
+                continue;
+            }
+            done.remove(source);
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Failed to index CRM data for user: " + user.getEmail());
+            if (end.error() == null && source == IndexingJobStep.Source.EMAILS) {
+                // Messages with a failed chunk are retried on the next run
+                gmailIds.removeAll(failedGmailIds);
+                gmailService.markIndexed(gmailIds);
+            }
+            SourceResult result = new SourceResult(source, indexed.getOrDefault(source, 0), end.error());
+            results.add(result);
+            log.info("Indexed {} {} documents for user {}", result.indexed(), source.name().toLowerCase(), user.getEmail());
+            if (onSourceIndexed != null) {
+                onSourceIndexed.accept(result);
+            }
         }
+        return results;
     }
 
     /**
-     * Index calendar events into vector store.
+     * Blocking put that gives up once the pipeline has stopped.
      */
-    public void indexCalendarData(User user) {
+    private <T> boolean offer(BlockingQueue<T> queue, T item, AtomicBoolean cancelled) {
         try {
-            System.out.println("Starting calendar data indexing for user: " + user.getEmail());
-
-            // Get calendar events as documents from Calendar service
-            List<Document> calendarDocuments = calendarService.getCalendarAsDocuments(user);
-
-            if (calendarDocuments.isEmpty()) {
-                System.out.println("No calendar data found to index for user: " + user.getEmail());
-                addSampleCalendarData(user);
-                return;
+            while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+                if (cancelled.get()) {
+                    return false;
+                }
             }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            // Add each calendar document to vector store
-            int indexed = 0;
-            for (Document doc : calendarDocuments) {
-                try {
-                    vectorService.addDocument(doc.getFormattedContent(), doc.getMetadata(), user);
-                    indexed++;
-                } catch (Exception e) {
-                    System.err.println("Error indexing calendar document: " + e.getMessage());
+    /**
+     * Fetch stage for one source: streams each document into {@code sink} as it is built.
+     */
+    private void fetchDocuments(User user, IndexingJobStep.Source source, Consumer<Document> sink) {
+        switch (source) {
+            case EMAILS -> {
+                // Only messages not indexed yet
+                int emitted = gmailService.streamEmailDocuments(user, sink);
+                if (emitted == 0 && gmailService.countEmails(user) == 0) {
+                    // Add sample data for testing
+                    addSampleEmailData(user);
                 }
             }
+            case CRM -> {
+                int emitted = hubSpotService.streamContactDocuments(user, sink);
+                if (emitted == 0) {
+                    log.info("No CRM data found to index for user {}", user.getEmail());
+                    // Add sample data for testing
+                    addSampleCRMData(user);
+                }
+            }
+            case CALENDAR -> {
+                // A single bounded page of events, so there is nothing to gain from streaming the fetch itself
+                List<Document> events = calendarService.getCalendarAsDocuments(user);
+                pipelineMetrics.recordItems(IndexingPipelineMetrics.Stage.FETCH, events.size());
+                if (events.isEmpty()) {
+                    log.info("No calendar data found to index for user {}", user.getEmail());
+                    addSampleCalendarData(user);
+                }
+                events.forEach(sink);
+            }
+        }
+    }
 
-            System.out.println(String.format("Successfully indexed %d calendar events for user: %s", indexed, user.getEmail()));
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Failed to index calendar data for user: " + user.getEmail());
+    private Set<String> gmailIdsOf(List<Document> documents) {
+        Set<String> gmailIds = new HashSet<>();
+        for (Document document : documents) {
+            Object gmailId = document.getMetadata().get("gmailId");
+            if (gmailId != null) {
+                gmailIds.add(gmailId.toString());
+            }
         }
+        return gmailIds;
     }
 
     /**
-     * Perform full data indexing for a user.
+     * Perform full data indexing for a user, fetching all sources concurrently.
      */
     public void performFullIndexing(User user) {
-        System.out.println("Starting full data indexing for user: " + user.getEmail());
+        log.info("Starting full data indexing for user {}", user.getEmail());
 
         try {
-            // Index emails first
-            indexEmails(user);
+            List<SourceResult> results = indexSources(user, List.of(IndexingJobStep.Source.values()), null);
+            results.stream()
+                    .filter(result -> result.error() != null)
+                    .forEach(result -> log.error("Failed to index {} for user {}: {}", result.source(), user.getEmail(), result.error()));
 
-            // Then index CRM data
-            indexCRMData(user);
-
-            // Finally index calendar events
-            indexCalendarData(user);
-
-            System.out.println("Completed full data indexing for user: " + user.getEmail());
+            log.info("Completed full data indexing for user {}", user.getEmail());
 
         } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Failed to complete full indexing for user: " + user.getEmail());
+            log.error("Failed to complete full indexing for user {}", user.getEmail(), e);
         }
     }
 
@@ -181,7 +473,7 @@ public class RAGService {
      * Search for specific information in indexed data.
      */
     public List<String> searchIndexedData(User user, String query, int limit) {
-        return vectorService.searchSimilar(query, limit);
+        return vectorService.searchSimilarByUser(user, query, limit);
     }
 
     /**
@@ -189,29 +481,26 @@ public class RAGService {
      */
     public void reindexUserData(User user) {
         try {
-            System.out.println("Re-indexing data for user: " + user.getEmail());
+            log.info("Re-indexing data for user {}", user.getEmail());
             performFullIndexing(user);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to re-index data for user {}", user.getEmail(), e);
         }
     }
 
     /**
-     * Get indexing statistics for a user.
+     * Get indexing statistics for a user from the stored data.
      */
-    public Map<String, Integer> getIndexingStats(User user) {
-        try {
-            // This would return actual counts from vector store
-            // For now, returning sample stats
-            return Map.of(
-                    "emails", 15,
-                    "contacts", 8,
-                    "calendar_events", 12,
-                    "total_documents", 35
-            );
-        } catch (Exception e) {
-            return Map.of();
-        }
+    public Map<String, Long> getIndexingStats(User user) {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("emails", gmailService.countEmails(user));
+        stats.put("emails_indexed", gmailService.countIndexedEmails(user));
+        stats.put("contacts", (long) hubSpotService.getContactStats(user).getOrDefault("total", 0));
+
+        Map<String, Long> documentsByType = vectorService.getDocumentCountsByType(user);
+        documentsByType.forEach((type, count) -> stats.put("documents_" + type, count));
+        stats.put("total_documents", documentsByType.values().stream().mapToLong(Long::longValue).sum());
+        return stats;
     }
 
     // Sample data methods for testing
@@ -274,10 +563,10 @@ public class RAGService {
 
             vectorService.addDocument(emailContent3, metadata3, user);
 
-            System.out.println("Added sample email data for testing");
+            log.info("Added sample email data for testing");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to add sample email data for user {}", user.getEmail(), e);
         }
     }
 
@@ -340,10 +629,10 @@ public class RAGService {
 
             vectorService.addDocument(contactContent3, metadata3, user);
 
-            System.out.println("Added sample CRM data for testing");
+            log.info("Added sample CRM data for testing");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to add sample CRM data for user {}", user.getEmail(), e);
         }
     }
 
@@ -369,10 +658,10 @@ public class RAGService {
                 vectorService.addDocument(sampleEvents[i], metadata, user);
             }
 
-            System.out.println("Added sample calendar data for testing");
+            log.info("Added sample calendar data for testing");
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to add sample calendar data for user {}", user.getEmail(), e);
         }
     }
 }
\ No newline at end of file
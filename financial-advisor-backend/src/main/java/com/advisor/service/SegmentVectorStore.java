@@ -0,0 +1,825 @@
+package com.advisor.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Optional on-disk vector index: each user's embeddings live in append-only
+ * {@link VectorSegment} files under {@code vector.segments.dir/<userId>/}, memory-mapped so the
+ * OS page cache holds the working set and searches allocate almost nothing on the heap. Postgres
+ * stays the source of truth for content and metadata; {@link VectorService} appends rows here
+ * as they are stored and resolves search hits back to {@code vector_store} rows.
+ *
+ * <p>Deletes are tombstones (an append-only file of ids) that searches skip; a background pass
+ * rewrites a user's segments without them once they make up {@code compact-ratio} of the rows.
+ * The rewrite goes to {@code .tmp} files that are renamed into place under the write lock after a
+ * marker listing the segments they replace is written, so a crash at any point leaves either the
+ * old or the new segments on the next open, never both.</p>
+ *
+ * <p>With {@code vector.quantization.mode} set, FLOAT32 segments are searched in two passes:
+ * compact codes kept on the heap (int8, or product quantization once a user's codebook has been
+ * trained in the background) pick a shortlist of {@code rerank-factor * limit} candidates, which
+ * are then re-ranked by their exact similarity read from the mapped floats.</p>
+ */
+@Service
+@Slf4j
+public class SegmentVectorStore {
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".vec";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String COMPACTION_MARKER = "compaction.pending";
+    private static final String TOMBSTONES = "tombstones.bin";
+    private static final String CODEBOOK = "pq-codebook.bin";
+    private static final int COMPACT_BATCH = 1024;
+
+    enum Quantization { NONE, INT8, PQ }
+
+    /**
+     * A search hit: the {@code vector_store} row id and its cosine similarity to the query.
+     */
+    public record Hit(long id, float score) {
+    }
+
+    @Value("${vector.segments.enabled:false}")
+    private boolean enabled;
+
+    @Value("${vector.segments.dir:./data/vector-segments}")
+    private String directory;
+
+    @Value("${vector.segments.encoding:float32}")
+    private String encoding;
+
+    @Value("${vector.segments.rows-per-segment:16384}")
+    private int rowsPerSegment;
+
+    @Value("${vector.segments.compact-ratio:0.2}")
+    private double compactRatio;
+
+    @Value("${vector.segments.idle-close-ms:600000}")
+    private long idleCloseMs;
+
+    @Value("${vector.segments.max-open-users:1000}")
+    private int maxOpenUsers;
+
+    @Value("${vector.quantization.mode:none}")
+    private String quantization;
+
+    @Value("${vector.quantization.rerank-factor:8}")
+    private int rerankFactor;
+
+    // PQ codes are coarser than int8 and need a wider shortlist for the same recall
+    @Value("${vector.quantization.pq.rerank-factor:32}")
+    private int pqRerankFactor;
+
+    @Value("${vector.quantization.pq.subspaces:96}")
+    private int pqSubspaces;
+
+    @Value("${vector.quantization.pq.min-rows:4096}")
+    private int pqMinRows;
+
+    @Value("${vector.quantization.pq.sample-size:2048}")
+    private int pqSampleSize;
+
+    @Value("${vector.quantization.pq.iterations:8}")
+    private int pqIterations;
+
+    private final Map<Long, UserSegments> users = new ConcurrentHashMap<>();
+
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vector-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final AtomicBoolean training = new AtomicBoolean();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append unit-length vectors for the user. A vector of a different dimension than the stored
+     * ones (the embedding model changed) discards the user's segments first.
+     */
+    public void append(Long userId, long[] ids, float[][] vectors) {
+        if (ids.length == 0) {
+            return;
+        }
+        UserSegments segments = lockWrite(userId);
+        try {
+            if (segments.dim != 0 && segments.dim != vectors[0].length) {
+                log.warn("Embedding dimension for user {} changed from {} to {}; rebuilding segments",
+                        userId, segments.dim, vectors[0].length);
+                segments.clear();
+            }
+            segments.append(ids, vectors);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append vectors for user " + userId, e);
+        } finally {
+            segments.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mark rows as deleted; they stop showing up in searches immediately.
+     */
+    public void delete(Long userId, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        UserSegments segments = lockWrite(userId);
+        try {
+            segments.tombstone(ids);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record deletes for user " + userId, e);
+        } finally {
+            segments.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every segment of the user.
+     */
+    public void drop(Long userId) {
+        UserSegments segments = lockWrite(userId);
+        try {
+            segments.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not drop vectors for user " + userId, e);
+        } finally {
+            segments.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code limit} rows most similar to a unit-length query, best first.
+     */
+    public List<Hit> search(Long userId, float[] query, int limit) {
+        UserSegments segments = lockRead(userId);
+        try {
+            if (segments.dim != query.length) {
+                return List.of();
+            }
+            VectorSegment.TopK top = switch (quantization()) {
+                case NONE -> VectorSegment.search(segments.segments, query, segments.tombstones, limit);
+                case INT8 -> VectorSegment.rerankedSearch(segments.segments, query, null,
+                        segments.tombstones, limit, limit * rerankFactor);
+                case PQ -> {
+                    // int8 candidates until the user's codebook has been trained
+                    ProductQuantizer quantizer = segments.quantizer;
+                    yield VectorSegment.rerankedSearch(segments.segments, query, quantizer, segments.tombstones,
+                            limit, limit * (quantizer != null ? pqRerankFactor : rerankFactor));
+                }
+            };
+
+            int count = top.size();
+            long[] ids = new long[count];
+            float[] scores = new float[count];
+            top.drain(ids, scores);
+            List<Hit> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                hits.add(new Hit(ids[i], scores[i]));
+            }
+            return hits;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not search vectors for user " + userId, e);
+        } finally {
+            segments.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Highest row id stored for the user; rows above it have not been appended yet.
+     */
+    public long watermark(Long userId) {
+        return segments(userId).maxId;
+    }
+
+    /**
+     * Rows stored and not deleted.
+     */
+    public long liveCount(Long userId) {
+        UserSegments segments = lockRead(userId);
+        try {
+            return segments.rows() - segments.tombstones.size();
+        } finally {
+            segments.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the live rows, sorted.
+     */
+    public long[] liveIds(Long userId) {
+        UserSegments segments = lockRead(userId);
+        try {
+            long[] ids = new long[segments.rows()];
+            int offset = 0;
+            for (VectorSegment segment : segments.segments) {
+                offset += segment.collectIds(ids, offset);
+            }
+            long[] live = Arrays.stream(ids, 0, offset).filter(id -> !segments.tombstones.contains(id)).toArray();
+            Arrays.sort(live);
+            return live;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read vector ids for user " + userId, e);
+        } finally {
+            segments.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queue a compaction pass on the maintenance thread. Rewrites run without the user's lock;
+     * only the final swap takes it, so searches keep running while a user is compacted.
+     */
+    @Scheduled(fixedDelayString = "${vector.segments.compact-interval-ms:300000}")
+    public void compact() {
+        if (enabled) {
+            runMaintenance(compacting, this::compactAll);
+        }
+    }
+
+    /**
+     * Queue codebook training on the maintenance thread; k-means over a sample takes seconds.
+     */
+    @Scheduled(fixedDelayString = "${vector.quantization.pq.train-interval-ms:300000}")
+    public void trainCodebooks() {
+        if (enabled && quantization() == Quantization.PQ) {
+            runMaintenance(training, this::trainAll);
+        }
+    }
+
+    /**
+     * Keep long passes off the shared scheduler thread, which also renews cluster and task leases.
+     * A pass still running when the next one is due is not queued again.
+     */
+    private void runMaintenance(AtomicBoolean running, Runnable pass) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenance.execute(() -> {
+                try {
+                    pass.run();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    private void compactAll() {
+        users.forEach((userId, segments) -> {
+            try {
+                UserSegments.CompactionPlan plan;
+                segments.lock.readLock().lock();
+                try {
+                    int rows = segments.rows();
+                    if (segments.closed || rows == 0 || segments.tombstones.size() < rows * compactRatio) {
+                        return;
+                    }
+                    plan = segments.plan();
+                    // Not evicted while the rewrite reads its files
+                    segments.maintaining = true;
+                } finally {
+                    segments.lock.readLock().unlock();
+                }
+
+                List<VectorSegment> rewritten = segments.rewrite(plan);
+
+                boolean installed;
+                segments.lock.writeLock().lock();
+                try {
+                    installed = segments.install(plan, rewritten);
+                } finally {
+                    segments.lock.writeLock().unlock();
+                }
+                if (installed) {
+                    log.info("Compacted vector segments of user {}: {} deleted rows dropped", userId, plan.dropped().size());
+                } else {
+                    for (VectorSegment segment : rewritten) {
+                        segment.delete();
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Vector segment compaction failed for user {}: {}", userId, e.getMessage(), e);
+            } finally {
+                segments.maintaining = false;
+            }
+        });
+    }
+
+    /**
+     * Train a product quantization codebook for users with enough rows and none yet (or one for a
+     * different dimension). Training works on a sample copied under the read lock, so searches
+     * and appends carry on meanwhile.
+     */
+    private void trainAll() {
+        users.forEach((userId, segments) -> {
+            try {
+                float[][] sample;
+                segments.lock.readLock().lock();
+                try {
+                    ProductQuantizer current = segments.quantizer;
+                    if (segments.closed || (current != null && current.dim == segments.dim) || segments.rows() < pqMinRows
+                            || segments.dim % pqSubspaces != 0) {
+                        return;
+                    }
+                    sample = segments.sample(pqSampleSize);
+                } finally {
+                    segments.lock.readLock().unlock();
+                }
+                if (sample.length == 0) {
+                    return;
+                }
+
+                long started = System.currentTimeMillis();
+                ProductQuantizer trained = ProductQuantizer.train(sample, pqSubspaces, pqIterations, userId);
+
+                segments.lock.writeLock().lock();
+                try {
+                    if (!segments.closed && segments.dim == trained.dim) {
+                        trained.write(segments.dir.resolve(CODEBOOK));
+                        segments.quantizer = trained;
+                    }
+                } finally {
+                    segments.lock.writeLock().unlock();
+                }
+                log.info("Trained PQ codebook for user {} ({} subspaces, {} samples) in {} ms",
+                        userId, pqSubspaces, sample.length, System.currentTimeMillis() - started);
+            } catch (IOException e) {
+                log.error("PQ codebook training failed for user {}: {}", userId, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Close the files of users not searched or written for {@code idle-close-ms}, and of the
+     * least recently used ones beyond {@code max-open-users}. They are reopened on next use.
+     */
+    @Scheduled(fixedDelayString = "${vector.segments.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleCloseMs;
+        List<Map.Entry<Long, UserSegments>> byLastUse = new ArrayList<>(users.entrySet());
+        byLastUse.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        int excess = byLastUse.size() - maxOpenUsers;
+        for (Map.Entry<Long, UserSegments> entry : byLastUse) {
+            UserSegments segments = entry.getValue();
+            if (segments.lastUsed >= idleBefore && excess <= 0) {
+                break;
+            }
+            // Users busy right now are left for the next pass
+            if (segments.maintaining || !segments.lock.writeLock().tryLock()) {
+                continue;
+            }
+            try {
+                if (segments.maintaining) {
+                    continue;
+                }
+                segments.closed = true;
+                users.remove(entry.getKey(), segments);
+                segments.close();
+                excess--;
+            } finally {
+                segments.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        maintenance.shutdownNow();
+        users.values().forEach(UserSegments::close);
+    }
+
+    private Quantization quantization() {
+        return Quantization.valueOf(quantization.trim().toUpperCase());
+    }
+
+    /**
+     * The user's segments with the read lock held, reopened if they were evicted meanwhile.
+     */
+    private UserSegments lockRead(Long userId) {
+        while (true) {
+            UserSegments segments = segments(userId);
+            segments.lock.readLock().lock();
+            if (!segments.closed) {
+                segments.lastUsed = System.currentTimeMillis();
+                return segments;
+            }
+            segments.lock.readLock().unlock();
+        }
+    }
+
+    private UserSegments lockWrite(Long userId) {
+        while (true) {
+            UserSegments segments = segments(userId);
+            segments.lock.writeLock().lock();
+            if (!segments.closed) {
+                segments.lastUsed = System.currentTimeMillis();
+                return segments;
+            }
+            segments.lock.writeLock().unlock();
+        }
+    }
+
+    private UserSegments segments(Long userId) {
+        return users.computeIfAbsent(userId, id -> {
+            try {
+                return new UserSegments(Paths.get(directory, String.valueOf(id)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open vector segments for user " + id, e);
+            }
+        });
+    }
+
+    /**
+     * The segments and tombstones of one user, guarded by {@link #lock}.
+     */
+    private final class UserSegments {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Path dir;
+        final List<VectorSegment> segments = new ArrayList<>();
+        final Set<Long> tombstones = new HashSet<>();
+        final AtomicInteger nextSequence = new AtomicInteger();
+        int dim;
+        // Bumped when the segments are dropped, so a compaction started before that is discarded
+        long generation;
+        volatile long maxId;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile boolean maintaining;
+        // Set under the write lock once evicted; holders of a stale reference reopen the user
+        volatile boolean closed;
+        volatile ProductQuantizer quantizer;
+
+        UserSegments(Path dir) throws IOException {
+            this.dir = dir;
+            // Created with the first segment, so users who only search leave nothing on disk
+            if (!Files.isDirectory(dir)) {
+                return;
+            }
+
+            recoverCompaction();
+
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(dir)) {
+                files = listing.filter(path -> isSegment(path, SEGMENT_SUFFIX))
+                        .sorted()
+                        .toList();
+            }
+            for (Path file : files) {
+                nextSequence.accumulateAndGet(sequenceOf(file) + 1, Math::max);
+                if (Files.size(file) < VectorSegment.HEADER_BYTES) {
+                    // Crashed between creating the file and writing its header: it never held rows
+                    log.warn("Deleting vector segment without a header: {}", file);
+                    Files.delete(file);
+                    continue;
+                }
+                VectorSegment segment;
+                try {
+                    segment = VectorSegment.open(file);
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable vector segment {}: {}", file, e.getMessage());
+                    continue;
+                }
+                segments.add(segment);
+                dim = segment.dim;
+                maxId = Math.max(maxId, segment.maxId());
+            }
+
+            Path tombstoneFile = dir.resolve(TOMBSTONES);
+            if (Files.exists(tombstoneFile)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tombstoneFile)))) {
+                    long count = Files.size(tombstoneFile) / Long.BYTES;
+                    for (long i = 0; i < count; i++) {
+                        tombstones.add(in.readLong());
+                    }
+                }
+            }
+
+            Path codebook = dir.resolve(CODEBOOK);
+            if (Files.exists(codebook)) {
+                try {
+                    ProductQuantizer loaded = ProductQuantizer.read(codebook);
+                    quantizer = loaded.dim == dim ? loaded : null;
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable PQ codebook {}: {}", codebook, e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Finish or roll back a compaction interrupted by a crash. With the marker on disk all
+         * rewritten segments were complete, so the remaining {@code .tmp} files are renamed and
+         * the replaced segments deleted; without it the {@code .tmp} files are partial output.
+         */
+        private void recoverCompaction() throws IOException {
+            Path marker = dir.resolve(COMPACTION_MARKER);
+            List<Path> staged;
+            try (Stream<Path> listing = Files.list(dir)) {
+                staged = listing.filter(path -> isSegment(path, SEGMENT_SUFFIX + TEMP_SUFFIX)).sorted().toList();
+            }
+            if (!Files.exists(marker)) {
+                for (Path file : staged) {
+                    Files.delete(file);
+                }
+                return;
+            }
+
+            ByteBuffer replaced = ByteBuffer.wrap(Files.readAllBytes(marker));
+            while (replaced.remaining() >= Integer.BYTES) {
+                Files.deleteIfExists(segmentPath(replaced.getInt(), SEGMENT_SUFFIX));
+            }
+            for (Path file : staged) {
+                Files.move(file, segmentPath(sequenceOf(file), SEGMENT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.delete(marker);
+            log.info("Finished an interrupted vector segment compaction in {}", dir);
+        }
+
+        int rows() {
+            int rows = 0;
+            for (VectorSegment segment : segments) {
+                rows += segment.rows();
+            }
+            return rows;
+        }
+
+        void append(long[] ids, float[][] vectors) throws IOException {
+            appendTo(segments, ids, vectors, ids.length, SEGMENT_SUFFIX);
+            dim = vectors[0].length;
+            for (long id : ids) {
+                maxId = Math.max(maxId, id);
+            }
+        }
+
+        /**
+         * Copy up to {@code size} stored vectors, evenly spread over the FLOAT32 rows.
+         */
+        float[][] sample(int size) throws IOException {
+            int rows = 0;
+            for (VectorSegment segment : segments) {
+                if (segment.encoding == VectorSegment.Encoding.FLOAT32) {
+                    rows += segment.rows();
+                }
+            }
+            int count = Math.min(size, rows);
+            float[][] sample = new float[count][];
+            int index = 0;
+            int position = 0;
+            for (VectorSegment segment : segments) {
+                if (segment.encoding != VectorSegment.Encoding.FLOAT32) {
+                    continue;
+                }
+                int segmentRows = segment.rows();
+                // Rows whose global position lands on a multiple of the stride
+                while (index < count && (long) index * rows / count < position + segmentRows) {
+                    float[] vector = new float[segment.dim];
+                    segment.vector((int) ((long) index * rows / count - position), vector);
+                    sample[index++] = vector;
+                }
+                position += segmentRows;
+            }
+            return index == count ? sample : Arrays.copyOf(sample, index);
+        }
+
+        void tombstone(Collection<Long> ids) throws IOException {
+            if (segments.isEmpty()) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(ids.size() * Long.BYTES);
+            for (Long id : ids) {
+                if (tombstones.add(id)) {
+                    buffer.putLong(id);
+                }
+            }
+            buffer.flip();
+            try (FileChannel channel = FileChannel.open(dir.resolve(TOMBSTONES),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * What a compaction pass rewrites: the rows present when it started, minus the rows that
+         * were deleted by then.
+         */
+        record CompactionPlan(List<VectorSegment> segments, int[] rows, Set<Long> dropped, long generation) {
+        }
+
+        /**
+         * Snapshot the segments to compact; call under the read lock.
+         */
+        CompactionPlan plan() {
+            List<VectorSegment> snapshot = List.copyOf(segments);
+            int[] rows = new int[snapshot.size()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = snapshot.get(i).rows();
+            }
+            return new CompactionPlan(snapshot, rows, Set.copyOf(tombstones), generation);
+        }
+
+        /**
+         * Rewrite the planned live rows into fresh {@code .tmp} segments in the configured
+         * encoding. Runs without the lock: segments are append-only, so the planned rows don't
+         * change.
+         */
+        List<VectorSegment> rewrite(CompactionPlan plan) throws IOException {
+            List<VectorSegment> rewritten = new ArrayList<>();
+            try {
+                for (int i = 0; i < plan.segments().size(); i++) {
+                    copyLive(plan.segments().get(i), 0, plan.rows()[i], plan.dropped(), rewritten);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (VectorSegment segment : rewritten) {
+                    segment.delete();
+                }
+                throw e;
+            }
+            return rewritten;
+        }
+
+        /**
+         * Swap in the rewritten segments; call under the write lock. Rows appended since the plan
+         * are carried over and deletes since the plan stay tombstoned. Returns false when the
+         * user's segments were dropped meanwhile and the rewrite must be discarded.
+         */
+        boolean install(CompactionPlan plan, List<VectorSegment> rewritten) throws IOException {
+            if (closed || plan.generation() != generation) {
+                return false;
+            }
+            for (VectorSegment segment : segments) {
+                int index = plan.segments().indexOf(segment);
+                copyLive(segment, index >= 0 ? plan.rows()[index] : 0, segment.rows(), plan.dropped(), rewritten);
+            }
+
+            // Once the marker is down, reopening finishes the swap instead of loading both sets
+            ByteBuffer replaced = ByteBuffer.allocate(segments.size() * Integer.BYTES);
+            for (VectorSegment segment : segments) {
+                replaced.putInt(sequenceOf(segment.path));
+            }
+            for (VectorSegment segment : rewritten) {
+                segment.force();
+            }
+            replaceFile(COMPACTION_MARKER, replaced.flip());
+            for (VectorSegment segment : rewritten) {
+                segment.moveTo(segmentPath(sequenceOf(segment.path), SEGMENT_SUFFIX));
+            }
+
+            List<VectorSegment> old = new ArrayList<>(segments);
+            segments.clear();
+            segments.addAll(rewritten);
+            for (VectorSegment segment : old) {
+                segment.delete();
+            }
+            Files.delete(dir.resolve(COMPACTION_MARKER));
+
+            tombstones.removeAll(plan.dropped());
+            writeTombstones();
+            return true;
+        }
+
+        private void copyLive(VectorSegment source, int from, int to, Set<Long> dropped,
+                              List<VectorSegment> target) throws IOException {
+            if (from >= to) {
+                return;
+            }
+            long[] ids = new long[COMPACT_BATCH];
+            float[][] vectors = new float[COMPACT_BATCH][source.dim];
+            int[] pending = {0};
+            source.forEachLive(dropped, from, to, (id, vector) -> {
+                ids[pending[0]] = id;
+                System.arraycopy(vector, 0, vectors[pending[0]], 0, source.dim);
+                if (++pending[0] == COMPACT_BATCH) {
+                    appendTo(target, ids, vectors, pending[0], SEGMENT_SUFFIX + TEMP_SUFFIX);
+                    pending[0] = 0;
+                }
+            });
+            appendTo(target, ids, vectors, pending[0], SEGMENT_SUFFIX + TEMP_SUFFIX);
+        }
+
+        /**
+         * Replace the tombstone file with the current set.
+         */
+        private void writeTombstones() throws IOException {
+            Path file = dir.resolve(TOMBSTONES);
+            if (tombstones.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(tombstones.size() * Long.BYTES);
+            tombstones.forEach(buffer::putLong);
+            replaceFile(TOMBSTONES, buffer.flip());
+        }
+
+        /**
+         * Write {@code buffer} to a temporary file and rename it over {@code name}.
+         */
+        private void replaceFile(String name, ByteBuffer buffer) throws IOException {
+            Path temp = dir.resolve(name + TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void clear() throws IOException {
+            for (VectorSegment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            tombstones.clear();
+            Files.deleteIfExists(dir.resolve(TOMBSTONES));
+            Files.deleteIfExists(dir.resolve(CODEBOOK));
+            quantizer = null;
+            dim = 0;
+            maxId = 0;
+            generation++;
+        }
+
+        void close() {
+            for (VectorSegment segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    log.warn("Could not close vector segment {}: {}", segment.path, e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Append the first {@code count} rows to the last segment of {@code target}, starting a new
+         * segment named with {@code suffix} whenever the last one is full or has a different
+         * dimension or encoding than the rows should be written in.
+         */
+        private void appendTo(List<VectorSegment> target, long[] ids, float[][] vectors, int count,
+                              String suffix) throws IOException {
+            VectorSegment.Encoding configured = VectorSegment.Encoding.valueOf(encoding.toUpperCase());
+            int from = 0;
+            while (from < count) {
+                int rowDim = vectors[from].length;
+                VectorSegment active = target.isEmpty() ? null : target.get(target.size() - 1);
+                if (active == null || active.rows() >= rowsPerSegment
+                        || active.dim != rowDim || active.encoding != configured) {
+                    Files.createDirectories(dir);
+                    active = VectorSegment.create(segmentPath(nextSequence.getAndIncrement(), suffix), rowDim, configured);
+                    target.add(active);
+                }
+                int to = Math.min(count, from + rowsPerSegment - active.rows());
+                active.append(ids, vectors, from, to);
+                from = to;
+            }
+        }
+
+        private Path segmentPath(int sequence, String suffix) {
+            return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, sequence, suffix));
+        }
+
+        private static boolean isSegment(Path file, String suffix) {
+            String name = file.getFileName().toString();
+            return name.startsWith(SEGMENT_PREFIX) && name.endsWith(suffix);
+        }
+
+        private static int sequenceOf(Path file) {
+            String name = file.getFileName().toString();
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.indexOf(SEGMENT_SUFFIX)));
+        }
+    }
+}
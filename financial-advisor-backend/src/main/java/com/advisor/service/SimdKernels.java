@@ -0,0 +1,44 @@
+package com.advisor.service;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementations behind {@link VectorMath}. Only loaded once {@link VectorMath} has
+ * checked that the incubator module is present, so the application still starts without it.
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private SimdKernels() {
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = SPECIES.length();
+        // Two accumulators so consecutive fused multiply-adds don't wait on each other
+        FloatVector first = FloatVector.zero(SPECIES);
+        FloatVector second = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = length - 2 * lanes; i <= bound; i += 2 * lanes) {
+            first = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), first);
+            second = FloatVector.fromArray(SPECIES, a, aOffset + i + lanes)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + lanes), second);
+        }
+        for (int bound = length - lanes; i <= bound; i += lanes) {
+            first = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), first);
+        }
+        float sum = first.add(second).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}
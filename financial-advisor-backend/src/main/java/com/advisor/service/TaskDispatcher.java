@@ -0,0 +1,220 @@
+package com.advisor.service;
+
+import com.advisor.config.AsyncConfig;
+import com.advisor.model.Task;
+import com.advisor.repository.TaskRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Runs due tasks from the {@code tasks} table. Each poll claims a batch with
+ * {@code FOR UPDATE SKIP LOCKED} and stamps it with this node's lease, so several application
+ * nodes can poll the same table without executing a task twice. Claimed tasks run on the I/O
+ * executor, at most {@code max-concurrent} per node; leases are renewed while they run, and a
+ * task whose node died becomes claimable again once its lease expires. Only tasks of users in
+ * the partitions this node owns (see {@link ClusterCoordinator}) are claimed, so a user's tasks
+ * and webhook events are handled by one node at a time.
+ *
+ * <p>Failed or timed-out attempts are rescheduled with exponential backoff until
+ * {@code max-attempts} is reached. Interrupting a timed-out attempt doesn't stop blocking HTTP
+ * I/O, so it keeps its slot until its thread returns, can no longer record a result, and its
+ * side effects go through the {@link ActionLedger} under the task's id, where the retry finds
+ * them instead of repeating them.</p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TaskDispatcher {
+
+    private static final String CLAIM_SQL = """
+            UPDATE tasks SET status = 'IN_PROGRESS', lease_owner = ?, lease_expires_at = ?,
+                             attempts = attempts + 1, updated_at = ?
+            WHERE id IN (SELECT id FROM tasks
+                         WHERE ((status = 'PENDING' AND scheduled_at <= ?)
+                             OR (status = 'IN_PROGRESS' AND lease_expires_at < ?))
+                           AND MOD(user_id, ?) IN (%s)
+                         ORDER BY scheduled_at
+                         LIMIT ?
+                         FOR UPDATE SKIP LOCKED)
+            RETURNING id
+            """;
+
+    private final TaskRepository taskRepository;
+    private final TaskService taskService;
+    private final ProactiveWorkflowService proactiveWorkflowService;
+    private final ClusterCoordinator clusterCoordinator;
+    private final OutboundQuotaManager quotaManager;
+    private final ActionLedger actionLedger;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Qualifier(AsyncConfig.IO_EXECUTOR)
+    private final AsyncTaskExecutor ioTaskExecutor;
+
+    @Value("${tasks.scheduler.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${tasks.scheduler.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${tasks.scheduler.lease-ms:60000}")
+    private long leaseMs;
+
+    @Value("${tasks.scheduler.timeout-ms:300000}")
+    private long timeoutMs;
+
+    @Value("${tasks.scheduler.backoff-base-ms:10000}")
+    private long backoffBaseMs;
+
+    @Value("${tasks.scheduler.backoff-max-ms:3600000}")
+    private long backoffMaxMs;
+
+    private final Map<Long, Attempt> running = new ConcurrentHashMap<>();
+    // Timed-out attempts whose threads haven't returned yet
+    private final Set<Attempt> expired = ConcurrentHashMap.newKeySet();
+
+    @Scheduled(fixedDelayString = "${tasks.scheduler.poll-interval-ms:2000}")
+    public void dispatch() {
+        LocalDateTime now = LocalDateTime.now();
+        expireTimedOut();
+        if (!running.isEmpty()) {
+            taskRepository.renewLeases(running.keySet(), nodeId(), now.plus(Duration.ofMillis(leaseMs)));
+        }
+
+        int free = maxConcurrent - running.size() - expired.size();
+        Set<Integer> partitions = clusterCoordinator.ownedPartitions();
+        if (free <= 0 || partitions.isEmpty()) {
+            return;
+        }
+
+        // Partition ids are integers we generated, safe to inline
+        String sql = CLAIM_SQL.formatted(partitions.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        Timestamp nowTs = Timestamp.valueOf(now);
+        List<Long> claimed = jdbcTemplate.queryForList(sql, Long.class,
+                nodeId(), Timestamp.valueOf(now.plus(Duration.ofMillis(leaseMs))), nowTs, nowTs, nowTs,
+                clusterCoordinator.partitions(), free);
+
+        for (Long taskId : claimed) {
+            // Registered before it starts so the worker's own cleanup can't run first
+            Attempt attempt = new Attempt(taskId, System.currentTimeMillis() + timeoutMs);
+            running.put(taskId, attempt);
+            ioTaskExecutor.execute(() -> {
+                try {
+                    attempt.work.run();
+                } finally {
+                    // Also reached when the attempt was cancelled before it started
+                    running.remove(taskId, attempt);
+                    expired.remove(attempt);
+                }
+            });
+        }
+    }
+
+    /**
+     * One execution of a claimed task. The worker removes only its own entries, so a cancelled
+     * attempt that winds down late can't drop a newer claim of the same task.
+     */
+    private final class Attempt implements Runnable {
+        private final Long taskId;
+        private final long deadline;
+        private final FutureTask<Void> work = new FutureTask<>(this, null);
+
+        Attempt(Long taskId, long deadline) {
+            this.taskId = taskId;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            execute(taskId);
+        }
+    }
+
+    private void execute(Long taskId) {
+        Task task = taskRepository.findById(taskId).orElse(null);
+        if (task == null) {
+            return;
+        }
+        if (task.getAttempts() > maxAttempts) {
+            // Claimed again after its node died mid-run on the last attempt
+            release(task, Task.TaskStatus.FAILED, "Gave up after " + maxAttempts + " attempts", task.getScheduledAt());
+            return;
+        }
+
+        try {
+            // Webhook events are keyed by the event inside process(); other tasks by the task, so a
+            // retry after a timeout finds what the earlier attempt already did
+            String result = quotaManager.callAs(task.getUser(), OutboundQuotaManager.Priority.BACKGROUND,
+                    () -> task.getType() == Task.TaskType.PROACTIVE_ACTION
+                            ? proactiveWorkflowService.process(task)
+                            : actionLedger.withTrigger("task:" + taskId, () -> taskService.processTask(task)));
+            release(task, Task.TaskStatus.COMPLETED, result, task.getScheduledAt());
+        } catch (Exception e) {
+            log.warn("Task {} attempt {} failed: {}", taskId, task.getAttempts(), e.getMessage());
+            retryOrFail(task, e.getMessage());
+        }
+    }
+
+    /**
+     * Interrupt attempts that ran past the timeout and hand them back to the queue. The slot stays
+     * taken until the attempt's thread actually returns.
+     */
+    private void expireTimedOut() {
+        long now = System.currentTimeMillis();
+        running.forEach((taskId, attempt) -> {
+            if (attempt.deadline <= now && running.remove(taskId, attempt)) {
+                // Added before checking, so a worker finishing in between still removes it
+                expired.add(attempt);
+                boolean finished = attempt.work.isDone();
+                attempt.work.cancel(true);
+                if (finished) {
+                    expired.remove(attempt);
+                }
+                taskRepository.findById(taskId).ifPresent(task ->
+                        retryOrFail(task, "Timed out after " + timeoutMs + " ms"));
+            }
+        });
+    }
+
+    private void retryOrFail(Task task, String error) {
+        int attempts = task.getAttempts();
+        if (attempts < maxAttempts) {
+            long delay = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 20));
+            delay += ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+            release(task, Task.TaskStatus.PENDING, "Attempt " + attempts + " failed: " + error,
+                    LocalDateTime.now().plus(Duration.ofMillis(delay)));
+        } else {
+            release(task, Task.TaskStatus.FAILED, "Task failed: " + error, task.getScheduledAt());
+        }
+    }
+
+    private String nodeId() {
+        return clusterCoordinator.nodeId();
+    }
+
+    private void release(Task task, Task.TaskStatus status, String result, LocalDateTime scheduledAt) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime completedAt = status == Task.TaskStatus.PENDING ? null : now;
+        if (taskRepository.release(task.getId(), nodeId(), task.getAttempts(), status, result, scheduledAt,
+                completedAt, now) == 0) {
+            log.warn("Task {} attempt {} lost its lease before its {} result could be recorded",
+                    task.getId(), task.getAttempts(), status);
+        }
+    }
+}
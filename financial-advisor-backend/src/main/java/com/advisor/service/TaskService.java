@@ -1,15 +1,21 @@
 package com.advisor.service;
 
+import com.advisor.model.Email;
 import com.advisor.model.Task;
 import com.advisor.model.User;
 import com.advisor.repository.TaskRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -18,7 +24,7 @@ import java.util.Optional;
 public class TaskService {
 
     private final TaskRepository taskRepository;
-
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public Task createTask(Task task) {
         task.setStatus(Task.TaskStatus.PENDING);
@@ -42,27 +48,17 @@ public class TaskService {
         return taskRepository.findActiveTasks(user);
     }
 
-    @Async
-    public void executeTask(Task task) {
-        try {
-            task.setStatus(Task.TaskStatus.IN_PROGRESS);
-            taskRepository.save(task);
-
-            String result = processTask(task);
-
-            task.setStatus(Task.TaskStatus.COMPLETED);
-            task.setResult(result);
-            task.setCompletedAt(LocalDateTime.now());
-            taskRepository.save(task);
-
-        } catch (Exception e) {
-            task.setStatus(Task.TaskStatus.FAILED);
-            task.setResult("Task failed: " + e.getMessage());
-            taskRepository.save(task);
-        }
+    /**
+     * Queue the task for immediate execution; {@link TaskDispatcher} picks it up on its next poll.
+     */
+    public Task executeTask(Task task) {
+        task.setStatus(Task.TaskStatus.PENDING);
+        task.setScheduledAt(LocalDateTime.now());
+        task.setUpdatedAt(LocalDateTime.now());
+        return taskRepository.save(task);
     }
 
-    private String processTask(Task task) {
+    String processTask(Task task) {
         switch (task.getType()) {
             case SCHEDULE_APPOINTMENT:
                 return "Scheduling workflow initiated for: " + task.getTitle();
@@ -77,13 +73,103 @@ public class TaskService {
         }
     }
 
-    public void continueTask(Task task, String responseContext) {
-        task.setStatus(Task.TaskStatus.IN_PROGRESS);
-        String currentContext = task.getContext();
-        String updatedContext = currentContext + "\nResponse: " + responseContext;
-        task.setContext(updatedContext);
-        taskRepository.save(task);
+    /**
+     * Park the task until the counterpart replies. Inbound mail finds it again through the
+     * (user, counterpart email, thread id) index instead of scanning active tasks.
+     */
+    public Task awaitReply(Task task, String counterpartEmail, String threadId) {
+        task.setCounterpartEmail(normalizeEmail(counterpartEmail));
+        task.setThreadId(threadId);
+        task.setStatus(Task.TaskStatus.WAITING_FOR_RESPONSE);
+        task.setUpdatedAt(LocalDateTime.now());
+        return taskRepository.save(task);
+    }
+
+    /**
+     * The waiting task an inbound message answers, moved to IN_PROGRESS so a redelivered
+     * notification can't resume it twice. A reply that started a new thread falls back to the
+     * counterpart's most recent waiting task.
+     */
+    public Optional<Task> claimWaitingTask(User user, String fromEmail, String threadId) {
+        String counterpart = normalizeEmail(fromEmail);
+        if (counterpart == null) {
+            return Optional.empty();
+        }
+
+        Optional<Task> task = threadId != null
+                ? taskRepository.findFirstByUserAndCounterpartEmailAndThreadIdAndStatusOrderByCreatedAtDesc(
+                        user, counterpart, threadId, Task.TaskStatus.WAITING_FOR_RESPONSE)
+                : Optional.empty();
+        if (task.isEmpty()) {
+            task = taskRepository.findFirstByUserAndCounterpartEmailAndStatusOrderByCreatedAtDesc(
+                    user, counterpart, Task.TaskStatus.WAITING_FOR_RESPONSE);
+        }
+
+        return task.filter(candidate -> taskRepository.transition(candidate.getId(),
+                        Task.TaskStatus.WAITING_FOR_RESPONSE, Task.TaskStatus.IN_PROGRESS, LocalDateTime.now()) == 1)
+                .map(claimed -> {
+                    claimed.setStatus(Task.TaskStatus.IN_PROGRESS);
+                    return claimed;
+                });
+    }
+
+    /**
+     * Append an inbound message to the task's {@code replies} context.
+     */
+    public Task recordReply(Task task, Email reply) {
+        Map<String, Object> context = readContext(task);
+        List<Object> replies = context.get("replies") instanceof List<?> existing
+                ? new ArrayList<>(existing)
+                : new ArrayList<>();
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("gmailId", reply.getGmailId());
+        entry.put("from", reply.getFromEmail());
+        entry.put("subject", reply.getSubject());
+        entry.put("body", reply.getBody());
+        entry.put("receivedAt", reply.getReceivedAt() != null ? reply.getReceivedAt().toString() : null);
+        replies.add(entry);
+
+        context.put("replies", replies);
+        writeContext(task, context);
+        task.setUpdatedAt(LocalDateTime.now());
+        return taskRepository.save(task);
+    }
+
+    public Task complete(Task task, String result) {
+        task.setStatus(Task.TaskStatus.COMPLETED);
+        task.setResult(result);
+        task.setCompletedAt(LocalDateTime.now());
+        task.setUpdatedAt(LocalDateTime.now());
+        return taskRepository.save(task);
+    }
+
+    /**
+     * The task context as a mutable map; a legacy plain-text context is kept under {@code notes}.
+     */
+    public Map<String, Object> readContext(Task task) {
+        String json = task.getContext();
+        if (json == null || json.isBlank()) {
+            return new LinkedHashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<LinkedHashMap<String, Object>>() {});
+        } catch (JsonProcessingException e) {
+            Map<String, Object> context = new LinkedHashMap<>();
+            context.put("notes", json);
+            return context;
+        }
+    }
+
+    public void writeContext(Task task, Map<String, Object> context) {
+        try {
+            task.setContext(objectMapper.writeValueAsString(context));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Task context is not serializable", e);
+        }
+    }
 
-        executeTask(task);
+    private static String normalizeEmail(String email) {
+        return email != null && !email.isBlank() ? email.trim().toLowerCase() : null;
     }
 }
@@ -1,14 +1,17 @@
 package com.advisor.service;
 
+import com.advisor.model.Email;
 import com.advisor.model.Task;
 import com.advisor.model.User;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.api.services.gmail.model.Message;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,6 +22,7 @@ public class ToolService {
     private final GmailService gmailService;
     private final CalendarService calendarService;
     private final HubSpotService hubSpotService;
+    private final ContactResolutionService contactResolutionService;
     private final TaskService taskService;
     private final VectorService vectorService;
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -34,7 +38,7 @@ public class ToolService {
     public String scheduleAppointment(User user, String contactName, String proposedTimes) {
         try {
             // Look up contact information first
-            List<Map<String, Object>> contacts = hubSpotService.searchContacts(user, contactName);
+            List<Map<String, Object>> contacts = contactResolutionService.search(user, contactName);
 
             if (contacts.isEmpty()) {
                 return String.format("Contact '%s' not found. Please create the contact first or provide their email address.", contactName);
@@ -49,12 +53,13 @@ public class ToolService {
                     "Proposed times: " + proposedTimes,
                     Task.TaskType.SCHEDULE_APPOINTMENT);
 
-            String context = String.format(
-                    "{\"contactName\": \"%s\", \"contactEmail\": \"%s\", \"proposedTimes\": \"%s\", \"step\": \"send_invitation\"}",
-                    contactName, contactEmail, proposedTimes
-            );
-            schedulingTask.setContext(context);
-            taskService.createTask(schedulingTask);
+            Map<String, Object> context = new LinkedHashMap<>();
+            context.put("contactName", contactName);
+            context.put("contactEmail", contactEmail);
+            context.put("proposedTimes", proposedTimes);
+            context.put("step", "send_invitation");
+            taskService.writeContext(schedulingTask, context);
+            schedulingTask = taskService.createTask(schedulingTask);
 
             // Send initial appointment request email
             String subject = "Meeting Request - Let's Schedule a Time";
@@ -68,7 +73,20 @@ public class ToolService {
                     contactName, proposedTimes
             );
 
-            String emailResult = sendEmail(user, contactEmail, subject, emailBody);
+            String emailResult;
+            try {
+                Message sent = gmailService.sendMessage(user, contactEmail, subject, emailBody);
+                emailResult = String.format("Email sent successfully to %s with subject '%s'. Message ID: %s",
+                        contactEmail, subject, sent.getId());
+
+                // The reply on this thread resumes the task (see resumeTask)
+                context.put("step", "awaiting_reply");
+                taskService.writeContext(schedulingTask, context);
+                taskService.awaitReply(schedulingTask, contactEmail, sent.getThreadId());
+            } catch (Exception e) {
+                emailResult = "Failed to send email: " + e.getMessage();
+                taskService.updateTask(schedulingTask.getId(), Task.TaskStatus.FAILED, emailResult);
+            }
 
             return String.format("Appointment request sent to %s (%s). %s", contactName, contactEmail, emailResult);
 
@@ -158,7 +176,7 @@ public class ToolService {
 
     public String searchContacts(User user, String query) {
         try {
-            List<Map<String, Object>> contacts = hubSpotService.searchContacts(user, query);
+            List<Map<String, Object>> contacts = contactResolutionService.search(user, query);
             if (contacts.isEmpty()) {
                 return String.format("No contacts found matching '%s'", query);
             }
@@ -204,7 +222,7 @@ public class ToolService {
                     user.getOngoingInstructions().contains("create a contact in Hubspot")) {
 
                 // Look for sender in contacts
-                List<Map<String, Object>> contacts = hubSpotService.searchContacts(user, fromEmail);
+                List<Map<String, Object>> contacts = contactResolutionService.search(user, fromEmail);
                 if (contacts.isEmpty()) {
                     // Extract name from email or use email as name
                     String name = extractNameFromEmail(fromEmail);
@@ -242,7 +260,7 @@ public class ToolService {
     private String handleSchedulingResponse(User user, String fromEmail, String subject, String body) {
         try {
             // Look up the contact
-            List<Map<String, Object>> contacts = hubSpotService.searchContacts(user, fromEmail);
+            List<Map<String, Object>> contacts = contactResolutionService.search(user, fromEmail);
             if (contacts.isEmpty()) {
                 return "Could not find contact for email: " + fromEmail;
             }
@@ -253,26 +271,7 @@ public class ToolService {
             String preferredTime = extractPreferredTime(body);
 
             if (preferredTime != null) {
-                // Create the calendar event
-                String eventTitle = "Meeting with " + contactName;
-                String startTime = preferredTime;
-                String endTime = calculateEndTime(preferredTime);
-
-                String eventResult = createCalendarEvent(user, eventTitle, startTime, endTime, fromEmail);
-
-                // Send confirmation email
-                String confirmationSubject = "Meeting Confirmed - " + eventTitle;
-                String confirmationBody = String.format(
-                        "Hi %s,\n\n" +
-                                "Perfect! I've scheduled our meeting for %s.\n\n" +
-                                "I've added it to my calendar and look forward to our conversation.\n\n" +
-                                "Best regards",
-                        contactName, preferredTime
-                );
-
-                sendEmail(user, fromEmail, confirmationSubject, confirmationBody);
-
-                return String.format("Meeting scheduled with %s for %s. Confirmation sent.", contactName, preferredTime);
+                return confirmMeeting(user, contactName, fromEmail, preferredTime);
             }
 
             return "Could not extract preferred time from response.";
@@ -282,6 +281,65 @@ public class ToolService {
         }
     }
 
+    /**
+     * Continue a task that was waiting for this reply. Appointment requests are confirmed directly;
+     * other task types get the reply recorded and are queued for the task dispatcher.
+     */
+    public String resumeTask(User user, Task task, Email reply) {
+        task = taskService.recordReply(task, reply);
+        if (task.getType() != Task.TaskType.SCHEDULE_APPOINTMENT) {
+            taskService.executeTask(task);
+            return "Reply recorded; task " + task.getId() + " queued";
+        }
+
+        try {
+            Map<String, Object> context = taskService.readContext(task);
+            String contactName = context.get("contactName") instanceof String name ? name : reply.getFromName();
+            String preferredTime = extractPreferredTime(reply.getBody() != null ? reply.getBody() : "");
+
+            if (preferredTime == null) {
+                // Not a time we can book; keep waiting for the next message on the thread
+                taskService.awaitReply(task, task.getCounterpartEmail(), reply.getThreadId());
+                return "Reply from " + reply.getFromEmail() + " did not name a time; still waiting.";
+            }
+
+            String result = confirmMeeting(user, contactName, reply.getFromEmail(), preferredTime);
+            context = taskService.readContext(task);
+            context.put("step", "confirmed");
+            context.put("scheduledFor", preferredTime);
+            taskService.writeContext(task, context);
+            taskService.complete(task, result);
+            return result;
+
+        } catch (Exception e) {
+            taskService.awaitReply(task, task.getCounterpartEmail(), task.getThreadId());
+            return createErrorResponse("Error resuming scheduling task: " + e.getMessage());
+        }
+    }
+
+    private String confirmMeeting(User user, String contactName, String contactEmail, String preferredTime) {
+        // Create the calendar event
+        String eventTitle = "Meeting with " + contactName;
+        String startTime = preferredTime;
+        String endTime = calculateEndTime(preferredTime);
+
+        createCalendarEvent(user, eventTitle, startTime, endTime, contactEmail);
+
+        // Send confirmation email
+        String confirmationSubject = "Meeting Confirmed - " + eventTitle;
+        String confirmationBody = String.format(
+                "Hi %s,\n\n" +
+                        "Perfect! I've scheduled our meeting for %s.\n\n" +
+                        "I've added it to my calendar and look forward to our conversation.\n\n" +
+                        "Best regards",
+                contactName, preferredTime
+        );
+
+        sendEmail(user, contactEmail, confirmationSubject, confirmationBody);
+
+        return String.format("Meeting scheduled with %s for %s. Confirmation sent.", contactName, preferredTime);
+    }
+
     private String handleMeetingInquiry(User user, String fromEmail, String subject, String body) {
         try {
             // Search for upcoming meetings with this contact
@@ -3,9 +3,11 @@ package com.advisor.service;
 import com.advisor.model.User;
 import com.advisor.repository.UserRepository;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,6 +17,8 @@ import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -28,8 +32,35 @@ public class UserService {
     @Value("${jwt.expiration:86400000}")
     private long jwtExpiration;
 
+    @Value("${jwt.cache.ttl-ms:60000}")
+    private long cacheTtlMs;
+
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    /**
+     * Verified tokens mapped to a snapshot of their user, so authenticated requests skip the
+     * signature check and the database. Entries live for the cache TTL but never past the token's
+     * own expiry, and are dropped whenever the user is saved through {@link #saveUser}.
+     */
+    private final Map<String, CachedPrincipal> principalCache = new ConcurrentHashMap<>();
+
+    private record CachedPrincipal(User user, long expiresAt) {
+    }
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        jwtParser = Jwts.parser()
+                .setSigningKey(signingKey)
+                .build();
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        return signingKey;
     }
 
     public String generateJwtToken(User user) {
@@ -45,26 +76,59 @@ public class UserService {
                 .compact();
     }
 
+    /**
+     * Resolve the user behind a token. Each call gets its own copy of the user, so callers may
+     * modify and save it without affecting other requests holding the same token.
+     */
     public User getUserFromJwtToken(String token) {
+        long now = System.currentTimeMillis();
+        CachedPrincipal cached = principalCache.get(token);
+        if (cached != null) {
+            if (cached.expiresAt() > now) {
+                return new User(cached.user());
+            }
+            principalCache.remove(token, cached);
+        }
+
         try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(getSigningKey())
-                    .build()
+            Claims claims = jwtParser
                     .parseClaimsJws(token)
                     .getBody();
 
             String email = claims.getSubject();
             Long userId = claims.get("userId", Long.class);
 
-            return userRepository.findById(userId)
+            User user = userRepository.findById(userId)
                     .orElseGet(() -> userRepository.findByEmail(email)
                             .orElseThrow(() -> new RuntimeException("User not found")));
 
+            long expiresAt = now + cacheTtlMs;
+            if (claims.getExpiration() != null) {
+                expiresAt = Math.min(expiresAt, claims.getExpiration().getTime());
+            }
+            if (principalCache.size() >= cacheMaxEntries) {
+                principalCache.values().removeIf(entry -> entry.expiresAt() <= now);
+                if (principalCache.size() >= cacheMaxEntries) {
+                    principalCache.clear();
+                }
+            }
+            principalCache.put(token, new CachedPrincipal(new User(user), expiresAt));
+            return user;
+
         } catch (Exception e) {
             throw new RuntimeException("Invalid JWT token", e);
         }
     }
 
+    /**
+     * Drop cached principals for a user whose row has changed.
+     */
+    public void evictCachedUser(Long userId) {
+        if (userId != null) {
+            principalCache.values().removeIf(entry -> userId.equals(entry.user().getId()));
+        }
+    }
+
     public User findOrCreateUser(String email, String name) {
         return userRepository.findByEmail(email)
                 .orElseGet(() -> {
@@ -96,7 +160,9 @@ public class UserService {
     }
 
     public User saveUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        evictCachedUser(saved.getId());
+        return saved;
     }
 }
 
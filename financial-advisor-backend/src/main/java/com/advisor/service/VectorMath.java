@@ -0,0 +1,83 @@
+package com.advisor.service;
+
+import java.util.List;
+
+/**
+ * Similarity kernels over primitive float arrays. Embeddings are normalized to unit length once,
+ * when they are stored or when a query is embedded, so cosine similarity is a single dot product.
+ *
+ * <p>The dot product runs on the Java Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and the CPU has SIMD registers of at least four
+ * floats; otherwise it falls back to a plain loop.</p>
+ */
+final class VectorMath {
+
+    static final boolean SIMD = simdAvailable();
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, float[] b, int length) {
+        return dot(a, 0, b, 0, length);
+    }
+
+    /**
+     * Dot product of {@code a[aOffset ..]} and {@code b[bOffset ..]} over {@code length} floats.
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return SIMD ? SimdKernels.dot(a, aOffset, b, bOffset, length) : scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Cosine similarity of a unit-length query and a vector that may not be normalized.
+     */
+    static float cosine(float[] unitQuery, float[] vector) {
+        if (unitQuery.length != vector.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimensions");
+        }
+        float norm = dot(vector, vector, vector.length);
+        return norm > 0f ? dot(unitQuery, vector, vector.length) / (float) Math.sqrt(norm) : 0f;
+    }
+
+    /**
+     * Scale the vector to unit length in place; a zero vector is left as is.
+     */
+    static float[] normalize(float[] vector) {
+        float norm = dot(vector, vector, vector.length);
+        if (norm > 0f) {
+            float inverse = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= inverse;
+            }
+        }
+        return vector;
+    }
+
+    static float[] normalize(List<Double> embedding) {
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i).floatValue();
+        }
+        return normalize(vector);
+    }
+
+    private static boolean simdAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            // Narrower species are slower than the scalar loop
+            return SimdKernels.lanes() >= 4;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
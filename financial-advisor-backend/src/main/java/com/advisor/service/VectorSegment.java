@@ -0,0 +1,538 @@
+package com.advisor.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One append-only file of fixed-size vector rows, read through a memory mapping so the vectors
+ * live in the OS page cache rather than on the heap. Rows hold unit-length vectors, so cosine
+ * similarity is a plain dot product.
+ *
+ * <p>Layout after a 32-byte header (magic, version, dimensions, encoding):</p>
+ * <ul>
+ *     <li>{@code FLOAT32}: {@code dim} floats, then the row id as a long. The stride is a multiple of
+ *     four bytes, so the whole file is one float grid.</li>
+ *     <li>{@code INT8}: {@code dim} signed bytes, a float scale, then the row id.</li>
+ * </ul>
+ * A row torn by a crash is cut off when the segment is reopened.
+ */
+final class VectorSegment implements Closeable {
+
+    static final int MAGIC = 0x56534547; // "VSEG"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    enum Encoding {
+        FLOAT32, INT8
+    }
+
+    // Changes once, when a compaction output is renamed into place
+    volatile Path path;
+    final int dim;
+    final Encoding encoding;
+    final int recordBytes;
+
+    private final FileChannel channel;
+    private volatile int rows;
+
+    /**
+     * A read-only mapping of the first {@code rows} rows; remapped when the segment has grown.
+     */
+    private record Mapping(ByteBuffer bytes, FloatBuffer floats, int rows) {
+    }
+
+    private Mapping mapping;
+
+    /**
+     * Compact codes of the first {@code rows} FLOAT32 rows for the quantized candidate pass. They
+     * are derived from the mapped floats on first use and extended as the segment grows.
+     */
+    private record Int8Codes(byte[] codes, float[] scales, int rows) {
+    }
+
+    private record PqCodes(ProductQuantizer quantizer, byte[] codes, int rows) {
+    }
+
+    private Int8Codes int8Codes;
+    private PqCodes pqCodes;
+
+    private VectorSegment(Path path, FileChannel channel, int dim, Encoding encoding, int rows) {
+        this.path = path;
+        this.channel = channel;
+        this.dim = dim;
+        this.encoding = encoding;
+        this.recordBytes = recordBytes(dim, encoding);
+        this.rows = rows;
+    }
+
+    static int recordBytes(int dim, Encoding encoding) {
+        return encoding == Encoding.FLOAT32 ? dim * Float.BYTES + Long.BYTES : dim + Float.BYTES + Long.BYTES;
+    }
+
+    static VectorSegment create(Path path, int dim, Encoding encoding) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(dim).putInt(encoding.ordinal()).rewind();
+        channel.write(header, 0);
+        return new VectorSegment(path, channel, dim, encoding, 0);
+    }
+
+    static VectorSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a vector segment: " + path);
+            }
+            int dim = header.getInt();
+            Encoding encoding = Encoding.values()[header.getInt()];
+
+            long size = channel.size() - HEADER_BYTES;
+            int rows = (int) (size / recordBytes(dim, encoding));
+            channel.truncate(HEADER_BYTES + (long) rows * recordBytes(dim, encoding));
+            return new VectorSegment(path, channel, dim, encoding, rows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * Append rows; vectors must already be unit length.
+     */
+    synchronized void append(long[] ids, float[][] vectors, int from, int to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((to - from) * recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] codes = encoding == Encoding.INT8 ? new byte[dim] : null;
+        for (int i = from; i < to; i++) {
+            float[] vector = vectors[i];
+            if (encoding == Encoding.FLOAT32) {
+                for (int d = 0; d < dim; d++) {
+                    buffer.putFloat(vector[d]);
+                }
+            } else {
+                float scale = quantize(vector, codes, 0, dim);
+                buffer.put(codes).putFloat(scale);
+            }
+            buffer.putLong(ids[i]);
+        }
+        buffer.flip();
+        channel.write(buffer, HEADER_BYTES + (long) rows * recordBytes);
+        rows += to - from;
+    }
+
+    /**
+     * Receives decoded rows; the vector array is reused between calls.
+     */
+    interface RowSink {
+        void accept(long id, float[] vector) throws IOException;
+    }
+
+    /**
+     * Decode rows {@code [from, to)} that are not tombstoned and hand them to {@code sink}, so a
+     * compaction can re-encode them into a segment of any encoding. INT8 rows come back as their
+     * dequantized approximation.
+     */
+    void forEachLive(Set<Long> tombstones, int from, int to, RowSink sink) throws IOException {
+        Mapping current = mapping();
+        int end = Math.min(to, current.rows());
+        float[] vector = new float[dim];
+        for (int row = from; row < end; row++) {
+            long id = id(current.bytes(), row);
+            if (tombstones.contains(id)) {
+                continue;
+            }
+            decode(current, row, vector);
+            sink.accept(id, vector);
+        }
+    }
+
+    long maxId() throws IOException {
+        Mapping current = mapping();
+        long max = 0;
+        for (int row = 0; row < current.rows(); row++) {
+            max = Math.max(max, id(current.bytes(), row));
+        }
+        return max;
+    }
+
+    /**
+     * Write the ids of all rows into {@code into} starting at {@code offset}; returns how many.
+     */
+    int collectIds(long[] into, int offset) throws IOException {
+        Mapping current = mapping();
+        int count = Math.min(current.rows(), into.length - offset);
+        for (int row = 0; row < count; row++) {
+            into[offset + row] = id(current.bytes(), row);
+        }
+        return count;
+    }
+
+    /**
+     * Score every live row against a unit-length query and offer it to {@code top}.
+     */
+    void scan(float[] query, Set<Long> tombstones, TopK top, float[] rowScratch, byte[] codeScratch) throws IOException {
+        Mapping current = mapping();
+        ByteBuffer view = current.bytes();
+        FloatBuffer grid = current.floats();
+        int count = current.rows();
+        int stride = recordBytes / Float.BYTES;
+        for (int row = 0; row < count; row++) {
+            float score;
+            if (encoding == Encoding.FLOAT32) {
+                grid.get(row * stride, rowScratch, 0, dim);
+                score = dot(query, rowScratch, dim);
+            } else {
+                int offset = HEADER_BYTES + row * recordBytes;
+                view.get(offset, codeScratch, 0, dim);
+                score = dot(query, codeScratch, 0, dim) * view.getFloat(offset + dim);
+            }
+            if (score > top.threshold()) {
+                long id = id(view, row);
+                if (tombstones.isEmpty() || !tombstones.contains(id)) {
+                    top.offer(id, score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Quantized first pass over a FLOAT32 segment: offer every live row's approximate score to
+     * {@code top}, keyed by {@code segment << 32 | row}. Uses product quantization codes when a
+     * quantizer is given, int8 codes otherwise.
+     */
+    void candidates(float[] query, ProductQuantizer quantizer, float[] table, Set<Long> tombstones,
+                    TopK top, int segment) throws IOException {
+        Mapping current = mapping();
+        long key = (long) segment << 32;
+        if (quantizer != null) {
+            PqCodes codes = pqCodes(current, quantizer);
+            int subspaces = quantizer.subspaces;
+            for (int row = 0; row < codes.rows(); row++) {
+                float score = ProductQuantizer.score(table, codes.codes(), row * subspaces, subspaces);
+                if (score > top.threshold() && live(current, row, tombstones)) {
+                    top.offer(key | row, score);
+                }
+            }
+        } else {
+            Int8Codes codes = int8Codes(current);
+            for (int row = 0; row < codes.rows(); row++) {
+                float score = dot(query, codes.codes(), row * dim, dim) * codes.scales()[row];
+                if (score > top.threshold() && live(current, row, tombstones)) {
+                    top.offer(key | row, score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Exact similarity of one FLOAT32 row to the query.
+     */
+    float rescore(int row, float[] query, float[] scratch) throws IOException {
+        vector(row, scratch);
+        return dot(query, scratch, dim);
+    }
+
+    /**
+     * Copy the stored vector of a row into {@code into}, dequantized for INT8 rows.
+     */
+    void vector(int row, float[] into) throws IOException {
+        decode(mapping(), row, into);
+    }
+
+    private void decode(Mapping current, int row, float[] into) {
+        if (encoding == Encoding.FLOAT32) {
+            current.floats().get(row * (recordBytes / Float.BYTES), into, 0, dim);
+        } else {
+            ByteBuffer view = current.bytes();
+            int offset = HEADER_BYTES + row * recordBytes;
+            float scale = view.getFloat(offset + dim);
+            for (int d = 0; d < dim; d++) {
+                into[d] = view.get(offset + d) * scale;
+            }
+        }
+    }
+
+    long idAt(int row) throws IOException {
+        return id(mapping().bytes(), row);
+    }
+
+    private boolean live(Mapping current, int row, Set<Long> tombstones) {
+        return tombstones.isEmpty() || !tombstones.contains(id(current.bytes(), row));
+    }
+
+    private synchronized Int8Codes int8Codes(Mapping current) {
+        Int8Codes existing = int8Codes;
+        int from = existing != null ? existing.rows() : 0;
+        if (from >= current.rows()) {
+            return existing;
+        }
+        int capacity = capacity(existing != null ? existing.scales().length : 0, current.rows());
+        byte[] codes = existing != null && existing.scales().length >= capacity
+                ? existing.codes() : Arrays.copyOf(existing != null ? existing.codes() : new byte[0], capacity * dim);
+        float[] scales = existing != null && existing.scales().length >= capacity
+                ? existing.scales() : Arrays.copyOf(existing != null ? existing.scales() : new float[0], capacity);
+
+        float[] scratch = new float[dim];
+        int stride = recordBytes / Float.BYTES;
+        for (int row = from; row < current.rows(); row++) {
+            current.floats().get(row * stride, scratch, 0, dim);
+            scales[row] = quantize(scratch, codes, row * dim, dim);
+        }
+        int8Codes = new Int8Codes(codes, scales, current.rows());
+        return int8Codes;
+    }
+
+    private synchronized PqCodes pqCodes(Mapping current, ProductQuantizer quantizer) {
+        PqCodes existing = pqCodes != null && pqCodes.quantizer() == quantizer ? pqCodes : null;
+        int from = existing != null ? existing.rows() : 0;
+        if (from >= current.rows()) {
+            return existing;
+        }
+        int subspaces = quantizer.subspaces;
+        int existingCapacity = existing != null ? existing.codes().length / subspaces : 0;
+        int capacity = capacity(existingCapacity, current.rows());
+        byte[] codes = existingCapacity >= capacity
+                ? existing.codes() : Arrays.copyOf(existing != null ? existing.codes() : new byte[0], capacity * subspaces);
+
+        float[] scratch = new float[dim];
+        int stride = recordBytes / Float.BYTES;
+        for (int row = from; row < current.rows(); row++) {
+            current.floats().get(row * stride, scratch, 0, dim);
+            quantizer.encode(scratch, codes, row * subspaces);
+        }
+        pqCodes = new PqCodes(quantizer, codes, current.rows());
+        return pqCodes;
+    }
+
+    /**
+     * Grow code arrays geometrically while the active segment fills up.
+     */
+    private static int capacity(int current, int needed) {
+        return current >= needed ? current : Math.max(needed, current * 2);
+    }
+
+    /**
+     * Exact top {@code limit} over all rows of the segments.
+     */
+    static TopK search(List<VectorSegment> segments, float[] query, Set<Long> tombstones, int limit) throws IOException {
+        TopK top = new TopK(limit);
+        float[] rowScratch = new float[query.length];
+        byte[] codeScratch = new byte[query.length];
+        for (VectorSegment segment : segments) {
+            segment.scan(query, tombstones, top, rowScratch, codeScratch);
+        }
+        return top;
+    }
+
+    /**
+     * Two-pass search: the best {@code candidates} rows by quantized score, re-ranked by their
+     * exact float similarity. INT8-encoded segments have no floats to re-rank and are scored in
+     * one pass.
+     */
+    static TopK rerankedSearch(List<VectorSegment> segments, float[] query, ProductQuantizer quantizer,
+                               Set<Long> tombstones, int limit, int candidates) throws IOException {
+        TopK top = new TopK(limit);
+        TopK shortlist = new TopK(Math.max(limit, candidates));
+        float[] table = quantizer != null ? quantizer.table(query) : null;
+        float[] rowScratch = new float[query.length];
+        byte[] codeScratch = new byte[query.length];
+
+        for (int i = 0; i < segments.size(); i++) {
+            VectorSegment segment = segments.get(i);
+            if (segment.encoding == Encoding.FLOAT32) {
+                segment.candidates(query, quantizer, table, tombstones, shortlist, i);
+            } else {
+                segment.scan(query, tombstones, top, rowScratch, codeScratch);
+            }
+        }
+
+        int count = shortlist.size();
+        long[] keys = new long[count];
+        float[] approximate = new float[count];
+        shortlist.drain(keys, approximate);
+        for (long key : keys) {
+            VectorSegment segment = segments.get((int) (key >>> 32));
+            int row = (int) key;
+            float score = segment.rescore(row, query, rowScratch);
+            if (score > top.threshold()) {
+                top.offer(segment.idAt(row), score);
+            }
+        }
+        return top;
+    }
+
+    private long id(ByteBuffer view, int row) {
+        return view.getLong(HEADER_BYTES + row * recordBytes + recordBytes - Long.BYTES);
+    }
+
+    private synchronized Mapping mapping() throws IOException {
+        int current = rows;
+        if (mapping == null || mapping.rows() != current) {
+            long length = HEADER_BYTES + (long) current * recordBytes;
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+            FloatBuffer floats = encoding == Encoding.FLOAT32
+                    ? bytes.slice(HEADER_BYTES, (int) length - HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                    : null;
+            mapping = new Mapping(bytes, floats, current);
+        }
+        return mapping;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Flush the appended rows to disk.
+     */
+    void force() throws IOException {
+        channel.force(true);
+    }
+
+    /**
+     * Rename the file; the open channel and mappings keep working on the renamed file.
+     */
+    void moveTo(Path target) throws IOException {
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        path = target;
+    }
+
+    void delete() throws IOException {
+        close();
+        // Open mappings stay valid until collected; the file is gone from the directory right away
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Scale the vector into signed bytes at {@code codes[offset ..]}; returns the factor that maps
+     * a code back to a float.
+     */
+    static float quantize(float[] vector, byte[] codes, int offset, int dim) {
+        float max = 0f;
+        for (int d = 0; d < dim; d++) {
+            max = Math.max(max, Math.abs(vector[d]));
+        }
+        float scale = max > 0f ? max / 127f : 1f;
+        for (int d = 0; d < dim; d++) {
+            codes[offset + d] = (byte) Math.max(-127, Math.min(127, Math.round(vector[d] / scale)));
+        }
+        return scale;
+    }
+
+    static float dot(float[] a, float[] b, int dim) {
+        return VectorMath.dot(a, b, dim);
+    }
+
+    static float dot(float[] a, byte[] codes, int offset, int dim) {
+        float sum = 0f;
+        for (int d = 0; d < dim; d++) {
+            sum += a[d] * codes[offset + d];
+        }
+        return sum;
+    }
+
+    /**
+     * Bounded min-heap of the best scores seen, on primitive arrays.
+     */
+    static final class TopK {
+        private final long[] ids;
+        private final float[] scores;
+        private int size;
+
+        TopK(int k) {
+            ids = new long[k];
+            scores = new float[k];
+        }
+
+        float threshold() {
+            return size < scores.length ? Float.NEGATIVE_INFINITY : scores[0];
+        }
+
+        void offer(long id, float score) {
+            if (size < scores.length) {
+                ids[size] = id;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Drain into arrays ordered best first.
+         */
+        void drain(long[] outIds, float[] outScores) {
+            for (int i = size - 1; i >= 0; i--) {
+                outIds[i] = ids[0];
+                outScores[i] = scores[0];
+                size--;
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (scores[parent] <= scores[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int smallest = i;
+                if (left < size && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (left + 1 < size && scores[left + 1] < scores[smallest]) {
+                    smallest = left + 1;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
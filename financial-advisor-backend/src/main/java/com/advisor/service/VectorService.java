@@ -7,16 +7,26 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class VectorService {
@@ -25,30 +35,135 @@ public class VectorService {
     private final EmbeddingService embeddingService;
     private final JdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper;
+    private final SegmentVectorStore segmentStore;
+
+    @Value("${vector.segments.reconcile-interval-ms:60000}")
+    private long reconcileIntervalMs;
+
+    private final Map<Long, Object> segmentSyncLocks = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastReconciled = new ConcurrentHashMap<>();
+
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int SEGMENT_SYNC_BATCH_SIZE = 1000;
+    private static final String UPSERT_SQL = """
+            INSERT INTO vector_store (content, metadata, embedding, created_at, user_id, content_hash)
+            VALUES (?, ?::jsonb, ?, ?, ?, ?)
+            ON CONFLICT (user_id, content_hash) DO NOTHING
+            """;
 
     /**
      * Add a document with its embedding to the vector store.
      */
     public void addDocument(String content, Map<String, Object> metadata, User user) {
-        try {
-            // Generate embedding for the content
-            List<Double> embedding = embeddingService.generateEmbedding(content);
+        List<Document> failed = addDocuments(List.of(new Document(content, metadata)), user);
+        if (!failed.isEmpty()) {
+            throw new RuntimeException("Failed to add document to vector store");
+        }
+    }
 
-            String embeddingJson = objectMapper.writeValueAsString(embedding);
+    /**
+     * Embed and store documents in JDBC batches. Content already stored for the user (same hash) is
+     * skipped before embedding, and the insert itself is an ON CONFLICT upsert so concurrent runs
+     * can't duplicate rows.
+     *
+     * @return the documents that could not be embedded; everything else is stored
+     */
+    public List<Document> addDocuments(List<Document> documents, User user) {
+        EmbeddedBatch batch = embedDocuments(documents, user);
+        persist(batch);
+        return batch.failed();
+    }
 
-            String metadataJson = objectMapper.writeValueAsString(metadata);
+    /**
+     * Rows ready to insert, plus the documents whose embedding failed.
+     */
+    public record EmbeddedBatch(List<Object[]> rows, List<Document> failed) {
+    }
 
-            VectorStore vectorStore = new VectorStore();
-            vectorStore.setContent(content);
-            vectorStore.setMetadata(metadataJson);
-            vectorStore.setEmbedding(embeddingJson);
-            vectorStore.setUser(user);
+    /**
+     * Embedding half of {@link #addDocuments}: drops content the user already has, then embeds the
+     * rest with batched embedding requests.
+     */
+    public EmbeddedBatch embedDocuments(List<Document> documents, User user) {
+        if (documents.isEmpty()) {
+            return new EmbeddedBatch(List.of(), List.of());
+        }
 
-            vectorStoreRepository.save(vectorStore);
+        Map<String, Document> byHash = new LinkedHashMap<>();
+        for (Document document : documents) {
+            byHash.putIfAbsent(contentHash(document.getFormattedContent()), document);
+        }
+        existingHashes(user, byHash.keySet()).forEach(byHash::remove);
+        if (byHash.isEmpty()) {
+            return new EmbeddedBatch(List.of(), List.of());
+        }
 
+        List<Map.Entry<String, Document>> pending = new ArrayList<>(byHash.entrySet());
+        List<List<Double>> embeddings;
+        try {
+            embeddings = embeddingService.generateEmbeddings(pending.stream()
+                    .map(entry -> entry.getValue().getFormattedContent())
+                    .toList());
         } catch (Exception e) {
-            System.err.println("Error adding document to vector store: " + e.getMessage());
-            throw new RuntimeException("Failed to add document to vector store", e);
+            System.err.println("Error embedding documents for vector store: " + e.getMessage());
+            return new EmbeddedBatch(List.of(), pending.stream().map(Map.Entry::getValue).toList());
+        }
+
+        List<Document> failed = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < pending.size(); i++) {
+            Document document = pending.get(i).getValue();
+            try {
+                rows.add(new Object[]{
+                        document.getFormattedContent(),
+                        objectMapper.writeValueAsString(document.getMetadata()),
+                        objectMapper.writeValueAsString(embeddings.get(i)),
+                        now,
+                        user.getId(),
+                        pending.get(i).getKey()
+                });
+            } catch (Exception e) {
+                System.err.println("Error embedding document for vector store: " + e.getMessage());
+                failed.add(document);
+            }
+        }
+        return new EmbeddedBatch(rows, failed);
+    }
+
+    /**
+     * Persistence half of {@link #addDocuments}.
+     */
+    public void persist(EmbeddedBatch batch) {
+        List<Object[]> rows = batch.rows();
+        for (int start = 0; start < rows.size(); start += INSERT_BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows.subList(start, Math.min(start + INSERT_BATCH_SIZE, rows.size())));
+        }
+        if (segmentStore.isEnabled()) {
+            // Append to the segments now so the next search doesn't pay for it
+            rows.stream().map(row -> (Long) row[4]).distinct().forEach(this::syncSegments);
+        }
+    }
+
+    private List<String> existingHashes(User user, Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(
+                "SELECT content_hash FROM vector_store WHERE user_id = ? AND content_hash = ANY (?)",
+                ps -> {
+                    ps.setLong(1, user.getId());
+                    ps.setArray(2, ps.getConnection().createArrayOf("text", hashes.toArray()));
+                },
+                (rs, rowNum) -> rs.getString(1));
+    }
+
+    static String contentHash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
@@ -59,7 +174,7 @@ public class VectorService {
     public List<String> searchSimilar(String query, int limit) {
         try {
             // Generate embedding for the query
-            List<Double> queryEmbedding = embeddingService.generateEmbedding(query);
+            float[] unitQuery = VectorMath.normalize(embeddingService.generateEmbedding(query));
 
             // Fetch all documents (or implement pagination for large datasets)
             List<VectorStore> allDocuments = vectorStoreRepository.findAll();
@@ -72,8 +187,8 @@ public class VectorService {
             List<DocumentSimilarity> similarities = allDocuments.stream()
                     .map(doc -> {
                         try {
-                            List<Double> docEmbedding = parseEmbedding(doc.getEmbedding());
-                            double similarity = cosineSimilarity(queryEmbedding, docEmbedding);
+                            float[] docEmbedding = parseEmbedding(doc.getEmbedding());
+                            double similarity = VectorMath.cosine(unitQuery, docEmbedding);
                             return new DocumentSimilarity(doc.getContent(), similarity);
                         } catch (Exception e) {
                             System.err.println("Error parsing embedding for document: " + e.getMessage());
@@ -131,9 +246,24 @@ public class VectorService {
      * Search for documents by user.
      */
     public List<String> searchSimilarByUser(User user, String query, int limit) {
+        return searchHitsByUser(user, query, limit).stream()
+                .map(ScoredDocument::getContent)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Search a user's documents and keep id, metadata and score, so callers can group and expand hits.
+     */
+    public List<ScoredDocument> searchHitsByUser(User user, String query, int limit) {
         try {
             List<Double> queryEmbedding = embeddingService.generateEmbedding(query);
 
+            if (segmentStore.isEnabled()) {
+                return searchSegments(user, queryEmbedding, limit);
+            }
+
+            float[] unitQuery = VectorMath.normalize(queryEmbedding);
+
             // Fetch user's documents only
             List<VectorStore> userDocuments = vectorStoreRepository.findByUser(user);
 
@@ -142,24 +272,20 @@ public class VectorService {
             }
 
             // Calculate similarity scores
-            List<DocumentSimilarity> similarities = userDocuments.stream()
+            return userDocuments.stream()
                     .map(doc -> {
                         try {
-                            List<Double> docEmbedding = parseEmbedding(doc.getEmbedding());
-                            double similarity = cosineSimilarity(queryEmbedding, docEmbedding);
-                            return new DocumentSimilarity(doc.getContent(), similarity);
+                            float[] docEmbedding = parseEmbedding(doc.getEmbedding());
+                            double similarity = VectorMath.cosine(unitQuery, docEmbedding);
+                            return new ScoredDocument(doc.getId(), doc.getContent(), parseMetadata(doc.getMetadata()), similarity);
                         } catch (Exception e) {
                             System.err.println("Error parsing embedding: " + e.getMessage());
                             return null;
                         }
                     })
                     .filter(Objects::nonNull)
-                    .sorted(Comparator.comparingDouble(DocumentSimilarity::getSimilarity).reversed())
+                    .sorted(Comparator.comparingDouble(ScoredDocument::getSimilarity).reversed())
                     .limit(limit)
-                    .toList();
-
-            return similarities.stream()
-                    .map(DocumentSimilarity::getContent)
                     .collect(Collectors.toList());
 
         } catch (Exception e) {
@@ -169,36 +295,133 @@ public class VectorService {
     }
 
     /**
-     * Parse embedding from JSON string.
+     * Search the user's memory-mapped segments, then load only the winning rows from Postgres.
+     * Hits whose row is gone are tombstoned so they stop coming back.
      */
-    private List<Double> parseEmbedding(String embeddingJson) throws JsonProcessingException {
-        return objectMapper.readValue(embeddingJson,
-                objectMapper.getTypeFactory().constructCollectionType(List.class, Double.class));
+    private List<ScoredDocument> searchSegments(User user, List<Double> queryEmbedding, int limit) {
+        syncSegments(user.getId());
+        List<SegmentVectorStore.Hit> hits = segmentStore.search(user.getId(), VectorMath.normalize(queryEmbedding), limit);
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, VectorStore> rows = vectorStoreRepository.findAllById(
+                        hits.stream().map(SegmentVectorStore.Hit::id).toList()).stream()
+                .collect(Collectors.toMap(VectorStore::getId, row -> row));
+
+        List<ScoredDocument> documents = new ArrayList<>(hits.size());
+        List<Long> missing = new ArrayList<>();
+        for (SegmentVectorStore.Hit hit : hits) {
+            VectorStore row = rows.get(hit.id());
+            if (row == null) {
+                missing.add(hit.id());
+            } else {
+                documents.add(new ScoredDocument(row.getId(), row.getContent(), parseMetadata(row.getMetadata()), hit.score()));
+            }
+        }
+        segmentStore.delete(user.getId(), missing);
+        return documents;
     }
 
     /**
-     * Calculate cosine similarity between two vectors.
+     * Append rows stored since the user's segment watermark. Every {@code reconcile-interval-ms}
+     * the segments are also checked against {@code vector_store} as a whole, which catches rows
+     * committed out of id order and rows deleted directly in the database.
      */
-    private double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
-        if (vector1.size() != vector2.size()) {
-            throw new IllegalArgumentException("Vectors must have the same dimensions");
+    void syncSegments(Long userId) {
+        synchronized (segmentSyncLocks.computeIfAbsent(userId, id -> new Object())) {
+            while (true) {
+                List<Object[]> batch = jdbcTemplate.query(
+                        "SELECT id, embedding FROM vector_store WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2)},
+                        userId, segmentStore.watermark(userId), SEGMENT_SYNC_BATCH_SIZE);
+                appendToSegments(userId, batch);
+                if (batch.size() < SEGMENT_SYNC_BATCH_SIZE) {
+                    break;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastReconciled.getOrDefault(userId, 0L) >= reconcileIntervalMs) {
+                lastReconciled.put(userId, now);
+                reconcileSegments(userId);
+            }
         }
+    }
 
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
+    private void reconcileSegments(Long userId) {
+        if (vectorStoreRepository.countByUserId(userId) == segmentStore.liveCount(userId)) {
+            return;
+        }
 
-        for (int i = 0; i < vector1.size(); i++) {
-            dotProduct += vector1.get(i) * vector2.get(i);
-            norm1 += vector1.get(i) * vector1.get(i);
-            norm2 += vector2.get(i) * vector2.get(i);
+        long[] live = segmentStore.liveIds(userId);
+        List<Long> stored = jdbcTemplate.queryForList("SELECT id FROM vector_store WHERE user_id = ?", Long.class, userId);
+        Set<Long> storedIds = new HashSet<>(stored);
+
+        List<Long> missing = stored.stream().filter(id -> Arrays.binarySearch(live, id) < 0).toList();
+        for (int start = 0; start < missing.size(); start += SEGMENT_SYNC_BATCH_SIZE) {
+            List<Long> ids = missing.subList(start, Math.min(start + SEGMENT_SYNC_BATCH_SIZE, missing.size()));
+            appendToSegments(userId, jdbcTemplate.query(
+                    "SELECT id, embedding FROM vector_store WHERE id = ANY (?)",
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())),
+                    (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2)}));
         }
 
-        if (norm1 == 0.0 || norm2 == 0.0) {
-            return 0.0;
+        List<Long> gone = Arrays.stream(live).filter(id -> !storedIds.contains(id)).boxed().toList();
+        segmentStore.delete(userId, gone);
+        if (!missing.isEmpty() || !gone.isEmpty()) {
+            log.info("Reconciled vector segments for user {}: {} added, {} removed", userId, missing.size(), gone.size());
+        }
+    }
+
+    private void appendToSegments(Long userId, List<Object[]> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        List<float[]> vectors = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            try {
+                float[] vector = objectMapper.readValue((String) row[1], float[].class);
+                ids.add((Long) row[0]);
+                vectors.add(VectorMath.normalize(vector));
+            } catch (Exception e) {
+                log.warn("Skipping unreadable embedding {}: {}", row[0], e.getMessage());
+            }
+        }
+        if (!ids.isEmpty()) {
+            segmentStore.append(userId, ids.stream().mapToLong(Long::longValue).toArray(), vectors.toArray(new float[0][]));
+        }
+    }
+
+    /**
+     * Chunks of one email in the given chunk index range, in order.
+     */
+    public List<String> findEmailChunks(User user, String gmailId, int fromChunk, int toChunk) {
+        String sql = """
+                SELECT content FROM vector_store
+                WHERE user_id = ? AND metadata->>'gmailId' = ?
+                  AND (metadata->>'chunkIndex')::int BETWEEN ? AND ?
+                ORDER BY (metadata->>'chunkIndex')::int
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getString("content"),
+                user.getId(), gmailId, fromChunk, toChunk);
+    }
+
+    private Map<String, Object> parseMetadata(String metadataJson) {
+        if (metadataJson == null || metadataJson.isBlank()) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(metadataJson,
+                    objectMapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class));
+        } catch (JsonProcessingException e) {
+            return Map.of();
         }
+    }
 
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+    /**
+     * Parse embedding from JSON string.
+     */
+    private float[] parseEmbedding(String embeddingJson) throws JsonProcessingException {
+        return objectMapper.readValue(embeddingJson, float[].class);
     }
 
     /**
@@ -214,7 +437,18 @@ public class VectorService {
      * Get document count for a user.
      */
     public long getDocumentCount(User user) {
-        return vectorStoreRepository.findByUser(user).size();
+        return vectorStoreRepository.countByUser(user);
+    }
+
+    /**
+     * Stored chunk counts per metadata type (email, contact, calendar_event, ...).
+     */
+    public Map<String, Long> getDocumentCountsByType(User user) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Object[] row : vectorStoreRepository.countByTypeForUser(user.getId())) {
+            counts.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
     }
 
     /**
@@ -223,9 +457,27 @@ public class VectorService {
     public void deleteAllDocuments(User user) {
         List<VectorStore> userDocuments = vectorStoreRepository.findByUser(user);
         vectorStoreRepository.deleteAll(userDocuments);
+        if (segmentStore.isEnabled()) {
+            segmentStore.drop(user.getId());
+        }
     }
 
 
+    @Getter
+    public static class ScoredDocument {
+        private final Long id;
+        private final String content;
+        private final Map<String, Object> metadata;
+        private final double similarity;
+
+        public ScoredDocument(Long id, String content, Map<String, Object> metadata, double similarity) {
+            this.id = id;
+            this.content = content;
+            this.metadata = metadata;
+            this.similarity = similarity;
+        }
+    }
+
     @Getter
     private static class DocumentSimilarity {
         private final String content;
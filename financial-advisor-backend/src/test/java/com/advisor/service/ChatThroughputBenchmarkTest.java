@@ -0,0 +1,244 @@
+package com.advisor.service;
+
+import com.advisor.config.OpenAIConfig;
+import com.sun.net.httpserver.HttpServer;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Load test of the blocking chat request path with Tomcat request threads on a 200-thread
+ * platform pool (the default) and on virtual threads (what {@code VIRTUAL_THREADS_ENABLED=true}
+ * switches Spring Boot to). Each {@code POST /api/chat/message} makes one blocking chat
+ * completion through {@link OpenAIGateway} and the OpenAI client from {@link OpenAIConfig},
+ * pointed at a local stub that answers after {@code OPENAI_LATENCY_MS}.
+ *
+ * <p>The gateway, OkHttp and quota limits are raised so that request-thread handling is what's
+ * measured; in production the OpenAI limits cap throughput long before the thread pool does.
+ * Tagged {@code benchmark}; the virtual-thread rows need a Java 21+ runtime, e.g.
+ * {@code JAVA_HOME=<jdk21> mvn -Pbenchmark test -Dtest=ChatThroughputBenchmarkTest}.</p>
+ */
+class ChatThroughputBenchmarkTest {
+
+    private static final int OPENAI_LATENCY_MS = 300;
+    private static final int REQUESTS_PER_CLIENT = 5;
+    private static final int[] CONCURRENCY = {50, 200, 800};
+
+    private static final String COMPLETION = """
+            {"id":"chatcmpl-1","object":"chat.completion","created":0,"model":"gpt-4o-mini",
+             "choices":[{"index":0,"message":{"role":"assistant","content":"Done."},"finish_reason":"stop"}],
+             "usage":{"prompt_tokens":1,"completion_tokens":1,"total_tokens":2}}
+            """;
+
+    @Test
+    @Tag("benchmark")
+    void reportsChatThroughputOnPlatformAndVirtualThreads() throws Exception {
+        ScheduledExecutorService delays = Executors.newScheduledThreadPool(4);
+        HttpServer openAi = stubOpenAi(delays);
+        try {
+            OpenAIGateway gateway = gateway(openAi.getAddress().getPort());
+            System.out.printf("POST /api/chat/message, stubbed OpenAI latency %d ms, %d requests per client%n",
+                    OPENAI_LATENCY_MS, REQUESTS_PER_CLIENT);
+            System.out.printf("%-10s %8s %10s %10s %10s %10s%n", "threads", "clients", "req/s", "p50 ms", "p95 ms", "p99 ms");
+
+            run("platform", false, gateway);
+            if (Runtime.version().feature() >= 21) {
+                run("virtual", true, gateway);
+            } else {
+                System.out.printf("virtual    skipped: running on Java %d%n", Runtime.version().feature());
+            }
+        } finally {
+            openAi.stop(0);
+            delays.shutdownNow();
+        }
+    }
+
+    private static void run(String mode, boolean virtual, OpenAIGateway gateway) throws Exception {
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        factory.addProtocolHandlerCustomizers(protocol -> {
+            // The load client reuses connections; Tomcat would close each after 100 requests
+            ((AbstractHttp11Protocol<?>) protocol).setMaxKeepAliveRequests(-1);
+            if (virtual) {
+                // What Spring Boot installs when spring.threads.virtual.enabled is set
+                protocol.setExecutor(new VirtualThreadExecutor("tomcat-handler-"));
+            } else {
+                ((AbstractHttp11Protocol<?>) protocol).setMaxThreads(200);
+            }
+        });
+        WebServer server = factory.getWebServer(context -> context.addServlet("chat", new ChatServlet(gateway))
+                .addMapping("/api/chat/message"));
+        server.start();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(16))
+                .build();
+        try {
+            URI uri = URI.create("http://localhost:" + server.getPort() + "/api/chat/message");
+            load(client, uri, 50);
+            for (int clients : CONCURRENCY) {
+                long[] nanos = load(client, uri, clients);
+                long wall = nanos[nanos.length - 1];
+                long[] latencies = Arrays.copyOf(nanos, nanos.length - 1);
+                Arrays.sort(latencies);
+                System.out.printf("%-10s %8d %10.0f %10.0f %10.0f %10.0f%n", mode, clients,
+                        latencies.length / (wall / 1e9), percentile(latencies, 50), percentile(latencies, 95),
+                        percentile(latencies, 99));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Every client sends its requests one after another; returns the latencies followed by the
+     * wall time of the whole run.
+     */
+    private static long[] load(HttpClient client, URI uri, int clients) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"message\":\"How is my portfolio doing?\"}"))
+                .build();
+        long[] nanos = new long[clients * REQUESTS_PER_CLIENT + 1];
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            running.add(send(client, request, nanos, next, REQUESTS_PER_CLIENT));
+        }
+        CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+        nanos[nanos.length - 1] = System.nanoTime() - start;
+        return nanos;
+    }
+
+    private static CompletableFuture<Void> send(HttpClient client, HttpRequest request, long[] nanos,
+                                                AtomicInteger next, int remaining) {
+        if (remaining == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+            assertEquals(200, response.statusCode(), response.body());
+            nanos[next.getAndIncrement()] = System.nanoTime() - start;
+            return send(client, request, nanos, next, remaining - 1);
+        });
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)] / 1e6;
+    }
+
+    /**
+     * Answers every chat completion after the configured latency without holding a thread.
+     */
+    private static HttpServer stubOpenAi(ScheduledExecutorService delays) throws IOException {
+        // Headers and body go out as separate writes; without this, delayed ACKs add 40 ms to each call
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            delays.schedule(() -> {
+                byte[] body = COMPLETION.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+                return null;
+            }, OPENAI_LATENCY_MS, TimeUnit.MILLISECONDS);
+        });
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.start();
+        return server;
+    }
+
+    private static OpenAIGateway gateway(int port) {
+        OpenAIConfig config = new OpenAIConfig();
+        ReflectionTestUtils.setField(config, "openAiApiKey", "test");
+        ReflectionTestUtils.setField(config, "connectTimeoutMs", 10_000L);
+        ReflectionTestUtils.setField(config, "readTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(config, "callTimeoutMs", 90_000L);
+        ReflectionTestUtils.setField(config, "maxIdleConnections", 1000);
+        ReflectionTestUtils.setField(config, "keepAliveMs", 300_000L);
+        ReflectionTestUtils.setField(config, "maxRequests", 2000);
+        OkHttpClient http = config.openAiHttpClient().newBuilder()
+                .addInterceptor(chain -> {
+                    HttpUrl local = chain.request().url().newBuilder().scheme("http").host("localhost").port(port).build();
+                    return chain.proceed(chain.request().newBuilder().url(local).build());
+                })
+                .build();
+        OpenAiApi api = config.openAiApi(http);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("outbound.quota.openai.project-per-second", "100000")
+                .withProperty("outbound.quota.openai.user-per-second", "100000");
+        OutboundQuotaManager quota = new OutboundQuotaManager(environment, registry);
+        ReflectionTestUtils.setField(quota, "interactiveWeight", 4);
+        ReflectionTestUtils.setField(quota, "backgroundWeight", 1);
+        ReflectionTestUtils.setField(quota, "maxWaitMs", 30_000L);
+        quota.init();
+
+        OpenAIGateway gateway = new OpenAIGateway(api, registry, quota);
+        ReflectionTestUtils.setField(gateway, "maxConcurrentRequests", 2000);
+        ReflectionTestUtils.setField(gateway, "acquireTimeoutMs", 30_000L);
+        ReflectionTestUtils.setField(gateway, "failureThreshold", 5);
+        ReflectionTestUtils.setField(gateway, "circuitOpenMs", 30_000L);
+        gateway.init();
+        return gateway;
+    }
+
+    /**
+     * Stand-in for the chat endpoint: one blocking completion on the request thread.
+     */
+    private static final class ChatServlet extends HttpServlet {
+        private final transient OpenAIGateway gateway;
+
+        ChatServlet(OpenAIGateway gateway) {
+            this.gateway = gateway;
+        }
+
+        @Override
+        protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            String message = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            String answer = gateway.createChatCompletion(ChatCompletionRequest.builder()
+                            .model("gpt-4o-mini")
+                            .messages(List.of(new ChatMessage(ChatMessageRole.USER.value(), message)))
+                            .build())
+                    .getChoices().get(0).getMessage().getContent();
+            response.setContentType("application/json");
+            response.getWriter().write("{\"response\":\"" + answer + "\",\"status\":\"success\"}");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.advisor.service;
+
+import com.advisor.model.Contact;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ranking and recall of {@link ContactIndex} on a synthetic 50k-contact CRM. The latency report
+ * (p50/p95/p99) is tagged {@code benchmark} and only runs with {@code -Pbenchmark}, since timings
+ * on shared CI machines are too noisy to assert on.
+ */
+class ContactIndexBenchmarkTest {
+
+    private static final int CONTACTS = 50_000;
+    private static final int QUERIES = 2_000;
+
+    private static final String[] FIRST_NAMES = {
+            "john", "jane", "greg", "sarah", "michael", "lisa", "david", "emily", "robert", "olivia",
+            "william", "sophia", "james", "isabella", "daniel", "mia", "matthew", "charlotte", "joseph", "amelia",
+            "andrew", "harper", "joshua", "evelyn", "christopher", "abigail", "anthony", "ella", "ryan", "grace"};
+    private static final String[] LAST_NAMES = {
+            "doe", "smith", "thompson", "williams", "johnson", "chen", "brown", "jones", "garcia", "miller",
+            "davis", "rodriguez", "martinez", "hernandez", "lopez", "gonzalez", "wilson", "anderson", "thomas", "taylor",
+            "moore", "jackson", "martin", "lee", "perez", "white", "harris", "sanchez", "clark", "ramirez"};
+    // Combined with the last names above into ~630 distinct surnames
+    private static final String[] SURNAME_STEMS = {
+            "ander", "bal", "car", "dal", "ell", "fitz", "gar", "hal", "ken", "lind",
+            "mac", "nor", "or", "pal", "quin", "ros", "sal", "tor", "van", "wal",
+            "ash", "brad", "crom", "dun", "ever", "fair", "gold", "hart", "iver", "jen"};
+    private static final String[] SURNAME_ENDINGS = {
+            "son", "ton", "ley", "berg", "man", "field", "ford", "wood", "stein", "ski",
+            "ez", "er", "well", "ridge", "by", "worth", "ham", "mont", "ville", "ing"};
+    private static final String[] COMPANIES = {
+            "acme", "techcorp", "globex", "initech", "umbrella", "hooli", "stark", "wayne", "wonka", "cyberdyne"};
+
+    private static List<Contact> contacts;
+    private static ContactIndex index;
+
+    @BeforeAll
+    static void buildIndex() {
+        List<String> surnames = new ArrayList<>(Arrays.asList(LAST_NAMES));
+        for (String stem : SURNAME_STEMS) {
+            for (String ending : SURNAME_ENDINGS) {
+                surnames.add(stem + ending);
+            }
+        }
+
+        Random random = new Random(42);
+        contacts = new ArrayList<>(CONTACTS);
+        for (int i = 0; i < CONTACTS; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = surnames.get(random.nextInt(surnames.size()));
+            String company = COMPANIES[random.nextInt(COMPANIES.length)];
+            Contact contact = new Contact(null, capitalize(first) + " " + capitalize(last),
+                    first + "." + last + "." + i + "@" + company + ".com");
+            contact.setId((long) i);
+            contact.setCompany(capitalize(company) + " Inc");
+            contacts.add(contact);
+        }
+
+        index = ContactIndex.build(contacts);
+    }
+
+    @Test
+    void findsContactsDespiteTyposAndPhoneticVariants() {
+        Contact target = contacts.get(0);
+        String[] name = target.getName().toLowerCase(Locale.ROOT).split(" ");
+
+        assertEquals(target.getId(), index.search(target.getEmail(), 5).get(0).id());
+        assertEquals(target.getName(), topName(target.getName()));
+        assertEquals(target.getName(), topName(typo(name[0]) + " " + name[1]));
+        assertEquals(target.getName(), topName(name[0] + " " + typo(name[1])));
+        assertEquals(target.getName(), topName(name[0] + " from " + name[1]));
+
+        assertEquals("J500", ContactIndex.soundex("jon"));
+        assertEquals(ContactIndex.soundex("john"), ContactIndex.soundex("jon"));
+    }
+
+    @Test
+    void findsMostTargetsInTopTen() {
+        Random random = new Random(7);
+        int hits = 0;
+        int named = 0;
+
+        for (int i = 0; i < QUERIES; i++) {
+            Contact target = contacts.get(random.nextInt(CONTACTS));
+            if (i % 4 == 3) {
+                continue; // surname prefixes are too ambiguous to expect one particular contact
+            }
+            named++;
+            List<ContactIndex.Entry> results = index.search(query(target, i), 10);
+
+            // Common names repeat in a CRM this size, so any contact with the target's name counts
+            if (results.stream().anyMatch(entry -> entry.name().equals(target.getName()))) {
+                hits++;
+            }
+        }
+
+        double recall = hits / (double) named;
+        assertTrue(recall > 0.9, "recall@10 was " + recall);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void reportsLatency() {
+        Random random = new Random(7);
+        long[] nanos = new long[QUERIES];
+
+        for (int i = 0; i < QUERIES; i++) {
+            String query = query(contacts.get(random.nextInt(CONTACTS)), i);
+            long start = System.nanoTime();
+            index.search(query, 10);
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(nanos);
+        System.out.printf("Contact search over %d contacts: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms%n", CONTACTS,
+                nanos[QUERIES / 2] / 1e6, nanos[QUERIES * 95 / 100] / 1e6, nanos[QUERIES * 99 / 100] / 1e6);
+    }
+
+    /**
+     * Full name, a typo in either name, or a surname prefix, in rotation.
+     */
+    private static String query(Contact target, int i) {
+        String[] name = target.getName().toLowerCase(Locale.ROOT).split(" ");
+        return switch (i % 4) {
+            case 0 -> target.getName();
+            case 1 -> typo(name[0]) + " " + name[1];
+            case 2 -> name[0] + " " + typo(name[1]);
+            default -> name[1].substring(0, Math.min(4, name[1].length()));
+        };
+    }
+
+    private String topName(String query) {
+        return index.search(query, 1).get(0).name();
+    }
+
+    /**
+     * Swap two adjacent letters in the middle of the word.
+     */
+    private static String typo(String word) {
+        if (word.length() < 4) {
+            return word;
+        }
+        int i = word.length() / 2;
+        return word.substring(0, i - 1) + word.charAt(i) + word.charAt(i - 1) + word.substring(i + 1);
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
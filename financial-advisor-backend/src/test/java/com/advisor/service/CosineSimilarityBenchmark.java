@@ -0,0 +1,128 @@
+package com.advisor.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring one query against a corpus of 1536-dimension embeddings: the former
+ * {@code List<Double>} cosine that recomputed both norms per pair, the scalar dot product over
+ * pre-normalized contiguous floats, and the Vector API kernel. Not part of the test run; start
+ * {@link #main} from the IDE (or {@code org.openjdk.jmh.Main} on the test classpath).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx2g"})
+public class CosineSimilarityBenchmark {
+
+    private static final int DIM = 1536;
+
+    @Param({"100", "1000", "10000"})
+    public int corpusSize;
+
+    private List<List<Double>> boxedCorpus;
+    private List<Double> boxedQuery;
+
+    // Row-major, one unit-length embedding after another
+    private float[] corpus;
+    private float[] query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        boxedCorpus = new ArrayList<>(corpusSize);
+        corpus = new float[corpusSize * DIM];
+        for (int row = 0; row < corpusSize; row++) {
+            List<Double> embedding = gaussian(random);
+            boxedCorpus.add(embedding);
+            System.arraycopy(VectorMath.normalize(embedding), 0, corpus, row * DIM, DIM);
+        }
+        boxedQuery = gaussian(random);
+        query = VectorMath.normalize(boxedQuery);
+
+        if (!VectorMath.SIMD) {
+            System.out.println("Vector API unavailable; simdDot measures the scalar fallback");
+        }
+    }
+
+    @Benchmark
+    public double boxedCosine() {
+        double best = -1;
+        for (List<Double> embedding : boxedCorpus) {
+            best = Math.max(best, cosineSimilarity(boxedQuery, embedding));
+        }
+        return best;
+    }
+
+    @Benchmark
+    public float scalarDot() {
+        float best = -1;
+        for (int row = 0; row < corpusSize; row++) {
+            best = Math.max(best, VectorMath.scalarDot(query, 0, corpus, row * DIM, DIM));
+        }
+        return best;
+    }
+
+    @Benchmark
+    public float simdDot() {
+        float best = -1;
+        for (int row = 0; row < corpusSize; row++) {
+            best = Math.max(best, VectorMath.dot(query, 0, corpus, row * DIM, DIM));
+        }
+        return best;
+    }
+
+    /**
+     * The similarity {@link VectorService} computed before the primitive kernels.
+     */
+    private static double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
+        double dotProduct = 0.0;
+        double norm1 = 0.0;
+        double norm2 = 0.0;
+
+        for (int i = 0; i < vector1.size(); i++) {
+            dotProduct += vector1.get(i) * vector2.get(i);
+            norm1 += vector1.get(i) * vector1.get(i);
+            norm2 += vector2.get(i) * vector2.get(i);
+        }
+
+        if (norm1 == 0.0 || norm2 == 0.0) {
+            return 0.0;
+        }
+
+        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+    }
+
+    private static List<Double> gaussian(Random random) {
+        List<Double> embedding = new ArrayList<>(DIM);
+        for (int d = 0; d < DIM; d++) {
+            embedding.add(random.nextGaussian());
+        }
+        return embedding;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CosineSimilarityBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
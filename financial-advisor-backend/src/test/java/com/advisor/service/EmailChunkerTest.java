@@ -0,0 +1,163 @@
+package com.advisor.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What survives cleaning an email body, and how the rest is packed into token-bounded chunks.
+ */
+class EmailChunkerTest {
+
+    private final EmailChunker chunker = chunker(500, 50);
+
+    @Test
+    void quotedReplyIsCut() {
+        String body = """
+                Thanks, that works for me.
+
+                On Mon, 3 Jun 2024 at 10:00, Jane Doe <jane@example.com> wrote:
+                Can we move the review to Thursday?
+                """;
+
+        assertEquals("Thanks, that works for me.", chunker.clean(body));
+    }
+
+    @Test
+    void replyHeaderWrappedOverTwoLinesIsCut() {
+        String body = """
+                Sounds good.
+
+                On Mon, Jun 3, 2024 at 10:00 AM Jane Doe
+                <jane@example.com> wrote:
+
+                Can we move the review to Thursday?
+                """;
+
+        assertEquals("Sounds good.", chunker.clean(body));
+    }
+
+    @Test
+    void paragraphStartingWithOnIsKept() {
+        String body = """
+                Hi Jane,
+
+                On the fee question, I think we should wait.
+                Our accountant wrote:
+                hold off until the new schedule is out.
+
+                On Monday we can go over the details.
+                Later that week Bob wrote:
+                the numbers look fine.
+                """;
+
+        assertEquals(body.trim(), chunker.clean(body));
+    }
+
+    @Test
+    void forwardedHeadersAreCut() {
+        String forwarded = """
+                FYI, see the statement below.
+
+                ---------- Forwarded message ---------
+                From: Custodian <noreply@custodian.com>
+                Statement attached.
+                """;
+        String outlook = """
+                Please review.
+
+                From: Jane Doe
+                Sent: Monday, June 3, 2024 10:00 AM
+                Subject: Rebalancing
+                """;
+
+        assertEquals("FYI, see the statement below.", chunker.clean(forwarded));
+        assertEquals("Please review.", chunker.clean(outlook));
+    }
+
+    @Test
+    void signatureIsCut() {
+        assertEquals("Let's meet Tuesday.", chunker.clean("Let's meet Tuesday.\n\n-- \nJohn Smith\nWealth Advisor"));
+        assertEquals("On my way.", chunker.clean("On my way.\n\nSent from my iPhone"));
+    }
+
+    @Test
+    void quotedLinesAreRemoved() {
+        String body = "Agreed.\n> Should we sell the bonds?\n  > Yes, next week.\nThanks";
+
+        assertEquals("Agreed.\nThanks", chunker.clean(body));
+    }
+
+    @Test
+    void paragraphsArePackedWithOverlap() {
+        EmailChunker small = chunker(20, 10);
+        String first = paragraph('a', 10);
+        String second = paragraph('b', 10);
+        String third = paragraph('c', 10);
+
+        List<String> chunks = small.chunk(first + "\n\n" + second + "\n\n" + third, null);
+
+        assertEquals(List.of(first + "\n\n" + second, second + "\n\n" + third), chunks);
+    }
+
+    @Test
+    void longParagraphIsSplitIntoSentences() {
+        EmailChunker small = chunker(20, 0);
+        String first = sentence('A', 9);
+        String second = sentence('B', 9);
+        String third = sentence('C', 9);
+
+        List<String> chunks = small.chunk(first + " " + second + " " + third, null);
+
+        assertEquals(List.of(first + "\n\n" + second, third), chunks);
+    }
+
+    @Test
+    void longSentenceIsSplitIntoWords() {
+        EmailChunker small = chunker(20, 0);
+        String run = "word ".repeat(60).trim();
+
+        List<String> chunks = small.chunk(run, null);
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(EmailChunker.estimateTokens(chunk) <= 20, chunk);
+        }
+        assertEquals(run, String.join(" ", chunks));
+    }
+
+    @Test
+    void paragraphsSeenInThreadAreSkipped() {
+        Set<String> seen = new HashSet<>();
+        chunker.remember("Please rebalance the portfolio.\n\nThanks,\nJohn", seen);
+
+        List<String> chunks = chunker.chunk("PLEASE   rebalance the\nportfolio.\n\nAlso sell the bonds.\n\nThanks,\nJohn", seen);
+
+        assertEquals(List.of("Also sell the bonds."), chunks);
+        assertEquals(List.of(), chunker.chunk("Also sell the bonds.", seen));
+    }
+
+    private static EmailChunker chunker(int maxTokens, int overlapTokens) {
+        EmailChunker chunker = new EmailChunker();
+        ReflectionTestUtils.setField(chunker, "maxTokens", maxTokens);
+        ReflectionTestUtils.setField(chunker, "overlapTokens", overlapTokens);
+        return chunker;
+    }
+
+    /**
+     * Text of exactly {@code tokens} estimated tokens.
+     */
+    private static String paragraph(char letter, int tokens) {
+        return String.valueOf(letter).repeat(tokens * 4);
+    }
+
+    private static String sentence(char letter, int tokens) {
+        return letter + "x".repeat(tokens * 4 - 2) + ".";
+    }
+}
@@ -0,0 +1,93 @@
+package com.advisor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What the instruction compiler extracts from free text, and which events the resulting triggers
+ * let through to the model.
+ */
+class InstructionTriggersTest {
+
+    @Test
+    void topicWordsMatchIndividually() {
+        InstructionTriggers triggers = InstructionTriggers.compile(
+                "When I get an email about the quarterly tax report, forward it to my accountant.");
+
+        InstructionTriggers.Trigger trigger = triggers.triggers().get(0);
+        assertEquals(Set.of(ProactiveEvent.Source.EMAIL), trigger.sources());
+        assertEquals(List.of("quarterly", "tax", "report"), trigger.keywords());
+        assertEquals(List.of(), trigger.phrases());
+
+        assertTrue(triggers.matches(email("Your Q3 taxes are due")));
+        assertTrue(triggers.matches(email("Report attached")));
+        assertFalse(triggers.matches(email("Lunch on Friday?")));
+    }
+
+    @Test
+    void topicWordsMatchWholeWordsOnly() {
+        InstructionTriggers triggers = InstructionTriggers.compile("If an email mentions tax, flag it.");
+
+        assertTrue(triggers.matches(email("tax-loss harvesting")));
+        assertFalse(triggers.matches(email("syntax error in the statement")));
+        assertFalse(triggers.matches(email("taxonomy of accounts")));
+    }
+
+    @Test
+    void topicStopsAtConnectingWords() {
+        InstructionTriggers.Trigger trigger = InstructionTriggers.compile(
+                "When an email about taxes from a client arrives, summarize it.").triggers().get(0);
+
+        assertEquals(List.of("taxes"), trigger.keywords());
+    }
+
+    @Test
+    void quotedTextMatchesOnlyAsPhrase() {
+        InstructionTriggers triggers = InstructionTriggers.compile(
+                "When an email mentions \"year end review\", add it to my calendar.");
+
+        InstructionTriggers.Trigger trigger = triggers.triggers().get(0);
+        assertEquals(List.of("year end review"), trigger.phrases());
+        assertEquals(List.of(), trigger.keywords());
+
+        assertTrue(triggers.matches(email("Agenda for the Year End Review")));
+        assertFalse(triggers.matches(email("Review of the year so far")));
+    }
+
+    @Test
+    void conditionSelectsSourceEventTypeAndSender() {
+        InstructionTriggers triggers = InstructionTriggers.compile(
+                "When a meeting is cancelled, email the attendees. If someone from @acme.com writes, reply.");
+
+        InstructionTriggers.Trigger calendar = triggers.triggers().get(0);
+        assertEquals(Set.of(ProactiveEvent.Source.CALENDAR), calendar.sources());
+        assertEquals(Set.of("deleted"), calendar.eventTypes());
+        assertEquals(List.of("@acme.com"), triggers.triggers().get(1).senders());
+
+        assertTrue(triggers.matches(ProactiveEvent.of(ProactiveEvent.Source.CALENDAR, "deleted", null)));
+        assertFalse(triggers.matches(ProactiveEvent.of(ProactiveEvent.Source.CALENDAR, "created", null)));
+        assertTrue(triggers.matches(new ProactiveEvent(ProactiveEvent.Source.EMAIL, "created",
+                "Jane@Acme.com", "hello", Set.of())));
+        assertFalse(triggers.matches(new ProactiveEvent(ProactiveEvent.Source.EMAIL, "created",
+                "jane@example.com", "hello", Set.of())));
+    }
+
+    @Test
+    void unreadableInstructionMatchesEverything() {
+        InstructionTriggers triggers = InstructionTriggers.compile("Always be polite.");
+
+        assertTrue(triggers.matches(email("anything")));
+        assertTrue(triggers.matches(ProactiveEvent.of(ProactiveEvent.Source.HUBSPOT, "created", "contact")));
+        assertFalse(InstructionTriggers.compile("  ").matches(email("anything")));
+    }
+
+    private static ProactiveEvent email(String text) {
+        return ProactiveEvent.of(ProactiveEvent.Source.EMAIL, "created", text);
+    }
+}
@@ -0,0 +1,209 @@
+package com.advisor.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recall@10 against exact search of the quantized two-pass search over synthetic corpora of
+ * clustered unit vectors (embeddings of related documents bunch up the same way). The unit check
+ * uses a small corpus; the full-size recall and latency table is tagged {@code benchmark} and
+ * only runs with {@code -Pbenchmark}.
+ */
+class QuantizedSearchRecallTest {
+
+    private static final int K = 10;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void quantizedCandidatesKeepRecallAfterReranking() throws IOException {
+        Corpus corpus = Corpus.build(dir, 2_000, 128, 20, 50);
+        try {
+            ProductQuantizer quantizer = ProductQuantizer.train(corpus.sample(1024), 16, 8, 7);
+
+            // The default rerank factors: 8 for int8; PQ codes are coarser and need the wider shortlist
+            double int8 = corpus.recall(query -> VectorSegment.rerankedSearch(corpus.segments, query, null,
+                    Set.of(), K, K * 8));
+            double pq = corpus.recall(query -> VectorSegment.rerankedSearch(corpus.segments, query, quantizer,
+                    Set.of(), K, K * 32));
+
+            assertTrue(int8 > 0.95, "int8 recall@10 was " + int8);
+            assertTrue(pq > 0.85, "pq recall@10 was " + pq);
+        } finally {
+            corpus.close();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void reportsRecallAndLatency() throws IOException {
+        int dim = 768;
+        int subspaces = 96;
+        Corpus corpus = Corpus.build(dir, 10_000, dim, 100, 100);
+        try {
+            long start = System.nanoTime();
+            ProductQuantizer quantizer = ProductQuantizer.train(corpus.sample(2048), subspaces, 8, 7);
+            System.out.printf("Trained PQ codebook (%d subspaces, 2048 samples) in %d ms%n",
+                    subspaces, (System.nanoTime() - start) / 1_000_000);
+
+            System.out.printf("%d x %d-dim vectors, recall@%d vs exact search%n", corpus.size(), dim, K);
+            System.out.printf("%-20s %14s %10s %10s %10s%n", "mode", "bytes/vector", "recall", "p50 ms", "p95 ms");
+            corpus.report("exact float32", dim * Float.BYTES,
+                    query -> VectorSegment.search(corpus.segments, query, Set.of(), K));
+            for (int factor : new int[]{2, 8, 32}) {
+                int candidates = K * factor;
+                corpus.report("int8 + rerank " + candidates, dim + Float.BYTES,
+                        query -> VectorSegment.rerankedSearch(corpus.segments, query, null, Set.of(), K, candidates));
+                corpus.report("pq + rerank " + candidates, subspaces,
+                        query -> VectorSegment.rerankedSearch(corpus.segments, query, quantizer, Set.of(), K, candidates));
+            }
+        } finally {
+            corpus.close();
+        }
+    }
+
+    private interface Search {
+        VectorSegment.TopK run(float[] query) throws IOException;
+    }
+
+    /**
+     * One float32 segment of clustered vectors, queries near stored vectors, and their exact top K.
+     */
+    private static final class Corpus {
+        private final float[][] vectors;
+        private final List<VectorSegment> segments;
+        private final float[][] queries;
+        private final long[][] truth;
+        private final Random random;
+
+        private Corpus(float[][] vectors, List<VectorSegment> segments, float[][] queries, long[][] truth,
+                       Random random) {
+            this.vectors = vectors;
+            this.segments = segments;
+            this.queries = queries;
+            this.truth = truth;
+            this.random = random;
+        }
+
+        static Corpus build(Path dir, int rows, int dim, int clusters, int queryCount) throws IOException {
+            Random random = new Random(42);
+            float[][] centers = new float[clusters][];
+            for (int c = 0; c < clusters; c++) {
+                centers[c] = gaussian(random, dim, 1f);
+            }
+
+            float[][] vectors = new float[rows][];
+            long[] ids = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                float[] center = centers[random.nextInt(clusters)];
+                float[] noise = gaussian(random, dim, 0.6f);
+                for (int d = 0; d < dim; d++) {
+                    noise[d] += center[d];
+                }
+                vectors[i] = VectorMath.normalize(noise);
+                ids[i] = i + 1;
+            }
+
+            VectorSegment segment = VectorSegment.create(dir.resolve("seg-00000000.vec"), dim, VectorSegment.Encoding.FLOAT32);
+            segment.append(ids, vectors, 0, rows);
+            List<VectorSegment> segments = List.of(segment);
+
+            float[][] queries = new float[queryCount][];
+            long[][] truth = new long[queryCount][];
+            for (int q = 0; q < queryCount; q++) {
+                float[] query = gaussian(random, dim, 0.3f);
+                float[] base = vectors[random.nextInt(rows)];
+                for (int d = 0; d < dim; d++) {
+                    query[d] += base[d];
+                }
+                queries[q] = VectorMath.normalize(query);
+                truth[q] = ids(VectorSegment.search(segments, queries[q], Set.of(), K));
+            }
+            return new Corpus(vectors, segments, queries, truth, random);
+        }
+
+        int size() {
+            return vectors.length;
+        }
+
+        float[][] sample(int size) {
+            float[][] sample = new float[size][];
+            for (int i = 0; i < size; i++) {
+                sample[i] = vectors[random.nextInt(vectors.length)];
+            }
+            return sample;
+        }
+
+        double recall(Search search) throws IOException {
+            int found = 0;
+            for (int q = 0; q < queries.length; q++) {
+                found += overlap(search.run(queries[q]), truth[q]);
+            }
+            return found / (double) (queries.length * K);
+        }
+
+        void report(String mode, int bytesPerVector, Search search) throws IOException {
+            // Warm-up: the first pass builds the in-heap codes, the rest lets the JIT settle
+            for (int q = 0; q < Math.min(20, queries.length); q++) {
+                search.run(queries[q]);
+            }
+
+            long[] nanos = new long[queries.length];
+            int found = 0;
+            for (int q = 0; q < queries.length; q++) {
+                long start = System.nanoTime();
+                VectorSegment.TopK top = search.run(queries[q]);
+                nanos[q] = System.nanoTime() - start;
+                found += overlap(top, truth[q]);
+            }
+
+            Arrays.sort(nanos);
+            System.out.printf("%-20s %14d %10.3f %10.2f %10.2f%n", mode, bytesPerVector,
+                    found / (double) (queries.length * K), nanos[nanos.length / 2] / 1e6,
+                    nanos[nanos.length * 95 / 100] / 1e6);
+        }
+
+        void close() throws IOException {
+            for (VectorSegment segment : segments) {
+                segment.delete();
+            }
+        }
+
+        private static int overlap(VectorSegment.TopK top, long[] expected) {
+            long[] result = ids(top);
+            Arrays.sort(result);
+            int found = 0;
+            for (long id : expected) {
+                if (Arrays.binarySearch(result, id) >= 0) {
+                    found++;
+                }
+            }
+            return found;
+        }
+    }
+
+    private static long[] ids(VectorSegment.TopK top) {
+        long[] ids = new long[top.size()];
+        top.drain(ids, new float[ids.length]);
+        return ids;
+    }
+
+    private static float[] gaussian(Random random, int dim, float sigma) {
+        float[] vector = new float[dim];
+        for (int d = 0; d < dim; d++) {
+            vector[d] = (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,135 @@
+package com.advisor.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * What a user's segment directory looks like after a crash at each point of a compaction, and
+ * that reopening it yields each row exactly once.
+ */
+class SegmentVectorStoreRecoveryTest {
+
+    private static final long USER = 1L;
+    private static final int DIM = 4;
+
+    @TempDir
+    Path root;
+
+    private Path dir;
+    private SegmentVectorStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createDirectories(root.resolve(String.valueOf(USER)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void compactionDropsDeletedRowsAndSurvivesReopen() {
+        store = open();
+        store.append(USER, new long[]{1, 2, 3, 4, 5, 6}, vectors(6));
+        store.delete(USER, List.of(2L, 4L, 6L));
+
+        ReflectionTestUtils.invokeMethod(store, "compactAll");
+        assertArrayEquals(new long[]{1, 3, 5}, store.liveIds(USER));
+
+        store.close();
+        store = open();
+        assertArrayEquals(new long[]{1, 3, 5}, store.liveIds(USER));
+        assertEquals(3, store.liveCount(USER));
+        assertFalse(Files.exists(dir.resolve("compaction.pending")));
+    }
+
+    @Test
+    void rewriteWithoutMarkerIsDiscarded() throws IOException {
+        segment("seg-00000000.vec", 1, 2, 3, 4);
+        segment("seg-00000001.vec.tmp", 1, 3);
+
+        store = open();
+
+        assertArrayEquals(new long[]{1, 2, 3, 4}, store.liveIds(USER));
+        assertFalse(Files.exists(dir.resolve("seg-00000001.vec.tmp")));
+    }
+
+    @Test
+    void rewriteWithMarkerIsFinished() throws IOException {
+        // Crashed after renaming the first rewritten segment, before deleting the replaced ones
+        segment("seg-00000000.vec", 1, 2, 3, 4);
+        segment("seg-00000001.vec", 5, 6);
+        segment("seg-00000002.vec", 1, 3);
+        segment("seg-00000003.vec.tmp", 5);
+        Files.write(dir.resolve("compaction.pending"), ByteBuffer.allocate(8).putInt(0).putInt(1).array());
+
+        store = open();
+
+        assertArrayEquals(new long[]{1, 3, 5}, store.liveIds(USER));
+        assertFalse(Files.exists(dir.resolve("compaction.pending")));
+        assertFalse(Files.exists(dir.resolve("seg-00000000.vec")));
+        assertEquals(3, store.search(USER, unit(), 10).size());
+    }
+
+    @Test
+    void segmentWithoutHeaderIsDeleted() throws IOException {
+        segment("seg-00000000.vec", 1, 2);
+        Files.createFile(dir.resolve("seg-00000001.vec"));
+
+        store = open();
+
+        assertArrayEquals(new long[]{1, 2}, store.liveIds(USER));
+        assertEquals(2, store.search(USER, unit(), 10).size());
+        assertFalse(Files.exists(dir.resolve("seg-00000001.vec")));
+
+        // The next segment does not collide with the deleted one's name
+        store.append(USER, new long[]{3, 4, 5}, vectors(3));
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5}, store.liveIds(USER));
+    }
+
+    private SegmentVectorStore open() {
+        SegmentVectorStore opened = new SegmentVectorStore();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "directory", root.toString());
+        ReflectionTestUtils.setField(opened, "encoding", "float32");
+        ReflectionTestUtils.setField(opened, "rowsPerSegment", 2);
+        ReflectionTestUtils.setField(opened, "compactRatio", 0.2);
+        ReflectionTestUtils.setField(opened, "maxOpenUsers", 10);
+        ReflectionTestUtils.setField(opened, "quantization", "none");
+        return opened;
+    }
+
+    private void segment(String name, long... ids) throws IOException {
+        VectorSegment segment = VectorSegment.create(dir.resolve(name), DIM, VectorSegment.Encoding.FLOAT32);
+        segment.append(ids, vectors(ids.length), 0, ids.length);
+        segment.close();
+    }
+
+    private static float[][] vectors(int count) {
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = unit();
+        }
+        return vectors;
+    }
+
+    private static float[] unit() {
+        return new float[]{0.5f, 0.5f, 0.5f, 0.5f};
+    }
+}
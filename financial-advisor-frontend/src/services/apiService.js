@@ -105,9 +105,10 @@ class ApiService {
     }
   }
 
-  async getChatSessions() {
+  // Pass { limit, before, beforeSessionId } from the last session of a page to load the next one
+  async getChatSessions(cursor = {}) {
     try {
-      const response = await this.axios.get("/api/chat/sessions");
+      const response = await this.axios.get("/api/chat/sessions", { params: cursor });
       return response.data;
     } catch (error) {
       console.error("Get chat sessions error:", error);